@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.atomic.AtomicStampedReference;
+import studio.raptor.gid.async.AsyncIds;
+import studio.raptor.gid.async.AsyncSequence;
+import studio.raptor.gid.async.IdPublisher;
+import studio.raptor.gid.async.SequencePublisher;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.kind.Sequencable;
+
+/**
+ * 序列句柄。
+ *
+ * 通过{@link Sequencer#handle(String)}获取一次后长期持有（可存放在static final字段中），
+ * 取号时直接调用绑定的序列，不再查找序列名称。序列重新加载后句柄自动绑定到新的序列实例。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class SequenceHandle implements Sequencable, AsyncSequence {
+
+  private final Sequencer sequencer;
+
+  private final String name;
+
+  /**
+   * 绑定的序列实例，版本号在每次{@link #bind(Sequencable)}时递增；
+   * 按名称查找到的实例只在期间没有发生绑定时才写入，不会覆盖重新加载后的绑定
+   */
+  private final AtomicStampedReference<Sequencable> target = new AtomicStampedReference<Sequencable>(
+      null, 0);
+
+  SequenceHandle(Sequencer sequencer, String name) {
+    this.sequencer = sequencer;
+    this.name = name;
+  }
+
+  /**
+   * 序列名称
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * 是否已绑定序列实例
+   */
+  public boolean isBound() {
+    return null != target.getReference();
+  }
+
+  @Override
+  public long nextId() throws Exception {
+    Sequencable seq = this.target.getReference();
+    if (null == seq) {
+      seq = resolve();
+    }
+    return seq.nextId();
+  }
+
+  @Override
+  public long nextLong() {
+    Sequencable seq = this.target.getReference();
+    return (null == seq ? resolveUnchecked() : seq).nextLong();
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    Sequencable seq = this.target.getReference();
+    (null == seq ? resolveUnchecked() : seq).nextIds(dst, off, len);
+  }
+
+  @Override
+  public ListenableFuture<Long> nextIdAsync() {
+    Sequencable seq = this.target.getReference();
+    if (null == seq) {
+      // 尚未绑定时查找序列可能等待其创建，交由后台线程执行
+      return AsyncIds.supply(this);
+    }
+    return AsyncIds.nextIdAsync(seq);
+  }
+
+  @Override
+  public IdPublisher ids() {
+    return new SequencePublisher(this);
+  }
+
+  @Override
+  public void reset(long newStart) throws GidException {
+    Sequencable seq = this.target.getReference();
+    (null == seq ? resolve() : seq).reset(newStart);
+  }
+
+  @Override
+  public boolean adjustCache(int newCache) throws Exception {
+    Sequencable seq = this.target.getReference();
+    return (null == seq ? resolve() : seq).adjustCache(newCache);
+  }
+
+  /**
+   * 绑定序列实例，为null时解除绑定
+   */
+  void bind(Sequencable target) {
+    int[] stamp = new int[1];
+    Sequencable current;
+    do {
+      current = this.target.get(stamp);
+    } while (!this.target.compareAndSet(current, target, stamp[0], stamp[0] + 1));
+  }
+
+  /**
+   * 当前绑定的版本号
+   */
+  int version() {
+    return this.target.getStamp();
+  }
+
+  /**
+   * 仅当句柄仍未绑定且自version以来没有发生绑定时写入查找到的序列实例
+   *
+   * @return 句柄当前绑定的实例（写入失败时为期间绑定的实例，可能为null）
+   */
+  Sequencable bindIfUnchanged(Sequencable seq, int version) {
+    if (this.target.compareAndSet(null, seq, version, version)) {
+      return seq;
+    }
+    return this.target.getReference();
+  }
+
+  /**
+   * 尚未绑定时按名称查找（序列正在创建时等待其创建完成）
+   */
+  private Sequencable resolve() throws GidException {
+    int version = version();
+    Sequencable seq;
+    try {
+      seq = sequencer.get(name);
+    } catch (RuntimeException e) {
+      // 如序列服务器尚未启动
+      throw new GidException("resolve sequence '" + name + "' failure", e);
+    }
+    Sequencable bound = bindIfUnchanged(seq, version);
+    if (null == bound) {
+      throw new GidException("sequence '" + name + "' is retired");
+    }
+    return bound;
+  }
+
+  private Sequencable resolveUnchecked() {
+    try {
+      return resolve();
+    } catch (GidException e) {
+      throw IdUnavailableException.UNAVAILABLE;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "handle[" + name + "," + (isBound() ? "bound" : "unbound") + "]";
+  }
+}
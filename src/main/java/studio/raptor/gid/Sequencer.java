@@ -17,15 +17,37 @@
 
 package studio.raptor.gid;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.management.MalformedObjectNameException;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.utils.CloseableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.softee.management.annotation.Description;
@@ -35,12 +57,18 @@ import org.softee.management.annotation.ManagedOperation;
 import org.softee.management.exception.ManagementException;
 import org.softee.management.helper.MBeanRegistration;
 import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.ExecutorUtil;
 import studio.raptor.gid.common.GidException;
 import studio.raptor.gid.common.Pair;
+import studio.raptor.gid.common.Type;
 import studio.raptor.gid.config.ConfigLoader;
+import studio.raptor.gid.counter.RefillBatcher;
+import studio.raptor.gid.counter.Stripe;
 import studio.raptor.gid.def.BreadcrumbDef;
 import studio.raptor.gid.def.SequenceDef;
 import studio.raptor.gid.kind.Breadcrumb;
+import studio.raptor.gid.kind.LazySequence;
+import studio.raptor.gid.kind.SegmentJournal;
 import studio.raptor.gid.kind.Sequencable;
 import studio.raptor.gid.kind.Snowflake;
 import studio.raptor.gid.kind.Ticktock;
@@ -57,7 +85,7 @@ import studio.raptor.gid.service.impl.CacheServiceImpl;
  * 用户定义的配置文件 > 默认配置文件sequence.xml
  *
  * > 配置序列方式
- * 1)使用配置文件 2)使用SequenceServer提供的add API进行编码新增
+ * 1)使用配置文件 2)使用SequenceServer提供的add API进行编码新增 3)使用zk中的序列定义（setDefinitionPath）
  *
  * > 外部依赖
  * 依赖zookeeper作为本地计算型序列的workerid,dataCenterId分配器，
@@ -89,6 +117,19 @@ public class Sequencer {
   // --------------------------------------------------------------------
   private static Logger log = LoggerFactory.getLogger(Sequencer.class);
 
+  /**
+   * 并行创建序列的线程池（所有序列发生器共享）：至多64个线程，超出的任务排队等待，
+   * 从不在提交线程（如调用startupAsync的线程）上创建序列
+   */
+  private static ListeningExecutorService sequenceLoader = MoreExecutors.listeningDecorator(
+      ExecutorUtil.createBoundedThreadPool("sequence_loader", 64, Integer.MAX_VALUE));
+
+  /**
+   * 检查配置文件变化的线程池（所有序列发生器共享）
+   */
+  private static ScheduledExecutorService configWatcher = ExecutorUtil
+      .createScheduledThreadPool("config_watcher", 1);
+
   // --------------------------------------------------------------------
   private String configFilePath;
 
@@ -98,8 +139,98 @@ public class Sequencer {
 
   private AtomicBoolean isStarted = new AtomicBoolean(false);
 
+  /**
+   * 是否已关闭（关闭后zk客户端已释放，不能再次启动）
+   */
+  private AtomicBoolean isClosed = new AtomicBoolean(false);
+
+  /**
+   * 号段批量申请器，多个breadcrumb同时申请号段时合并为一个zk事务
+   */
+  private RefillBatcher refillBatcher;
+
+  /**
+   * 号段日志，为null时不记录
+   */
+  private volatile SegmentJournal journal;
+
+  /**
+   * 本数据中心的条带，默认不切分
+   */
+  private volatile Stripe stripe = Stripe.SINGLE;
+
+  /**
+   * 是否延迟创建序列（首次取号时创建）
+   */
+  private volatile boolean lazy = false;
+
+  /**
+   * 预热时breadcrumb缓冲区的目标填充比例
+   */
+  private volatile double warmupFillLevel = 1.0;
+
+  /**
+   * 预热时每个snowflake/ticktock序列生成的ID数量，0表示不生成
+   */
+  private volatile int warmupIds = 0;
+
+  /**
+   * 就绪状态
+   */
+  private volatile Readiness readiness = Readiness.STARTING;
+
+  /**
+   * 就绪时完成的future
+   */
+  private volatile SettableFuture<Readiness> ready = SettableFuture.create();
+
   private Map<String, Pair<SequenceDef, Sequencable>> sequences = new ConcurrentHashMap<String, Pair<SequenceDef, Sequencable>>();
 
+  /**
+   * 各序列的加载状态
+   */
+  private ConcurrentMap<String, SequenceStatus> statuses = new ConcurrentHashMap<String, SequenceStatus>();
+
+  /**
+   * 已发放的序列句柄
+   */
+  private ConcurrentMap<String, SequenceHandle> handles = new ConcurrentHashMap<String, SequenceHandle>();
+
+  /**
+   * 正在创建的序列
+   */
+  private ConcurrentMap<String, SettableFuture<Sequencable>> loading = new ConcurrentHashMap<String, SettableFuture<Sequencable>>();
+
+  /**
+   * 来自配置文件的序列名称，热加载只增删改这些序列，通过{@link #add(SequenceDef)}新增的序列不受影响
+   */
+  private Set<String> configured = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * 热加载互斥锁
+   */
+  private final ReentrantLock reloadLock = new ReentrantLock();
+
+  /**
+   * 最近一次加载时配置文件的修改时间
+   */
+  private volatile long configModified = 0;
+
+  /**
+   * 配置文件检查任务，为null时不检查
+   */
+  private volatile ScheduledFuture<?> configWatch;
+
+  /**
+   * 序列定义在zk中的路径，为null时使用配置文件
+   */
+  private volatile String definitionPath;
+
+  /**
+   * 序列定义节点的本地缓存
+   */
+  private volatile NodeCache definitionCache;
+
   /**
    * 构造函数
    */
@@ -146,9 +277,11 @@ public class Sequencer {
     this.sysId = sysId;
 
     this.zkClient = CuratorUtil.newClient(zkConnectString, namespace);
+    this.refillBatcher = new RefillBatcher(this.zkClient);
 
-    boolean isConntected = this.zkClient
-        .blockUntilConnected(CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    // 只在此处等待一次连接，之后创建的序列共享等待结果
+    boolean isConntected = CuratorUtil
+        .awaitConnected(this.zkClient, CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS);
 
     if (isConntected) {
       createRequiredNode(this.zkClient);
@@ -183,6 +316,121 @@ public class Sequencer {
     return sequences;
   }
 
+  @ManagedAttribute
+  @Description("load status of each sequence")
+  public Map<String, SequenceStatus> getStatuses() {
+    return new TreeMap<String, SequenceStatus>(statuses);
+  }
+
+  /**
+   * 获取序列的加载状态
+   *
+   * @param seqName 序列名称
+   * @return 加载状态，序列不存在时返回null
+   */
+  public SequenceStatus status(String seqName) {
+    return statuses.get(seqName.trim());
+  }
+
+  @ManagedAttribute
+  @Description("reserve segments of breadcrumb sequences")
+  public Map<String, String> getReserves() {
+    Map<String, String> reserves = new TreeMap<String, String>();
+    for (Map.Entry<String, Pair<SequenceDef, Sequencable>> entry : sequences.entrySet()) {
+      Sequencable seq = unwrap(entry.getValue().getValue());
+      if (seq instanceof Breadcrumb
+          && ((BreadcrumbDef) entry.getValue().getKey()).reserve() > 0) {
+        Breadcrumb breadcrumb = (Breadcrumb) seq;
+        reserves.put(entry.getKey(), String.format("remaining=%d,used=%d,runway=%.1fs",
+            breadcrumb.reserveRemaining(), breadcrumb.reserveUsed(),
+            breadcrumb.reserveRunwaySeconds()));
+      }
+    }
+    return reserves;
+  }
+
+  /**
+   * 设置延迟创建模式，需在启动前调用。
+   *
+   * 延迟模式下{@link #get(String)}返回轻量的{@link LazySequence}，zk计数器与ID缓冲区在首次取号时才创建，
+   * 启动耗时与空闲内存只与实际使用的序列数量相关。
+   *
+   * @param lazy 是否延迟创建
+   */
+  public void setLazy(boolean lazy) {
+    Preconditions.checkState(!isStarted.get(), "Lazy mode must be set before startup");
+    this.lazy = lazy;
+  }
+
+  @ManagedAttribute
+  @Description("sequences are materialized on first use ?")
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  /**
+   * 启用号段日志，需在启动前调用。
+   *
+   * 每个进程使用独立的日志文件，同一文件同时只能被一个进程持有。
+   *
+   * @param journalFile 日志文件路径
+   * @throws GidException 日志文件已被其他进程持有或文件操作异常
+   */
+  public void enableJournal(String journalFile) throws GidException {
+    Preconditions.checkState(!isStarted.get(), "Journal must be enabled before startup");
+    if (null == this.journal) {
+      this.journal = SegmentJournal.open(new File(journalFile), zkClient.getNamespace(), sysId);
+    }
+  }
+
+  /**
+   * 设置本数据中心的条带，需在启动前调用。
+   *
+   * 多个数据中心各自使用本地zookeeper集群时，各中心的breadcrumb只在本中心的条带内申请号段，
+   * 补号不跨数据中心，ID仍全局唯一（见{@link Stripe}）；各中心的count必须一致且index互不相同。
+   *
+   * @param index 本数据中心编号，范围[0,count)
+   * @param count 数据中心总数
+   */
+  public void setDatacenter(int index, int count) {
+    Preconditions.checkState(!isStarted.get(), "Datacenter must be set before startup");
+    this.stripe = new Stripe(index, count);
+  }
+
+  @ManagedAttribute
+  @Description("datacenter stripe of breadcrumbs : dc-index/count")
+  public String getDatacenter() {
+    return stripe.toString();
+  }
+
+  /**
+   * 本数据中心的条带
+   */
+  public Stripe getStripe() {
+    return stripe;
+  }
+
+  /**
+   * 使用存放在zk中的序列定义代替配置文件，需在启动前调用。
+   *
+   * 节点内容与sequence.xml格式相同，各节点通过watch缓存在本地，节点变化时热加载（见{@link #reload()}）；
+   * 所有进程共享同一份定义，取号过程不会读取该节点。
+   *
+   * @param path 序列定义节点路径（位于命名空间下），如/definitions
+   */
+  public void setDefinitionPath(String path) {
+    Preconditions.checkState(!isStarted.get(), "Definition path must be set before startup");
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(path),
+        "Definition path can not be null or empty");
+    this.definitionPath = path;
+  }
+
+  @ManagedAttribute
+  @Description("path of sequence definitions in zookeeper, null if config file is used")
+  public String getDefinitionPath() {
+    return definitionPath;
+  }
+
   /**
    * 注册MBean
    */
@@ -196,11 +444,79 @@ public class Sequencer {
   @ManagedOperation
   @Description("start sequencer")
   public void startup() throws Exception {
+    startupAsync().get();
+  }
+
+  /**
+   * 设置预热参数，需在启动前调用。
+   *
+   * 序列创建完成后依次预热：breadcrumb缓冲区填充到指定比例，snowflake/ticktock解析工作节点编号
+   * （延迟模式下也会提前创建）并生成指定数量的ID预热JIT；breadcrumb不生成ID，避免浪费序列值。
+   *
+   * @param fillLevel breadcrumb缓冲区目标填充比例（0~1）
+   * @param syntheticIds 每个snowflake/ticktock序列生成的ID数量，0表示不生成
+   */
+  public void setWarmup(double fillLevel, int syntheticIds) {
+    Preconditions.checkState(!isStarted.get(), "Warmup must be set before startup");
+    Preconditions.checkArgument(fillLevel >= 0 && fillLevel <= 1,
+        "Warmup fill level must be in [0,1],cur val:%s", fillLevel);
+    Preconditions.checkArgument(syntheticIds >= 0,
+        "Warmup synthetic ids must ge 0,cur val:%s", syntheticIds);
+    this.warmupFillLevel = fillLevel;
+    this.warmupIds = syntheticIds;
+  }
+
+  @ManagedAttribute
+  @Description("readiness of sequencer : STARTING, WARMING or READY")
+  public String getReadiness() {
+    return readiness.name();
+  }
+
+  /**
+   * 获取就绪状态
+   */
+  public Readiness readiness() {
+    return readiness;
+  }
+
+  /**
+   * 等待序列发生器就绪（序列创建并预热完成）
+   *
+   * @param timeout 超时时间
+   * @param unit 超时时间单位
+   * @return 是否已就绪
+   */
+  public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+    try {
+      ready.get(timeout, unit);
+      return true;
+    } catch (ExecutionException | TimeoutException e) {
+      return readiness == Readiness.READY;
+    }
+  }
+
+  /**
+   * 启动序列服务器，不等待序列创建完成。
+   *
+   * 配置文件中的序列并行创建，各序列的加载状态可通过{@link #status(String)}查看，
+   * 在序列创建完成前调用{@link #get(String)}将等待其创建完成。
+   *
+   * @return 所有序列创建结束（无论成功与否）时完成的future
+   */
+  public ListenableFuture<List<Sequencable>> startupAsync() {
+    Preconditions.checkState(!isClosed.get(), "Sequencer is closed");
     if (isStarted.compareAndSet(false, true)) {
-      loadSequences(configFilePath);// 从配置文件加载seq
-    } else {
-      log.warn("sequencer is already started");
+      ListenableFuture<List<Sequencable>> loaded = loadSequences();// 从配置文件或zk加载seq
+      return Futures.transform(loaded, new Function<List<Sequencable>, List<Sequencable>>() {
+        @Override
+        public List<Sequencable> apply(List<Sequencable> input) {
+          warmup();
+          return input;
+        }
+      }, sequenceLoader);
     }
+    log.warn("sequencer is already started");
+    return Futures.immediateFuture(Collections.<Sequencable>emptyList());
   }
 
   /**
@@ -209,17 +525,169 @@ public class Sequencer {
   @ManagedOperation
   @Description("start sequencer without load sequence config")
   public void startupWithoutLoad() throws Exception {
-    isStarted.compareAndSet(false, true);
+    Preconditions.checkState(!isClosed.get(), "Sequencer is closed");
+    if (isStarted.compareAndSet(false, true)) {
+      markReadiness(Readiness.READY);
+    }
   }
 
   /**
-   * 关闭序列服务器
+   * 关闭序列服务器，释放zk客户端与号段批量申请器，关闭后不能再次启动
    */
   @ManagedOperation
   @Description("stop sequencer")
   public void shutdown() {
-    if (!isStarted.compareAndSet(true, false)) {
+    if (!isClosed.compareAndSet(false, true)) {
       log.warn("sequencer is already closed");
+      return;
+    }
+    isStarted.set(false);
+    unwatchConfig();
+    if (null != this.definitionCache) {
+      CloseableUtils.closeQuietly(this.definitionCache);
+      this.definitionCache = null;
+    }
+    // 关闭各序列实例并解除句柄绑定，仍持有实例的调用方不再能申请号段
+    for (Pair<SequenceDef, Sequencable> entry : sequences.values()) {
+      close(entry.getValue());
+    }
+    for (SequenceHandle handle : handles.values()) {
+      handle.bind(null);
+    }
+    sequences.clear();
+    statuses.clear();
+    configured.clear();
+    this.ready = SettableFuture.create();
+    this.readiness = Readiness.STARTING;
+    if (null != this.journal) {
+      this.journal.close();
+      this.journal = null;
+    }
+    CloseableUtils.closeQuietly(this.refillBatcher);
+    CloseableUtils.closeQuietly(this.zkClient);
+  }
+
+  /**
+   * 定期检查配置文件，发生变化时热加载，需在启动后调用
+   *
+   * @param period 检查周期
+   * @param unit 检查周期单位
+   * @see #reload()
+   */
+  public void watchConfig(long period, TimeUnit unit) {
+    Preconditions.checkState(isStarted.get(), "Sequencer is NOT started");
+    Preconditions.checkState(null == definitionPath,
+        "Definitions in zookeeper are watched already");
+    Preconditions.checkArgument(period > 0, "Watch period must gt 0,cur val:%s", period);
+    unwatchConfig();
+    this.configWatch = configWatcher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        long modified = ConfigLoader.lastModified(configPath());
+        if (modified == 0 || modified == configModified) {
+          return;
+        }
+        try {
+          log.info("Sequence define file '{}' is modified, reload it > {}", configPath(),
+              reload());
+        } catch (Exception e) {
+          log.warn("Reload sequence define file '{}' failure", configPath(), e);
+        }
+      }
+    }, period, period, unit);
+  }
+
+  /**
+   * 停止检查配置文件
+   */
+  public void unwatchConfig() {
+    ScheduledFuture<?> watch = this.configWatch;
+    if (null != watch) {
+      watch.cancel(false);
+      this.configWatch = null;
+    }
+  }
+
+  /**
+   * 重新加载配置文件（或zk中的序列定义），只处理发生变化的序列：
+   *
+   * <pre>
+   * 1)新增的序列：创建
+   * 2)只有cache变化的breadcrumb：调整缓冲大小，不重建
+   * 3)其他定义变化的序列：创建新实例后替换，句柄自动绑定到新实例
+   * 4)已删除的序列：移除，句柄解除绑定
+   * </pre>
+   *
+   * 未变化的序列不受影响，替换期间旧实例继续提供服务；通过{@link #add(SequenceDef)}新增的同名序列不会被覆盖。
+   *
+   * @return 变更摘要
+   * @throws GidException 配置文件不合法或解析异常，此时不做任何变更
+   */
+  @ManagedOperation
+  @Description("reload sequence config and apply the changes")
+  public String reload() throws GidException {
+    Preconditions.checkState(isStarted.get(), "Sequencer is NOT started");
+    reloadLock.lock();
+    try {
+      String path = configSource();
+      Map<String, SequenceDef> latest = new LinkedHashMap<String, SequenceDef>();
+      for (SequenceDef seqDef : loadDefinitions()) {
+        latest.put(seqDef.name().trim(), seqDef);
+      }
+
+      List<String> added = new ArrayList<String>();
+      List<String> resized = new ArrayList<String>();
+      List<String> replaced = new ArrayList<String>();
+      List<String> retired = new ArrayList<String>();
+      for (Map.Entry<String, SequenceDef> entry : latest.entrySet()) {
+        String name = entry.getKey();
+        SequenceDef seqDef = entry.getValue();
+        try {
+          if (!configured.contains(name)) {
+            if (null != statuses.get(name) && statuses.get(name) != SequenceStatus.FAILED) {
+              log.warn("Sequence <{}> is added by api, skip the definition in '{}'", name, path);
+              continue;
+            }
+            addAsync(seqDef);
+            configured.add(name);
+            added.add(name);
+            continue;
+          }
+          Pair<SequenceDef, Sequencable> current = sequences.get(name);
+          if (null == current) {
+            // 上次创建失败或仍在创建，重新添加
+            if (statuses.get(name) == SequenceStatus.FAILED) {
+              addAsync(seqDef);
+              added.add(name);
+            }
+            continue;
+          }
+          if (current.getKey().equals(seqDef)) {
+            continue;
+          }
+          if (isResize(current, seqDef)) {
+            current.getValue().adjustCache(((BreadcrumbDef) seqDef).cache());
+            sequences.put(name, new Pair<>(seqDef, current.getValue()));
+            resized.add(name);
+          } else {
+            replace(name, current, seqDef);
+            replaced.add(name);
+          }
+        } catch (Exception e) {
+          log.warn("Reload sequence <{}> failure", name, e);
+        }
+      }
+      for (String name : configured) {
+        if (!latest.containsKey(name)) {
+          retire(name);
+          retired.add(name);
+        }
+      }
+
+      return String.format("added=%s,resized=%s,replaced=%s,retired=%s", added, resized,
+          replaced, retired);
+    } finally {
+      reloadLock.unlock();
     }
   }
 
@@ -242,42 +710,374 @@ public class Sequencer {
       Sequencable seq = seqPair.getValue();
       return seq;
     }
+    SettableFuture<Sequencable> future = loading.get(seqName.trim());
+    if (null != future) {
+      return await(seqName, future);
+    }
     throw new GidException("sequence '" + seqName + "' not exists");
   }
 
+  /**
+   * 获取序列句柄。
+   *
+   * 同一名称始终返回同一个句柄，可在启动前获取；句柄在序列创建或重新加载后自动绑定，
+   * 热点代码应持有句柄而不是每次调用{@link #get(String)}。
+   *
+   * @param seqName 序列名称
+   * @return 序列句柄
+   */
+  public SequenceHandle handle(String seqName) {
+    String name = seqName.trim();
+    SequenceHandle handle = handles.get(name);
+    if (null == handle) {
+      SequenceHandle created = new SequenceHandle(this, name);
+      handle = handles.putIfAbsent(name, created);
+      if (null == handle) {
+        handle = created;
+        // 发布句柄后再读取序列，期间的重新加载会绑定新实例，此处不覆盖
+        int version = handle.version();
+        Pair<SequenceDef, Sequencable> seqPair = sequences.get(name);
+        if (null != seqPair) {
+          handle.bindIfUnchanged(seqPair.getValue(), version);
+        }
+      }
+    }
+    return handle;
+  }
+
   /**
    * 新增序列实例
    */
   public void add(SequenceDef seqDef) throws GidException {
+    String name = reserve(seqDef);
+    SettableFuture<Sequencable> future = SettableFuture.create();
+    loading.put(name, future);
+    create(name, seqDef, future);
+  }
+
+  /**
+   * 异步新增序列实例
+   *
+   * @return 序列创建完成时完成的future
+   */
+  public ListenableFuture<Sequencable> addAsync(final SequenceDef seqDef) throws GidException {
+    final String name = reserve(seqDef);
+    final SettableFuture<Sequencable> future = SettableFuture.create();
+    loading.put(name, future);
+    sequenceLoader.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          create(name, seqDef, future);
+        } catch (Exception e) {
+          log.warn("Add sequence <{}> failure", name, e);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * 校验序列定义并占用序列名称
+   *
+   * @return 序列名称
+   */
+  private String reserve(SequenceDef seqDef) {
     Preconditions.checkState(isStarted.get(), "Sequencer is NOT started");
     Preconditions.checkNotNull(seqDef, "Sequence definition can not be null");
     Preconditions.checkNotNull(seqDef.type(), "Sequence 'name' can not be null");
     Preconditions.checkArgument(!Strings.isNullOrEmpty(seqDef.name()),
         "Sequence 'name' can not be null or empty");
-    Preconditions.checkState(!this.sequences.containsKey(seqDef.name().trim()),
+    String name = seqDef.name().trim();
+    // 创建失败的序列允许重新添加
+    Preconditions.checkState(null == statuses.putIfAbsent(name, SequenceStatus.LOADING)
+            || statuses.replace(name, SequenceStatus.FAILED, SequenceStatus.LOADING),
         "The '%s' sequence already exists", seqDef.name());
+    return name;
+  }
 
+  /**
+   * 创建序列实例
+   */
+  private void create(String name, final SequenceDef seqDef,
+      SettableFuture<Sequencable> future) throws GidException {
     Sequencable sequence;
-    switch (seqDef.type()) {
-      case SNOWFLAKE:
-        sequence = new Snowflake(seqDef, this.sysId, this.zkClient);
-        break;
-      case TICKTOCK:
-        sequence = new Ticktock(seqDef, this.sysId, this.zkClient);
-        break;
-      case BREADCRUMB:
+    try {
+      if (seqDef.type() == Type.BREADCRUMB) {
         Preconditions.checkArgument(((BreadcrumbDef) seqDef).incr() != 0,
             "equence 'incr' can not e 0,cur val:%s", ((BreadcrumbDef) seqDef).incr());
         Preconditions.checkArgument(((BreadcrumbDef) seqDef).cache() >= 0,
             "Sequence 'cache' must ge 0,cur val:%s", ((BreadcrumbDef) seqDef).cache());
-        sequence = new Breadcrumb(seqDef, this.zkClient);
-        break;
+      }
+      if (this.lazy) {
+        sequence = new LazySequence(name, new LazySequence.Factory() {
+          @Override
+          public Sequencable create() throws GidException {
+            return build(seqDef);
+          }
+        });
+      } else {
+        sequence = build(seqDef);
+      }
+    } catch (GidException | RuntimeException e) {
+      statuses.put(name, SequenceStatus.FAILED);
+      loading.remove(name, future);
+      future.setException(e);
+      throw e;
+    }
+
+    sequences.put(name, new Pair<>(seqDef, sequence));
+    SequenceHandle handle = handles.get(name);
+    if (null != handle) {
+      handle.bind(sequence);
+    }
+    statuses.put(name, SequenceStatus.READY);
+    loading.remove(name, future);
+    future.set(sequence);
+    log.info("Add sequence > {},{}", seqDef.name(), seqDef.type());
+  }
+
+  /**
+   * 预热所有序列，完成后标记为就绪
+   */
+  private void warmup() {
+    markReadiness(Readiness.WARMING);
+    long start = System.currentTimeMillis();
+    // 各序列并行预热，增长阶段的号段申请带随机延迟，逐个等待会使启动耗时随序列数量线性增长
+    List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>();
+    for (final Map.Entry<String, Pair<SequenceDef, Sequencable>> entry : sequences.entrySet()) {
+      futures.add(sequenceLoader.submit(new Runnable() {
+        @Override
+        public void run() {
+          warmup(entry.getKey(), entry.getValue());
+        }
+      }));
+    }
+    try {
+      Futures.successfulAsList(futures).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // successfulAsList不会失败
+    }
+    log.info("Warm up {} sequences in {} ms", sequences.size(),
+        System.currentTimeMillis() - start);
+    markReadiness(Readiness.READY);
+  }
+
+  /**
+   * 预热单个序列
+   */
+  private void warmup(String name, Pair<SequenceDef, Sequencable> seqPair) {
+    Sequencable seq = seqPair.getValue();
+    try {
+      if (seq instanceof LazySequence) {
+        // 延迟模式下只提前解析工作节点编号，breadcrumb仍在首次取号时创建
+        if (seqPair.getKey().type() == Type.BREADCRUMB) {
+          return;
+        }
+        seq = ((LazySequence) seq).materialize();
+      }
+      if (seq instanceof Breadcrumb) {
+        if (!((Breadcrumb) seq).warmup(warmupFillLevel,
+            CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS)) {
+          log.warn("Warm up sequence <{}> timeout", name);
+        }
+      } else if (seq instanceof Snowflake) {
+        for (int i = 0; i < warmupIds; i++) {
+          seq.nextId();
+        }
+      }
+    } catch (Exception e) {
+      log.warn("Warm up sequence <{}> failure", name, e);
+    }
+  }
+
+  private void markReadiness(Readiness readiness) {
+    this.readiness = readiness;
+    if (readiness == Readiness.READY) {
+      this.ready.set(readiness);
+    }
+  }
+
+  /**
+   * 是否只调整缓冲大小即可：breadcrumb只有cache变化，且调整后仍有缓冲（无缓冲时需重建）
+   */
+  private static boolean isResize(Pair<SequenceDef, Sequencable> current, SequenceDef seqDef) {
+    if (current.getKey().type() != Type.BREADCRUMB || seqDef.type() != Type.BREADCRUMB
+        || null == unwrap(current.getValue())) {
+      return false;
+    }
+    BreadcrumbDef oldDef = (BreadcrumbDef) current.getKey();
+    BreadcrumbDef newDef = (BreadcrumbDef) seqDef;
+    return oldDef.incr() == newDef.incr() && oldDef.start() == newDef.start()
+        && oldDef.reserve() == newDef.reserve() && oldDef.shards() == newDef.shards()
+        && oldDef.backend().equals(newDef.backend())
+        && newDef.cache() > 0;
+  }
+
+  /**
+   * 按新定义创建序列实例后替换旧实例，创建期间旧实例继续提供服务；创建失败时旧实例保持不变。
+   *
+   * 新实例认领日志槽位时清除旧实例的记录，不会恢复出旧实例缓冲区中的ID；
+   * 替换完成后才关闭旧实例（关闭后不再申请号段）。
+   */
+  private void replace(String name, Pair<SequenceDef, Sequencable> current, final SequenceDef seqDef)
+      throws GidException {
+    Sequencable sequence;
+    if (this.lazy) {
+      sequence = new LazySequence(name, new LazySequence.Factory() {
+        @Override
+        public Sequencable create() throws GidException {
+          return build(seqDef);
+        }
+      });
+    } else {
+      try {
+        sequence = build(seqDef);
+      } catch (GidException | RuntimeException e) {
+        // 新实例可能已认领日志槽位，旧实例继续服务需取回
+        Sequencable old = unwrap(current.getValue());
+        if (old instanceof Breadcrumb) {
+          ((Breadcrumb) old).reclaimJournal();
+        }
+        throw e;
+      }
+    }
+    sequences.put(name, new Pair<>(seqDef, sequence));
+    SequenceHandle handle = handles.get(name);
+    if (null != handle) {
+      handle.bind(sequence);
+    }
+    close(current.getValue());
+    log.info("Replace sequence > {},{}", seqDef.name(), seqDef.type());
+  }
+
+  /**
+   * 移除序列，句柄解除绑定
+   */
+  private void retire(String name) {
+    configured.remove(name);
+    Pair<SequenceDef, Sequencable> current = sequences.remove(name);
+    statuses.remove(name);
+    SequenceHandle handle = handles.get(name);
+    if (null != handle) {
+      handle.bind(null);
+    }
+    if (null != current) {
+      close(current.getValue());
+    }
+    log.info("Retire sequence > {}", name);
+  }
+
+  /**
+   * 关闭已创建的序列实例：breadcrumb作废日志号段、停止维护应急储备并不再申请号段，
+   * 仍持有实例的调用方只能取完缓冲区与储备中剩余的ID，此后取号失败；延迟序列此后不再创建
+   */
+  private static void close(Sequencable seq) {
+    if (seq instanceof LazySequence) {
+      // 尚未创建的延迟序列此后也不能再被创建
+      ((LazySequence) seq).close();
+    } else if (seq instanceof Breadcrumb) {
+      ((Breadcrumb) seq).close();
+    }
+  }
+
+  private String configPath() {
+    return configFilePath == null ? DEFAULT_SEQ_DEF_FILE_PATH : configFilePath;
+  }
+
+  /**
+   * 序列定义来源，用于日志
+   */
+  private String configSource() {
+    return null == definitionPath ? configPath() : "zookeeper:" + definitionPath;
+  }
+
+  /**
+   * 从配置文件或zk节点的本地缓存读取序列定义
+   */
+  private List<SequenceDef> loadDefinitions() throws GidException {
+    NodeCache cache = this.definitionCache;
+    if (null != cache) {
+      ChildData data = cache.getCurrentData();
+      if (null == data) {
+        throw new GidException("Sequence definition node '" + definitionPath + "' not exists");
+      }
+      return ConfigLoader.load(data.getData(), configSource());
+    }
+    String path = configPath();
+    long modified = ConfigLoader.lastModified(path);
+    List<SequenceDef> seqDefs = ConfigLoader.load(path);
+    this.configModified = modified;
+    return seqDefs;
+  }
+
+  /**
+   * 启动zk中序列定义节点的本地缓存，节点变化时热加载
+   */
+  private void watchDefinitions() throws Exception {
+    NodeCache cache = new NodeCache(this.zkClient, this.definitionPath);
+    cache.start(true);
+    cache.getListenable().addListener(new NodeCacheListener() {
+      @Override
+      public void nodeChanged() {
+        if (!isStarted.get()) {
+          return;
+        }
+        try {
+          log.info("Sequence definitions in '{}' are changed, reload them > {}", definitionPath,
+              reload());
+        } catch (Exception e) {
+          log.warn("Reload sequence definitions in '{}' failure", definitionPath, e);
+        }
+      }
+    }, sequenceLoader);
+    this.definitionCache = cache;
+  }
+
+  /**
+   * 按序列定义创建序列实例
+   */
+  private Sequencable build(SequenceDef seqDef) throws GidException {
+    switch (seqDef.type()) {
+      case SNOWFLAKE:
+        return new Snowflake(seqDef, this.sysId, this.zkClient);
+      case TICKTOCK:
+        return new Ticktock(seqDef, this.sysId, this.zkClient);
+      case BREADCRUMB:
+        return new Breadcrumb(seqDef, this.zkClient, this.refillBatcher, this.journal,
+            this.stripe);
       default:
         throw new GidException("Not available sequence type : " + seqDef.type());
     }
+  }
 
-    sequences.put(seqDef.name().trim(), new Pair<>(seqDef, sequence));
-    log.info("Add sequence > {},{}", seqDef.name(), seqDef.type());
+  /**
+   * 获取延迟序列背后已创建的序列
+   *
+   * @return 序列实例，延迟序列尚未创建时返回null
+   */
+  private static Sequencable unwrap(Sequencable seq) {
+    return seq instanceof LazySequence ? ((LazySequence) seq).target() : seq;
+  }
+
+  /**
+   * 等待正在创建的序列
+   */
+  private Sequencable await(String seqName, SettableFuture<Sequencable> future)
+      throws GidException {
+    try {
+      // 连接等待已由构造函数完成，此处只需覆盖创建序列本身的耗时
+      return future.get(CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new GidException("sequence '" + seqName + "' failed to load", e.getCause());
+    } catch (TimeoutException e) {
+      throw new GidException("sequence '" + seqName + "' is still loading");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GidException(e);
+    }
   }
 
   /**
@@ -303,29 +1103,35 @@ public class Sequencer {
 
 
   /**
-   * 加载序列
+   * 加载序列，各序列并行创建
    *
-   * @param configFilePath 序列配置文件路径
+   * @return 所有序列创建结束时完成的future，创建失败的序列对应元素为null
    */
-  private void loadSequences(String configFilePath) {
+  private ListenableFuture<List<Sequencable>> loadSequences() {
     List<SequenceDef> seqDefs = null;
-    String finalConfigPath = (configFilePath == null ? DEFAULT_SEQ_DEF_FILE_PATH : configFilePath);
+    String source = configSource();
     try {
-      seqDefs = ConfigLoader.load(finalConfigPath);
-    } catch (GidException e) {
-      log.warn("Load sequence define file from '{}' failure", finalConfigPath, e);
+      if (null != definitionPath) {
+        watchDefinitions();
+      }
+      seqDefs = loadDefinitions();
+    } catch (Exception e) {
+      log.warn("Load sequence define file from '{}' failure", source, e);
     }
 
-    try {
-      if (null == seqDefs || 0 == seqDefs.size()) {
-        log.warn("Nothing to Load sequence define file from '{}'", finalConfigPath);
-      } else {
-        for (SequenceDef seqDef : seqDefs) {
-          add(seqDef);
+    List<ListenableFuture<Sequencable>> futures = new ArrayList<ListenableFuture<Sequencable>>();
+    if (null == seqDefs || 0 == seqDefs.size()) {
+      log.warn("Nothing to Load sequence define file from '{}'", source);
+    } else {
+      for (SequenceDef seqDef : seqDefs) {
+        try {
+          futures.add(addAsync(seqDef));
+          configured.add(seqDef.name().trim());
+        } catch (GidException | RuntimeException e) {
+          log.warn("Load sequence <{}> from '{}' failure", seqDef.name(), source, e);
         }
       }
-    } catch (GidException e) {
-      log.warn("Load sequence define file from '{}' failure", finalConfigPath, e);
     }
+    return Futures.successfulAsList(futures);
   }
 }
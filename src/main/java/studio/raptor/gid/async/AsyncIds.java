@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.Callable;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.kind.LongSequence;
+
+/**
+ * 异步取号工具类。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public final class AsyncIds {
+
+  /**
+   * 执行阻塞取号的线程池（无缓冲的breadcrumb每次取号都要写zk）
+   */
+  private static ListeningExecutorService blockingExecutor = MoreExecutors
+      .listeningDecorator(ExecutorUtil.createCachedThreadPool("async_id"));
+
+  private AsyncIds() {
+  }
+
+  /**
+   * 异步获取下一个序列值，序列本身支持异步时直接调用，否则在后台线程中取号
+   *
+   * @param sequence 序列
+   * @return 序列值future
+   */
+  public static ListenableFuture<Long> nextIdAsync(LongSequence sequence) {
+    if (sequence instanceof AsyncSequence) {
+      return ((AsyncSequence) sequence).nextIdAsync();
+    }
+    return supply(sequence);
+  }
+
+  /**
+   * 在后台线程中取号
+   *
+   * @param sequence 序列
+   * @return 序列值future
+   */
+  public static ListenableFuture<Long> supply(final LongSequence sequence) {
+    return blockingExecutor.submit(new Callable<Long>() {
+      @Override
+      public Long call() {
+        return sequence.nextLong();
+      }
+    });
+  }
+
+  /**
+   * 立即取号，结果（或异常）包装为已完成的future
+   *
+   * @param sequence 序列
+   * @return 已完成的序列值future
+   */
+  public static ListenableFuture<Long> immediate(LongSequence sequence) {
+    try {
+      return Futures.immediateFuture(sequence.nextLong());
+    } catch (RuntimeException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+}
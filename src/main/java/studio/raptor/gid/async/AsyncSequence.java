@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * 异步序列。
+ *
+ * 取号不阻塞调用线程：缓冲区中有ID时返回已完成的future，否则由填充线程在号段申请完成后完成，
+ * 适合在事件循环线程中使用。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface AsyncSequence {
+
+  /**
+   * 异步获取下一个序列值
+   *
+   * @return 序列值future，失败时以{@link studio.raptor.gid.common.IdUnavailableException}等异常完成
+   */
+  ListenableFuture<Long> nextIdAsync();
+
+  /**
+   * 获取序列值流，按订阅者的请求量推送序列值
+   *
+   * @return 序列值发布者
+   */
+  IdPublisher ids();
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+/**
+ * 序列值发布者。
+ *
+ * 语义与Reactive Streams的Publisher一致（项目基于Java 7构建，无法使用java.util.concurrent.Flow），
+ * 订阅者通过{@link IdSubscription#request(long)}声明需求，发布者不会推送超出需求的序列值。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface IdPublisher {
+
+  /**
+   * 订阅序列值
+   *
+   * @param subscriber 订阅者
+   */
+  void subscribe(IdSubscriber subscriber);
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+/**
+ * 序列值订阅者。
+ *
+ * 同一订阅者的各回调串行调用，不会并发。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface IdSubscriber {
+
+  /**
+   * 订阅成功，此后通过subscription请求序列值
+   *
+   * @param subscription 订阅
+   */
+  void onSubscribe(IdSubscription subscription);
+
+  /**
+   * 推送序列值
+   *
+   * @param id 序列值
+   */
+  void onNext(long id);
+
+  /**
+   * 取号失败，订阅终止
+   *
+   * @param t 异常
+   */
+  void onError(Throwable t);
+
+  /**
+   * 序列值推送完毕，订阅终止
+   */
+  void onComplete();
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 基于{@link AsyncSequence}的序列值发布者。
+ *
+ * 每个订阅按需求逐个异步取号：缓冲区有ID时在请求线程中直接推送，缓冲区取空时等待填充线程完成后继续，
+ * 任何线程都不会因号段申请而阻塞。序列值流是无限的，只会因取号失败或取消而终止。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class SequencePublisher implements IdPublisher {
+
+  private static Logger log = LoggerFactory.getLogger(SequencePublisher.class);
+
+  private final AsyncSequence sequence;
+
+  public SequencePublisher(AsyncSequence sequence) {
+    this.sequence = sequence;
+  }
+
+  @Override
+  public void subscribe(IdSubscriber subscriber) {
+    Subscription subscription = new Subscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * 单个订阅，所有推送在drain循环中串行进行
+   */
+  private class Subscription implements IdSubscription, Runnable {
+
+    private final IdSubscriber subscriber;
+
+    private final AtomicLong requested = new AtomicLong(0);
+
+    private final AtomicInteger wip = new AtomicInteger(0);
+
+    /**
+     * 尚未完成的取号
+     */
+    private ListenableFuture<Long> pending;
+
+    private volatile boolean cancelled = false;
+
+    private boolean done = false;
+
+    Subscription(IdSubscriber subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Request must be positive, but was " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = requested.get();
+        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!requested.compareAndSet(current, next));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    /**
+     * 取号完成回调
+     */
+    @Override
+    public void run() {
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      for (; ; ) {
+        emitLoop();
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    private void emitLoop() {
+      for (; ; ) {
+        if (done) {
+          return;
+        }
+        if (cancelled) {
+          done = true;
+          if (null != pending) {
+            pending.cancel(false);
+            pending = null;
+          }
+          return;
+        }
+        ListenableFuture<Long> future = pending;
+        if (null == future) {
+          if (requested.get() == 0) {
+            return;
+          }
+          future = sequence.nextIdAsync();
+          if (!future.isDone()) {
+            pending = future;
+            future.addListener(this, MoreExecutors.directExecutor());
+            return;
+          }
+        } else if (!future.isDone()) {
+          return;
+        }
+        pending = null;
+        emit(future);
+      }
+    }
+
+    private void emit(ListenableFuture<Long> future) {
+      long id;
+      try {
+        id = future.get();
+      } catch (ExecutionException e) {
+        done = true;
+        subscriber.onError(e.getCause());
+        return;
+      } catch (Exception e) {
+        done = true;
+        subscriber.onError(e);
+        return;
+      }
+      if (requested.get() != Long.MAX_VALUE) {
+        requested.decrementAndGet();
+      }
+      try {
+        subscriber.onNext(id);
+      } catch (Throwable t) {
+        log.warn("Subscriber onNext failure, cancel subscription", t);
+        cancelled = true;
+      }
+    }
+  }
+}
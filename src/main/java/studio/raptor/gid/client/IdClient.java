@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.server.IdServer;
+import studio.raptor.gid.server.Protocol;
+
+/**
+ * <pre>
+ * 序列服务客户端。
+ *
+ * 与{@link IdServer}保持若干条长连接，请求按轮询分配到各连接；
+ * 同一连接上可以有任意多个未完成的请求（pipelining），不必等待上一个响应，响应通过requestId对应。
+ * 每条连接有一个读线程负责接收响应并完成相应的future。
+ *
+ * 连接断开时其上未完成的请求全部失败，下一次请求时重新建立连接；
+ * 每个请求有独立的超时，超时未收到响应时以{@link GidException}失败并从未完成请求中移除。
+ * 逐个取号请使用{@link #sequence(String, int)}，按号段预取到本地，每个号段只需一次网络往返。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class IdClient implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(IdClient.class);
+
+  private static final int CONNECT_TIMEOUT_MS = 3000;
+
+  /**
+   * 默认请求超时时间（毫秒）
+   */
+  public static final long DEFAULT_REQUEST_TIMEOUT_MS = 3000;
+
+  /**
+   * 请求超时检查（所有客户端共享），取消的检查任务立即移除
+   */
+  private static ScheduledThreadPoolExecutor timeouts = (ScheduledThreadPoolExecutor) ExecutorUtil
+      .createScheduledThreadPool("id_client_timeout", 1);
+
+  static {
+    timeouts.setRemoveOnCancelPolicy(true);
+  }
+
+  private final InetSocketAddress address;
+
+  private final Connection[] connections;
+
+  private final ReentrantLock connectLock = new ReentrantLock();
+
+  private final AtomicInteger nextRequestId = new AtomicInteger(0);
+
+  private final AtomicInteger nextConnection = new AtomicInteger(0);
+
+  private final long requestTimeoutMs;
+
+  private volatile boolean closed = false;
+
+  /**
+   * 构造函数
+   *
+   * @param host 序列服务地址
+   * @param port 序列服务端口
+   * @param connections 连接数
+   */
+  public IdClient(String host, int port, int connections) {
+    this(new InetSocketAddress(host, port), connections);
+  }
+
+  /**
+   * 构造函数，连接在首次请求时建立
+   *
+   * @param address 序列服务地址
+   * @param connections 连接数
+   */
+  public IdClient(InetSocketAddress address, int connections) {
+    this(address, connections, DEFAULT_REQUEST_TIMEOUT_MS);
+  }
+
+  /**
+   * 构造函数，连接在首次请求时建立
+   *
+   * @param address 序列服务地址
+   * @param connections 连接数
+   * @param requestTimeoutMs 请求超时时间（毫秒）
+   */
+  public IdClient(InetSocketAddress address, int connections, long requestTimeoutMs) {
+    Preconditions.checkArgument(connections > 0,
+        "Connections must be greater than 0,cur val:" + connections);
+    Preconditions.checkArgument(requestTimeoutMs > 0,
+        "Request timeout must be greater than 0,cur val:" + requestTimeoutMs);
+    this.address = Preconditions.checkNotNull(address, "Address can not be null");
+    this.connections = new Connection[connections];
+    this.requestTimeoutMs = requestTimeoutMs;
+  }
+
+  /**
+   * 获取按号段预取的远程序列
+   *
+   * @param name 序列名称
+   * @param blockSize 每次预取的ID数量
+   * @return 远程序列
+   */
+  public RemoteSequence sequence(String name, int blockSize) {
+    return new RemoteSequence(this, name, blockSize);
+  }
+
+  /**
+   * 异步批量取号
+   *
+   * @param name 序列名称
+   * @param count 数量，范围[1,{@link Protocol#MAX_BATCH}]
+   * @return 序列值future，服务端返回错误、请求超时或连接断开时以{@link GidException}失败
+   */
+  public ListenableFuture<long[]> nextIds(String name, int count) {
+    Preconditions.checkArgument(count > 0 && count <= Protocol.MAX_BATCH,
+        "Count must be in [1," + Protocol.MAX_BATCH + "],cur val:" + count);
+    return send(count == 1 ? Protocol.OP_NEXT_ID : Protocol.OP_NEXT_IDS, name, count);
+  }
+
+  /**
+   * 异步租用号段（服务端需启用号段代理）
+   *
+   * @param name 序列名称
+   * @param count 号段中的ID数量
+   * @return {起始ID, 步长, 数量} future，服务端返回错误、请求超时或连接断开时以{@link GidException}失败
+   */
+  public ListenableFuture<long[]> lease(String name, int count) {
+    Preconditions.checkArgument(count > 0, "Count must be greater than 0,cur val:" + count);
+    return send(Protocol.OP_LEASE, name, count);
+  }
+
+  private ListenableFuture<long[]> send(byte opcode, String name, int count) {
+    byte[] bytes = name.getBytes(Charsets.UTF_8);
+    Preconditions.checkArgument(bytes.length <= Short.MAX_VALUE, "Sequence name is too long");
+
+    Connection connection;
+    try {
+      connection = connection();
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(
+          new GidException("Can not connect to id server " + address, e));
+    }
+    return connection.send(opcode, nextRequestId.incrementAndGet(), bytes, count);
+  }
+
+  /**
+   * 关闭所有连接，未完成的请求全部失败
+   */
+  @Override
+  public void close() {
+    connectLock.lock();
+    try {
+      closed = true;
+      for (Connection connection : connections) {
+        if (null != connection) {
+          connection.close(new GidException("Id client is closed"));
+        }
+      }
+    } finally {
+      connectLock.unlock();
+    }
+  }
+
+  /**
+   * 轮询选取连接，连接不存在或已断开时重新建立
+   */
+  private Connection connection() throws IOException {
+    int slot = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+    Connection connection = connections[slot];
+    if (null != connection && connection.isOpen()) {
+      return connection;
+    }
+    connectLock.lock();
+    try {
+      if (closed) {
+        throw new IOException("Id client is closed");
+      }
+      connection = connections[slot];
+      if (null == connection || !connection.isOpen()) {
+        connection = new Connection(slot);
+        connections[slot] = connection;
+      }
+      return connection;
+    } finally {
+      connectLock.unlock();
+    }
+  }
+
+  /**
+   * 到序列服务的一条连接
+   */
+  private class Connection implements Runnable {
+
+    private final SocketChannel channel;
+
+    /**
+     * 未完成的请求
+     */
+    private final Map<Integer, SettableFuture<long[]>> pending =
+        new ConcurrentHashMap<Integer, SettableFuture<long[]>>();
+
+    /**
+     * 写请求帧的缓冲区，由writeLock保护
+     */
+    private ByteBuffer out = ByteBuffer.allocate(256);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * 读响应帧的缓冲区，只由读线程访问
+     */
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+
+    private volatile boolean open = true;
+
+    Connection(int slot) throws IOException {
+      this.channel = SocketChannel.open();
+      try {
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().connect(address, CONNECT_TIMEOUT_MS);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      Thread reader = new Thread(this, "id_client_reader-" + slot);
+      reader.setDaemon(true);
+      reader.start();
+      log.info("Id client connected to {}", address);
+    }
+
+    boolean isOpen() {
+      return open;
+    }
+
+    /**
+     * 发送请求帧，不等待响应
+     */
+    ListenableFuture<long[]> send(byte opcode, int requestId, byte[] name, int count) {
+      SettableFuture<long[]> future = SettableFuture.create();
+      pending.put(requestId, future);
+      expireAfter(requestId, future);
+      writeLock.lock();
+      try {
+        int size = Protocol.requestSize(name);
+        if (out.capacity() < size) {
+          out = ByteBuffer.allocate(size);
+        }
+        out.clear();
+        Protocol.writeRequest(out, opcode, requestId, name, count);
+        out.flip();
+        while (out.hasRemaining()) {
+          channel.write(out);
+        }
+      } catch (IOException e) {
+        close(new GidException("Failed to send request to id server " + address, e));
+      } finally {
+        writeLock.unlock();
+      }
+      // 连接已关闭时close可能先于put执行，此处补偿
+      if (!open && pending.remove(requestId) == future) {
+        future.setException(new GidException("Connection to id server " + address + " is closed"));
+      }
+      return future;
+    }
+
+    /**
+     * 请求超时仍未完成时移除并以失败完成，请求完成时取消超时检查
+     */
+    private void expireAfter(final int requestId, final SettableFuture<long[]> future) {
+      final ScheduledFuture<?> expiry = timeouts.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (pending.remove(requestId, future)) {
+            future.setException(new GidException(
+                "Request " + requestId + " to id server " + address + " timeout"));
+          }
+        }
+      }, requestTimeoutMs, TimeUnit.MILLISECONDS);
+      future.addListener(new Runnable() {
+        @Override
+        public void run() {
+          expiry.cancel(false);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 接收响应（读线程）
+     */
+    @Override
+    public void run() {
+      try {
+        while (open) {
+          header.clear();
+          readFully(header);
+          int length = header.getInt(0);
+          if (in.capacity() < length) {
+            in = ByteBuffer.allocate(length);
+          }
+          in.clear();
+          in.limit(length);
+          readFully(in);
+          in.flip();
+          complete(in);
+        }
+        close(new GidException("Connection to id server " + address + " is closed"));
+      } catch (IOException e) {
+        close(new GidException("Connection to id server " + address + " is broken", e));
+      }
+    }
+
+    private void complete(ByteBuffer frame) {
+      int requestId = frame.getInt();
+      byte status = frame.get();
+      SettableFuture<long[]> future = pending.remove(requestId);
+      if (null == future) {
+        // 请求已超时
+        log.debug("Discard late response {} from id server {}", requestId, address);
+        return;
+      }
+      if (status == Protocol.STATUS_OK) {
+        long[] ids = new long[frame.getInt()];
+        frame.asLongBuffer().get(ids);
+        future.set(ids);
+        return;
+      }
+      byte[] message = new byte[frame.getShort() & 0xffff];
+      frame.get(message);
+      future.setException(new GidException(
+          "Id server returned status " + status + " : " + new String(message, Charsets.UTF_8)));
+    }
+
+    private void readFully(ByteBuffer dst) throws IOException {
+      while (dst.hasRemaining()) {
+        if (channel.read(dst) < 0) {
+          throw new EOFException("Id server " + address + " closed the connection");
+        }
+      }
+    }
+
+    /**
+     * 关闭连接，未完成的请求全部失败
+     */
+    void close(GidException cause) {
+      if (open) {
+        open = false;
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        if (!closed) {
+          log.warn("Connection to id server {} is closed : {}", address, cause.getMessage());
+        }
+      }
+      for (Integer requestId : pending.keySet()) {
+        SettableFuture<long[]> future = pending.remove(requestId);
+        if (null != future) {
+          future.setException(cause);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.client;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.server.SegmentProxy;
+
+/**
+ * 经由号段代理（{@link SegmentProxy}）申请号段的计数器。
+ *
+ * 应用节点的ID缓冲器使用此计数器时不再直接写zookeeper，而是向代理租用号段；
+ * 计数器的初始化与重置由代理侧的序列负责，此处不支持。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class ProxyCounter implements Counter {
+
+  /**
+   * 租用号段的超时时间（毫秒）
+   */
+  private static int lease_timeout_ms = 3000;
+
+  private final IdClient client;
+
+  private final String name;
+
+  private final long incr;
+
+  /**
+   * 构造函数
+   *
+   * @param client 连接号段代理的客户端
+   * @param name 序列名称
+   * @param incr 序列步长，必须与代理侧的序列定义一致
+   */
+  public ProxyCounter(IdClient client, String name, long incr) {
+    this.client = client;
+    this.name = name;
+    this.incr = incr;
+  }
+
+  @Override
+  public boolean initialize(long start) throws GidException {
+    return false;
+  }
+
+  @Override
+  public long get() throws GidException {
+    throw new GidException("Proxy counter of " + name + " does not support get");
+  }
+
+  @Override
+  public long getAndAdd(long delta) throws GidException {
+    long count = delta / incr;
+    if (count <= 0 || count > Integer.MAX_VALUE || count * incr != delta) {
+      throw new GidException("Delta " + delta + " is not a multiple of incr " + incr);
+    }
+    long[] segment;
+    try {
+      segment = client.lease(name, (int) count).get(lease_timeout_ms, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GidException(e);
+    } catch (ExecutionException e) {
+      throw new GidException("Lease segment of " + name + " failure", e.getCause());
+    } catch (TimeoutException e) {
+      throw new GidException("Lease segment of " + name + " timeout", e);
+    }
+    if (segment.length != 3 || segment[1] != incr || segment[2] != count) {
+      throw new GidException("Unexpected segment of " + name + " from proxy : "
+          + Arrays.toString(segment));
+    }
+    return segment[0];
+  }
+
+  @Override
+  public void forceSet(long value) throws GidException {
+    throw new GidException("Proxy counter of " + name + " does not support forceSet");
+  }
+
+  @Override
+  public String toString() {
+    return "proxy[" + name + "]";
+  }
+}
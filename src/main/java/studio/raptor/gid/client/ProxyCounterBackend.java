@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.client;
+
+import com.google.common.base.Preconditions;
+import org.apache.curator.utils.ZKPaths;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.CounterBackend;
+import studio.raptor.gid.counter.CounterBackends;
+import studio.raptor.gid.counter.CounterContext;
+import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+
+/**
+ * 经由号段代理申请号段的计数器后端，计数器为{@link ProxyCounter}。
+ *
+ * 需要连接号段代理的客户端，以实例注册（{@link CounterBackends#register(CounterBackend)}），
+ * 序列的backend属性设为proxy即可，
+ * 代理侧须有同名、同步长、以zookeeper为后端的未分片序列。
+ * 代理按序列名称租出号段，因此不支持分片或切分条带的序列。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class ProxyCounterBackend implements CounterBackend {
+
+  public static final String NAME = "proxy";
+
+  private final IdClient client;
+
+  /**
+   * 构造函数
+   *
+   * @param client 连接号段代理的客户端
+   */
+  public ProxyCounterBackend(IdClient client) {
+    this.client = Preconditions.checkNotNull(client, "Id client can not be null");
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Counter create(String key, CounterContext context) throws GidException {
+    BreadcrumbDef seqDef = context.require(BreadcrumbDef.class);
+    if (!ZKPaths.makePath(Breadcrumb.SEQ_ROOT_PATH, seqDef.name()).equals(key)) {
+      throw new GidException("Proxy backend does not support sharded or striped sequence "
+          + seqDef.name() + " : " + key);
+    }
+    return new ProxyCounter(client, seqDef.name(), seqDef.incr());
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.async.AsyncIds;
+import studio.raptor.gid.async.AsyncSequence;
+import studio.raptor.gid.async.IdPublisher;
+import studio.raptor.gid.async.SequencePublisher;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.kind.LongSequence;
+import studio.raptor.gid.server.Protocol;
+
+/**
+ * <pre>
+ * 远程序列。
+ *
+ * 与{@link studio.raptor.gid.kind.IdBuffer}相同的预取策略：本地号段的剩余ID低于阈值时提前异步申请下一个号段，
+ * 当前号段用完时切换到已预取的号段，每个号段只需一次网络往返，取号本身不访问网络。
+ * 同一时刻最多只有一个预取请求；等待预取号段时不持有锁，失败（包括请求超时）的预取请求被丢弃，
+ * 下一次取号时重新发起。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class RemoteSequence implements LongSequence, AsyncSequence {
+
+  private static Logger log = LoggerFactory.getLogger(RemoteSequence.class);
+
+  /**
+   * 本地号段空闲比率，剩余ID不多于号段大小的此比例时预取下一个号段
+   */
+  private static double block_vacancy_rate = 0.3;
+
+  /**
+   * 当前号段用完时等待预取号段的超时时间（毫秒）
+   */
+  private static int fetch_timeout_ms = 3000;
+
+  private static final long[] EMPTY = new long[0];
+
+  private final IdClient client;
+
+  private final String name;
+
+  private final int blockSize;
+
+  /**
+   * 剩余ID不多于此数量时预取
+   */
+  private final int prefetchThreshold;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * 当前号段
+   */
+  private long[] block = EMPTY;
+
+  /**
+   * 当前号段中下一个ID的下标
+   */
+  private int cursor = 0;
+
+  /**
+   * 预取中的号段
+   */
+  private ListenableFuture<long[]> prefetch;
+
+  RemoteSequence(IdClient client, String name, int blockSize) {
+    Preconditions.checkArgument(blockSize > 0 && blockSize <= Protocol.MAX_BATCH,
+        "Block size must be in [1," + Protocol.MAX_BATCH + "],cur val:" + blockSize);
+    this.client = client;
+    this.name = name;
+    this.blockSize = blockSize;
+    this.prefetchThreshold = (int) Math.floor(blockSize * block_vacancy_rate);
+  }
+
+  /**
+   * 序列名称
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * 本地可用的ID数量（不含预取中的号段）
+   */
+  public int available() {
+    lock.lock();
+    try {
+      return block.length - cursor;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long nextLong() {
+    lock.lock();
+    try {
+      if (cursor == block.length) {
+        switchBlock();
+      }
+      long id = block[cursor++];
+      prefetchIfNeeded();
+      return id;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    lock.lock();
+    try {
+      while (len > 0) {
+        if (cursor == block.length) {
+          switchBlock();
+        }
+        int n = Math.min(len, block.length - cursor);
+        System.arraycopy(block, cursor, dst, off, n);
+        cursor += n;
+        off += n;
+        len -= n;
+      }
+      prefetchIfNeeded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ListenableFuture<Long> nextIdAsync() {
+    lock.lock();
+    try {
+      if (cursor < block.length) {
+        return AsyncIds.immediate(this);
+      }
+    } finally {
+      lock.unlock();
+    }
+    // 本地号段已用完，等待预取号段需在后台线程中进行
+    return AsyncIds.supply(this);
+  }
+
+  @Override
+  public IdPublisher ids() {
+    return new SequencePublisher(this);
+  }
+
+  /**
+   * 剩余ID低于阈值且没有预取中的号段时发起预取（持有lock）
+   */
+  private void prefetchIfNeeded() {
+    if (null == prefetch && block.length - cursor <= prefetchThreshold) {
+      prefetch = client.nextIds(name, blockSize);
+    }
+  }
+
+  /**
+   * 切换到预取的号段（调用时持有lock）。
+   *
+   * 等待预取号段期间释放lock，其他线程可同时等待同一个预取请求；返回时当前号段中一定有可用的ID。
+   */
+  private void switchBlock() {
+    while (cursor == block.length) {
+      if (null == prefetch) {
+        prefetch = client.nextIds(name, blockSize);
+      }
+      ListenableFuture<long[]> waiting = prefetch;
+      long[] next = null;
+      Throwable failure = null;
+      boolean interrupted = false;
+      lock.unlock();
+      try {
+        next = waiting.get(fetch_timeout_ms, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (TimeoutException e) {
+        // 保留预取请求，响应到达后仍可使用；请求本身超时后以失败完成，届时丢弃
+        log.warn("Fetch block of sequence {} timeout", name);
+      } catch (ExecutionException e) {
+        failure = e.getCause();
+      } finally {
+        lock.lock();
+      }
+
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+        throw IdUnavailableException.INTERRUPTED;
+      }
+      if (null != failure) {
+        if (prefetch == waiting) {
+          prefetch = null;
+        }
+        log.warn("Fetch block of sequence {} failure : {}", name, failure.getMessage());
+        throw IdUnavailableException.UNAVAILABLE;
+      }
+      if (null == next) {
+        throw IdUnavailableException.UNAVAILABLE;
+      }
+      // 只有仍在等待该预取请求时才切换，其他线程可能已经切换过
+      if (prefetch == waiting) {
+        prefetch = null;
+        if (cursor == block.length) {
+          block = next;
+          cursor = 0;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "remote[" + name + "," + blockSize + "]";
+  }
+}
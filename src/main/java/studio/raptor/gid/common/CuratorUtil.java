@@ -17,8 +17,13 @@
 
 package studio.raptor.gid.common;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.SettableFuture;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
@@ -43,6 +48,50 @@ public class CuratorUtil {
   public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 10000; // 默认连接超时ms
   private static Logger log = LoggerFactory.getLogger(CuratorUtil.class);
 
+  /**
+   * 每个客户端首次等待连接的结果（弱引用，客户端回收后自动清除）
+   */
+  private static final ConcurrentMap<CuratorFramework, SettableFuture<Boolean>> connectWaits =
+      new MapMaker().weakKeys().makeMap();
+
+  /**
+   * 等待客户端连接。
+   *
+   * 每个客户端只等待一次：首个调用者阻塞等待（最长timeoutMs），并发调用者共享同一次等待的结果；
+   * 等待结束后的调用直接返回当前连接状态，不再阻塞。
+   *
+   * @param client zk客户端
+   * @param timeoutMs 首次等待的超时时间（毫秒）
+   * @return 是否已连接
+   * @throws InterruptedException 等待被中断
+   */
+  public static boolean awaitConnected(CuratorFramework client, long timeoutMs)
+      throws InterruptedException {
+    SettableFuture<Boolean> wait = connectWaits.get(client);
+    if (null == wait) {
+      SettableFuture<Boolean> created = SettableFuture.create();
+      wait = connectWaits.putIfAbsent(client, created);
+      if (null == wait) {
+        boolean connected = false;
+        try {
+          connected = client.blockUntilConnected((int) timeoutMs, TimeUnit.MILLISECONDS);
+        } finally {
+          created.set(connected);
+        }
+        return connected;
+      }
+    }
+
+    if (!wait.isDone()) {
+      try {
+        wait.get();
+      } catch (ExecutionException e) {
+        // 不会发生，等待结果只通过set设置
+      }
+    }
+    return client.getZookeeperClient().isConnected();
+  }
+
   /**
    * 创建zookeeper客户端
    *
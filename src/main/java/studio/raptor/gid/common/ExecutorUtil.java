@@ -22,6 +22,8 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -130,6 +132,45 @@ public class ExecutorUtil {
     return executorService;
   }
 
+  /**
+   * 创建有界队列的线程池：线程与队列都满时拒绝任务（抛出{@link java.util.concurrent.RejectedExecutionException}），
+   * 不会在提交线程上执行任务，适用于提交方不能被阻塞的场景（如取号线程、IO线程）
+   *
+   * @param name 线程池名称
+   * @param size 最大线程数量（空闲30秒后回收）
+   * @param queueCapacity 等待队列容量
+   * @return executorService
+   */
+  public static final ExecutorService createBoundedThreadPool(String name, int size,
+      int queueCapacity) {
+    Preconditions.checkArgument(!executors.containsKey(name), "%s executor exists", name);
+    ThreadPoolExecutor executorService = new ThreadPoolExecutor(size,
+        size,
+        30L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(queueCapacity),
+        new NameableThreadFactory(name, true),
+        new ThreadPoolExecutor.AbortPolicy());
+    executorService.allowCoreThreadTimeOut(true);
+    executors.put(name, executorService);
+    return executorService;
+  }
+
+  /**
+   * 创建定时任务线程池
+   *
+   * @param name 线程池名称
+   * @param size 线程池大小
+   * @return scheduledExecutorService
+   */
+  public static final ScheduledExecutorService createScheduledThreadPool(String name, int size) {
+    Preconditions.checkArgument(!executors.containsKey(name), "%s executor exists", name);
+    ScheduledExecutorService executorService = Executors
+        .newScheduledThreadPool(size, new NameableThreadFactory(name, true));
+    executors.put(name, executorService);
+    return executorService;
+  }
+
   /**
    * 可命名的线程工厂
    */
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.common;
+
+/**
+ * 暂时无法取号。
+ *
+ * 非受检异常，只使用预先分配的实例，不记录堆栈，抛出时不产生额外开销；
+ * 具体原因见相应的日志。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public final class IdUnavailableException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * ID缓冲区已取空
+   */
+  public static final IdUnavailableException EXHAUSTED =
+      new IdUnavailableException("Id pool is empty ,maybe too fast to get");
+
+  /**
+   * 远端（zookeeper等）不可用
+   */
+  public static final IdUnavailableException UNAVAILABLE =
+      new IdUnavailableException("Sequence backend is unavailable");
+
+  /**
+   * 时钟回拨
+   */
+  public static final IdUnavailableException CLOCK_MOVED_BACKWARDS =
+      new IdUnavailableException("Clock moved backwards, refusing to generate id");
+
+  /**
+   * 取号线程被中断
+   */
+  public static final IdUnavailableException INTERRUPTED =
+      new IdUnavailableException("Interrupted while waiting for id");
+
+  private IdUnavailableException(String message) {
+    super(message, null, false, false);
+  }
+}
@@ -1,6 +1,7 @@
 package studio.raptor.gid.common;
 
 
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -195,6 +196,61 @@ public class OnewayLinkedBlockingQueue<E> {
     return x;
   }
 
+  /**
+   * Retrieves and removes the head of this queue without waiting.
+   *
+   * @return the head of this queue, or <tt>null</tt> if this queue is empty
+   */
+  public E poll() {
+    final AtomicInteger count = this.count;
+    if (count.get() == 0) {
+      return null;
+    }
+    E x = null;
+    int c = -1;
+    final ReentrantLock takeLock = this.takeLock;
+    takeLock.lock();
+    try {
+      if (count.get() > 0) {
+        x = dequeue();
+        c = count.getAndDecrement();
+        if (c > 1) {
+          notEmpty.signal();
+        }
+      }
+    } finally {
+      takeLock.unlock();
+    }
+    return x;
+  }
+
+  /**
+   * 一次加锁取出至多maxElements个元素，不等待
+   *
+   * @param c 接收元素的集合
+   * @param maxElements 最多取出的元素数量
+   * @return 实际取出的元素数量
+   */
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (maxElements <= 0 || count.get() == 0) {
+      return 0;
+    }
+    final ReentrantLock takeLock = this.takeLock;
+    takeLock.lock();
+    try {
+      int n = Math.min(maxElements, count.get());
+      for (int i = 0; i < n; i++) {
+        c.add(dequeue());
+      }
+      if (n > 0 && count.getAndAdd(-n) > n) {
+        notEmpty.signal();
+      }
+      return n;
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
   /**
    * Atomically removes all of the elements from this queue.
    * The queue will be empty after this call returns.
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 速率计量器。
+ *
+ * 按固定窗口统计事件数量，窗口结束时以指数加权平均的方式平滑速率。
+ * 号段申请是突发的，窗口应明显长于两次申请的间隔。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class RateMeter {
+
+  /**
+   * 默认统计窗口（秒）
+   */
+  private static final long DEFAULT_WINDOW_SECONDS = 10;
+
+  /**
+   * 平滑系数，越大越偏向最近一个窗口
+   */
+  private static final double ALPHA = 0.3;
+
+  private final long windowNanos;
+
+  private long windowStart;
+
+  private long count;
+
+  private double rate;
+
+  private boolean measured;
+
+  public RateMeter() {
+    this(DEFAULT_WINDOW_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param window 统计窗口
+   * @param unit 统计窗口单位
+   */
+  public RateMeter(long window, TimeUnit unit) {
+    this.windowNanos = unit.toNanos(window);
+    this.windowStart = System.nanoTime();
+  }
+
+  /**
+   * 记录事件
+   *
+   * @param n 事件数量
+   */
+  public synchronized void mark(long n) {
+    roll(System.nanoTime());
+    count += n;
+  }
+
+  /**
+   * 获取每秒速率
+   *
+   * @return 每秒速率，尚无完整窗口时按当前窗口估算
+   */
+  public synchronized double rate() {
+    long now = System.nanoTime();
+    roll(now);
+    if (measured) {
+      return rate;
+    }
+    long elapsed = Math.max(now - windowStart, 1);
+    return count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+
+  private void roll(long now) {
+    long elapsed = now - windowStart;
+    if (elapsed < windowNanos) {
+      return;
+    }
+    double current = count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    rate = measured ? ALPHA * current + (1 - ALPHA) * rate : current;
+    measured = true;
+    count = 0;
+    windowStart = now;
+  }
+}
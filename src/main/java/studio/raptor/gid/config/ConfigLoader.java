@@ -18,39 +18,50 @@
 package studio.raptor.gid.config;
 
 import com.google.common.base.Strings;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 import studio.raptor.gid.common.GidException;
 import studio.raptor.gid.common.Type;
-import studio.raptor.gid.def.BreadcrumbDef;
 import studio.raptor.gid.def.DefaultBreadcrumbDef;
 import studio.raptor.gid.def.DefaultSnowflakeDef;
 import studio.raptor.gid.def.DefaultTicktockDef;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+import studio.raptor.gid.def.ImmutableSnowflakeDef;
+import studio.raptor.gid.def.ImmutableTicktockDef;
 import studio.raptor.gid.def.SequenceDef;
-import studio.raptor.gid.def.SnowflakeDef;
-import studio.raptor.gid.def.TicktockDef;
 
 /**
  * 序列配置加载。
  *
+ * <pre>
+ * 流式加载：SAX解析的同时按xsd校验，单次遍历即生成序列定义，不构建DOM，
+ * 耗时与内存只与序列定义的数量线性相关；编译后的xsd在进程内缓存复用。
+ *
+ * 序列定义文件依次从类路径、文件系统中查找，也可以直接从输入流加载。
+ * </pre>
+ *
  * @author Charley
  * @author bruce
  * @since 0.1
@@ -61,171 +72,230 @@ public final class ConfigLoader {
 
   private static final String XSD_PATH = "/gid.xsd";
 
+  /**
+   * 编译后的xsd（线程安全，可共享）
+   */
+  private static volatile Schema schema;
+
 
   /**
    * 加载序列定义文件
    *
-   * @param filePath 文件路径(类路径下)
+   * @param filePath 文件路径（类路径下，不存在时按文件系统路径查找）
    * @return 序列定义列表
-   * @throws GidException 验证不通过或解析等异常
+   * @throws GidException 文件不存在、验证不通过或解析等异常
    */
   public static List<SequenceDef> load(String filePath) throws GidException {
-    List<SequenceDef> seqDefs = new ArrayList<SequenceDef>();
-
-    if (validate(filePath)) {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      try {
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse(ConfigLoader.class.getResourceAsStream(filePath));
-        NodeList sequences = document.getElementsByTagName("sequences");
-        Element sequencesElement = (Element) sequences.item(0);
-        //
-        seqDefs.addAll(unmarshal(sequencesElement, Type.SNOWFLAKE));
-        seqDefs.addAll(unmarshal(sequencesElement, Type.TICKTOCK));
-        seqDefs.addAll(unmarshal(sequencesElement, Type.BREADCRUMB));
-        //
-      } catch (ParserConfigurationException | SAXException | IOException e) {
-        throw new GidException("Load sequence definition xml failure", e);
-      }
-    } else {
-      throw new GidException("Xml validation is not passed @" + filePath);
+    InputStream input;
+    try {
+      input = open(filePath);
+    } catch (IOException e) {
+      throw new GidException("Xml validation is not passed @" + filePath, e);
+    }
+    try {
+      return load(input, filePath);
+    } finally {
+      closeQuietly(input);
     }
-    return seqDefs;
   }
 
+  /**
+   * 加载序列定义内容（如存放在zookeeper中的序列定义）
+   *
+   * @param content 序列定义xml内容
+   * @param source 内容来源，用于日志
+   * @return 序列定义列表
+   * @throws GidException 验证不通过或解析等异常
+   */
+  public static List<SequenceDef> load(byte[] content, String source) throws GidException {
+    if (null == content) {
+      throw new GidException("Xml validation is not passed @" + source);
+    }
+    return load(new ByteArrayInputStream(content), source);
+  }
 
   /**
-   * 解编成序列定义对象列表
+   * 从输入流加载序列定义，输入流由调用方关闭
    *
-   * @param sequencesElement 对应xml中的sequences元素
-   * @param seqType 序列类型
+   * @param input xml输入流
+   * @param source 内容来源，用于日志
    * @return 序列定义列表
-   * @throws GidException 未知序列类型 或 序列定义不合法
+   * @throws GidException 验证不通过或解析等异常
    */
-  private static List<SequenceDef> unmarshal(Element sequencesElement, Type seqType)
-      throws GidException {
-    List<SequenceDef> seqDefs = new ArrayList<SequenceDef>();
-    // <breadcrumb ......./>  <snowflake ....../>
-    NodeList nodes = sequencesElement.getElementsByTagName(seqType.name);
-
-    int nodeNum = nodes.getLength();
-    for (int i = 0; i < nodeNum; i++) {
-      final Element e = (Element) nodes.item(i);
-      final String seqName = e.getAttribute("name");
-      switch (seqType) {
-        case SNOWFLAKE:
-          seqDefs.add(new SnowflakeDef() {
-            @Override
-            public String name() {
-              return seqName;
-            }
-
-            @Override
-            public int workerIdWidth() {
-              return Strings.isNullOrEmpty(e.getAttribute("workerIdWidth"))
-                  ? DefaultSnowflakeDef.DEFAULT_WORKERID_BITS
-                  : Integer.valueOf(e.getAttribute("workerIdWidth"));
-            }
-
-            @Override
-            public int sequenceWidth() {
-              return Strings.isNullOrEmpty(e.getAttribute("sequenceWidth"))
-                  ? DefaultSnowflakeDef.DEFAULT_SEQUENCE_BITS
-                  : Integer.valueOf(e.getAttribute("sequenceWidth"));
-            }
-          });
-          break;
-
-        case TICKTOCK:
-          seqDefs.add(new TicktockDef() {
-
-            @Override
-            public String name() {
-              return seqName;
-            }
-
-            @Override
-            public int workerIdWidth() {
-              return Strings.isNullOrEmpty(e.getAttribute("workerIdWidth"))
-                  ? DefaultTicktockDef.DEFAULT_WORKERID_BITS
-                  : Integer.valueOf(e.getAttribute("workerIdWidth"));
-            }
-
-            @Override
-            public int sequenceWidth() {
-              return Strings.isNullOrEmpty(e.getAttribute("sequenceWidth"))
-                  ? DefaultTicktockDef.DEFAULT_SEQUENCE_BITS
-                  : Integer.valueOf(e.getAttribute("sequenceWidth"));
-            }
-          });
-          break;
-        case BREADCRUMB:
-          seqDefs.add(new BreadcrumbDef() {
-            @Override
-            public String name() {
-              return seqName;
-            }
-
-            @Override
-            public int cache() {
-              return Strings.isNullOrEmpty(e.getAttribute("cache"))
-                  ? DefaultBreadcrumbDef.DEFAULT_CACHE
-                  : Integer.valueOf(e.getAttribute("cache"));
-            }
-
-            @Override
-            public long incr() {
-              return Strings.isNullOrEmpty(e.getAttribute("incr"))
-                  ? DefaultBreadcrumbDef.DEFAULT_INCR
-                  : Long.valueOf(e.getAttribute("incr"));
-            }
-
-            @Override
-            public long start() {
-              return Strings.isNullOrEmpty(e.getAttribute("start"))
-                  ? DefaultBreadcrumbDef.DEFAULT_START
-                  : Long.valueOf(e.getAttribute("start"));
-            }
-          });
-          break;
-        default:
-          throw new GidException("Unkonwn sequence name");
+  public static List<SequenceDef> load(InputStream input, String source) throws GidException {
+    DefinitionHandler handler = new DefinitionHandler();
+    try {
+      parse(input, source, handler);
+    } catch (SAXException e) {
+      if (e.getException() instanceof GidException) {
+        throw (GidException) e.getException();
       }
+      throw new GidException("Xml validation is not passed @" + source, e);
+    } catch (ParserConfigurationException | IOException e) {
+      throw new GidException("Load sequence definition xml failure", e);
     }
+    return handler.seqDefs;
+  }
 
-    return seqDefs;
+  /**
+   * 获取序列定义文件的最后修改时间
+   *
+   * @param filePath 文件路径（类路径下，不存在时按文件系统路径查找）
+   * @return 最后修改时间（毫秒），文件不存在或无法获取时返回0
+   */
+  public static long lastModified(String filePath) {
+    URL xml = ConfigLoader.class.getResource(filePath);
+    if (null == xml) {
+      return new File(filePath).lastModified();
+    }
+    try {
+      URLConnection connection = xml.openConnection();
+      // 避免jar包内的文件被缓存，读取不到更新
+      connection.setUseCaches(false);
+      try {
+        return connection.getLastModified();
+      } finally {
+        connection.getInputStream().close();
+      }
+    } catch (IOException e) {
+      log.warn("Get last modified time of '{}' failure", filePath, e);
+      return 0;
+    }
   }
 
   /**
    * xml文档合法性校验
    *
-   * @param xmlPath xml文件所在路径（类路径下）
+   * @param xmlPath xml文件路径（类路径下，不存在时按文件系统路径查找）
    * @return xml文档校验合法返回true，否则返回false
    */
   public static boolean validate(String xmlPath) {
-    SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-
-    Schema schema;
-    Validator validator;
+    InputStream input = null;
     try {
-      URL xsd = ConfigLoader.class.getResource(XSD_PATH);
-      if (null == xsd) {
-        throw new FileNotFoundException("Sequence xsd file is not found in classpath '" + XSD_PATH+"'");
-      }
-
-      URL xml = ConfigLoader.class.getResource(xmlPath);
-      if (null == xml) {
-        throw new FileNotFoundException("Sequence definition xml file is not found in classpath '" + xmlPath+"'");
-      }
-
-      schema = schemaFactory.newSchema(xsd);
-      validator = schema.newValidator();
-      Source source = new StreamSource(xml.getFile());
-      validator.validate(source);
+      input = open(xmlPath);
+      schema().newValidator().validate(new StreamSource(input, xmlPath));
       return true;
     } catch (Exception e) {
       log.error("Validate sequence definition xml fail", e);
       return false;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  /**
+   * 单次遍历：SAX事件先经过xsd校验再交给处理器，校验失败时抛出异常
+   */
+  private static void parse(InputStream input, String source, DefaultHandler handler)
+      throws ParserConfigurationException, SAXException, IOException {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader reader = factory.newSAXParser().getXMLReader();
+
+    ValidatorHandler validator = schema().newValidatorHandler();
+    validator.setContentHandler(handler);
+    reader.setContentHandler(validator);
+
+    InputSource inputSource = new InputSource(input);
+    inputSource.setSystemId(source);
+    reader.parse(inputSource);
+  }
+
+  /**
+   * 获取编译后的xsd，首次调用时编译
+   */
+  private static Schema schema() throws SAXException, FileNotFoundException {
+    Schema compiled = schema;
+    if (null == compiled) {
+      synchronized (ConfigLoader.class) {
+        compiled = schema;
+        if (null == compiled) {
+          URL xsd = ConfigLoader.class.getResource(XSD_PATH);
+          if (null == xsd) {
+            throw new FileNotFoundException(
+                "Sequence xsd file is not found in classpath '" + XSD_PATH + "'");
+          }
+          compiled = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(xsd);
+          schema = compiled;
+        }
+      }
+    }
+    return compiled;
+  }
+
+  /**
+   * 打开序列定义文件，依次从类路径、文件系统中查找
+   */
+  private static InputStream open(String filePath) throws IOException {
+    InputStream input = ConfigLoader.class.getResourceAsStream(filePath);
+    if (null != input) {
+      return input;
+    }
+    File file = new File(filePath);
+    if (file.isFile()) {
+      return new FileInputStream(file);
+    }
+    throw new FileNotFoundException(
+        "Sequence definition xml file is not found in classpath or file system '" + filePath + "'");
+  }
+
+  private static void closeQuietly(InputStream input) {
+    if (null != input) {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * 解编成序列定义对象，属性只解析一次，序列定义不持有任何解析状态
+   */
+  private static class DefinitionHandler extends DefaultHandler {
+
+    private final List<SequenceDef> seqDefs = new ArrayList<SequenceDef>();
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs)
+        throws SAXException {
+      try {
+        // <breadcrumb ......./>  <snowflake ....../>
+        if (Type.SNOWFLAKE.name.equals(localName)) {
+          seqDefs.add(new ImmutableSnowflakeDef(attrs.getValue("name"),
+              intAttr(attrs, "workerIdWidth", DefaultSnowflakeDef.DEFAULT_WORKERID_BITS),
+              intAttr(attrs, "sequenceWidth", DefaultSnowflakeDef.DEFAULT_SEQUENCE_BITS)));
+        } else if (Type.TICKTOCK.name.equals(localName)) {
+          seqDefs.add(new ImmutableTicktockDef(attrs.getValue("name"),
+              intAttr(attrs, "workerIdWidth", DefaultTicktockDef.DEFAULT_WORKERID_BITS),
+              intAttr(attrs, "sequenceWidth", DefaultTicktockDef.DEFAULT_SEQUENCE_BITS)));
+        } else if (Type.BREADCRUMB.name.equals(localName)) {
+          seqDefs.add(new ImmutableBreadcrumbDef(attrs.getValue("name"),
+              intAttr(attrs, "cache", DefaultBreadcrumbDef.DEFAULT_CACHE),
+              longAttr(attrs, "incr", DefaultBreadcrumbDef.DEFAULT_INCR),
+              longAttr(attrs, "start", DefaultBreadcrumbDef.DEFAULT_START),
+              intAttr(attrs, "reserve", DefaultBreadcrumbDef.DEFAULT_RESERVE),
+              intAttr(attrs, "shards", DefaultBreadcrumbDef.DEFAULT_SHARDS),
+              strAttr(attrs, "backend", DefaultBreadcrumbDef.DEFAULT_BACKEND)));
+        }
+      } catch (GidException e) {
+        throw new SAXException(e);
+      }
+    }
+
+    private static int intAttr(Attributes attrs, String name, int defaultValue) {
+      String value = attrs.getValue(name);
+      return Strings.isNullOrEmpty(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static String strAttr(Attributes attrs, String name, String defaultValue) {
+      String value = attrs.getValue(name);
+      return Strings.isNullOrEmpty(value) ? defaultValue : value.trim();
+    }
+
+    private static long longAttr(Attributes attrs, String name, long defaultValue) {
+      String value = attrs.getValue(name);
+      return Strings.isNullOrEmpty(value) ? defaultValue : Long.parseLong(value.trim());
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+
+/**
+ * 可报告可用性的计数器后端（可选接口）。
+ *
+ * 未实现本接口的后端视为始终可用，序列的应急储备不会被使用。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface AvailabilityAware {
+
+  /**
+   * 获取后端在指定上下文下的可用性
+   *
+   * @param context 创建计数器时使用的上下文
+   * @return 可用性
+   * @throws GidException 上下文缺少后端必需的资源
+   */
+  CounterAvailability availability(CounterContext context) throws GidException;
+}
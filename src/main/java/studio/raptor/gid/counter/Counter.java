@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+
+/**
+ * 序列计数器。
+ *
+ * 面包屑序列的ID缓冲器通过计数器申请号段：原子地将计数器增加delta，并返回增加前的值，
+ * 则 [返回值, 返回值 + delta) 即为本次申请到的号段。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface Counter {
+
+  /**
+   * 初始化计数器（仅当计数器尚不存在时生效）
+   *
+   * @param start 起始值
+   * @return 本次完成了初始化返回true，计数器已存在返回false
+   * @throws GidException 远端访问异常
+   */
+  boolean initialize(long start) throws GidException;
+
+  /**
+   * 获取计数器当前值
+   *
+   * @return 当前值
+   * @throws GidException 远端访问异常
+   */
+  long get() throws GidException;
+
+  /**
+   * 原子地增加delta
+   *
+   * @param delta 增量
+   * @return 增加前的值
+   * @throws GidException 远端访问异常
+   */
+  long getAndAdd(long delta) throws GidException;
+
+  /**
+   * 强制设置计数器的值
+   *
+   * @param value 新值
+   * @throws GidException 远端访问异常
+   */
+  void forceSet(long value) throws GidException;
+}
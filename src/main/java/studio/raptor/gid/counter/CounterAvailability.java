@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+/**
+ * 计数器后端的可用性。
+ *
+ * 面包屑序列据此决定何时改用应急储备：后端不可用（如zookeeper连接SUSPENDED/LOST）且缓冲区取空时从储备取号，
+ * 不可用期间不再申请新的储备号段。
+ *
+ * @author bruce
+ * @since 0.2
+ * @see AvailabilityAware
+ */
+public interface CounterAvailability {
+
+  /**
+   * 后端当前是否可用，只读本地状态，不访问后端
+   *
+   * @return 是否可用
+   */
+  boolean isAvailable();
+
+  /**
+   * 添加可用性监听器
+   *
+   * @param listener 监听器
+   */
+  void addListener(Listener listener);
+
+  /**
+   * 移除可用性监听器
+   *
+   * @param listener 监听器
+   */
+  void removeListener(Listener listener);
+
+  /**
+   * 可用性监听器
+   */
+  interface Listener {
+
+    /**
+     * 可用性变化
+     *
+     * @param available 是否可用
+     */
+    void availabilityChanged(boolean available);
+  }
+}
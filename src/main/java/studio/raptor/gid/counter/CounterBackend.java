@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+
+/**
+ * <pre>
+ * 计数器后端（SPI）。
+ *
+ * 后端只需提供“原子地增加N并返回增加前的值”的{@link Counter}，缓冲、预取、储备、分片与速率统计
+ * 均由面包屑序列在计数器之上实现，新增后端无需重复这些逻辑。
+ *
+ * 序列定义的backend属性按{@link #name()}选择后端，默认为zookeeper。后端可通过
+ * META-INF/services/studio.raptor.gid.counter.CounterBackend 由{@link java.util.ServiceLoader}发现，
+ * 需要外部资源（如数据源）的后端也可通过{@link CounterBackends#register(CounterBackend)}注册实例。
+ *
+ * 计数器由键与{@link CounterContext}创建，上下文按类型携带后端专有的资源（如zookeeper后端的
+ * CuratorFramework与{@link RefillBatcher}），SPI不依赖任何后端的类型。
+ * 后端可另外实现{@link AvailabilityAware}报告可用性，供序列决定何时使用应急储备。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface CounterBackend {
+
+  /**
+   * 后端名称，对应序列定义的backend属性
+   *
+   * @return 后端名称
+   */
+  String name();
+
+  /**
+   * 创建计数器
+   *
+   * @param key 计数器的键，如 /raptor-sequences/序列名[/dc-d][/shard-i]
+   * @param context 创建上下文，后端从中取出自己需要的资源
+   * @return 计数器
+   * @throws GidException 计数器创建异常，如上下文缺少后端必需的资源
+   */
+  Counter create(String key, CounterContext context) throws GidException;
+}
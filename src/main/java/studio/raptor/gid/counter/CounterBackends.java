@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.base.Preconditions;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 计数器后端注册表。
+ *
+ * 首次使用时通过{@link ServiceLoader}加载classpath上声明的后端，zookeeper后端始终可用；
+ * 通过{@link #register(CounterBackend)}注册的同名后端覆盖已加载的后端。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class CounterBackends {
+
+  private static Logger log = LoggerFactory.getLogger(CounterBackends.class);
+
+  private static final ConcurrentMap<String, CounterBackend> backends = new ConcurrentHashMap<String, CounterBackend>();
+
+  static {
+    backends.put(ZookeeperCounterBackend.NAME, new ZookeeperCounterBackend());
+    Iterator<CounterBackend> loaded = ServiceLoader.load(CounterBackend.class).iterator();
+    while (true) {
+      try {
+        if (!loaded.hasNext()) {
+          break;
+        }
+        CounterBackend backend = loaded.next();
+        backends.put(backend.name(), backend);
+        log.info("Counter backend <{}> loaded : {}", backend.name(), backend.getClass().getName());
+      } catch (ServiceConfigurationError e) {
+        // 单个后端加载失败不影响其他后端
+        log.error("Load counter backend failure", e);
+      }
+    }
+  }
+
+  private CounterBackends() {
+  }
+
+  /**
+   * 注册计数器后端，同名后端将被替换
+   *
+   * @param backend 计数器后端
+   */
+  public static void register(CounterBackend backend) {
+    Preconditions.checkNotNull(backend, "Counter backend can not be null");
+    backends.put(backend.name(), backend);
+    log.info("Counter backend <{}> registered : {}", backend.name(), backend.getClass().getName());
+  }
+
+  /**
+   * 按名称获取计数器后端
+   *
+   * @param name 后端名称
+   * @return 计数器后端
+   * @throws GidException 后端不存在
+   */
+  public static CounterBackend get(String name) throws GidException {
+    CounterBackend backend = backends.get(name);
+    if (null == backend) {
+      throw new GidException("Counter backend <" + name + "> not found, available : "
+          + backends.keySet());
+    }
+    return backend;
+  }
+}
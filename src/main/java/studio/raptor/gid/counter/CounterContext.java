@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.base.Preconditions;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 创建计数器的上下文（不可变）。
+ *
+ * 按类型保存后端需要的外部资源，如zookeeper后端的CuratorFramework与{@link RefillBatcher}；
+ * 序列只负责把持有的资源放入上下文，由各后端取出自己需要的部分，SPI本身不依赖任何后端的类型。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class CounterContext {
+
+  /**
+   * 空上下文
+   */
+  public static final CounterContext EMPTY = new CounterContext(
+      Collections.<Class<?>, Object>emptyMap());
+
+  private final Map<Class<?>, Object> attributes;
+
+  private CounterContext(Map<Class<?>, Object> attributes) {
+    this.attributes = attributes;
+  }
+
+  /**
+   * 返回增加（或替换）了指定类型资源的新上下文
+   *
+   * @param type 资源类型
+   * @param value 资源，为null时返回移除该类型资源的新上下文
+   * @return 新上下文
+   */
+  public <T> CounterContext with(Class<T> type, T value) {
+    Preconditions.checkNotNull(type, "Attribute type can not be null");
+    Map<Class<?>, Object> copy = new HashMap<Class<?>, Object>(this.attributes);
+    if (null == value) {
+      copy.remove(type);
+    } else {
+      copy.put(type, value);
+    }
+    return new CounterContext(Collections.unmodifiableMap(copy));
+  }
+
+  /**
+   * 获取指定类型的资源
+   *
+   * @param type 资源类型
+   * @return 资源，不存在时返回null
+   */
+  public <T> T get(Class<T> type) {
+    return type.cast(this.attributes.get(type));
+  }
+
+  /**
+   * 获取后端必需的资源
+   *
+   * @param type 资源类型
+   * @return 资源
+   * @throws GidException 资源不存在
+   */
+  public <T> T require(Class<T> type) throws GidException {
+    T value = get(type);
+    if (null == value) {
+      throw new GidException(type.getSimpleName() + " is required in counter context");
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "CounterContext" + this.attributes.keySet();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 基于单个计数器的号段来源：计数器增加 incr * count，号段连续。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class CounterSegmentSource implements SegmentSource {
+
+  private final Counter counter;
+
+  private final long incr;
+
+  /**
+   * 构造函数
+   *
+   * @param counter 计数器
+   * @param incr 序列步长
+   */
+  public CounterSegmentSource(Counter counter, long incr) {
+    this.counter = counter;
+    this.incr = incr;
+  }
+
+  @Override
+  public void initialize(long start) throws GidException {
+    counter.initialize(start);
+  }
+
+  @Override
+  public Segment lease(long count) throws GidException {
+    return new Segment(counter.getAndAdd(incr * count), incr, count);
+  }
+
+  @Override
+  public long step() {
+    return incr;
+  }
+
+  @Override
+  public boolean isIssued(Segment segment) throws GidException {
+    long current = counter.get();
+    return incr > 0 ? current >= segment.end() : current <= segment.end();
+  }
+
+  @Override
+  public void reset(long newStart) throws GidException {
+    counter.forceSet(newStart);
+  }
+
+  @Override
+  public String toString() {
+    return counter.toString();
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.UnsignedLongs;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * <pre>
+ * 交错号段来源。
+ *
+ * 将一个序列的取值空间按步长交错切分为K条通道，通道i的ID为 base + (n * K + i) * incr（n = 0,1,2...），
+ * 即 (ID - base) / incr ≡ i (mod K)，不同通道的ID永不重复。每条通道有独立的计数器，
+ * 计数器的值v表示通道内已分配 v / incr 个ID，号段起始ID为 base + v * K + i * incr，号段步长为 K * incr。
+ *
+ * 本实例可只持有其中的部分通道（如同一数据中心只持有本中心的通道），申请号段时在持有的通道间轮询，
+ * 起始通道随机，某条通道的计数器不可用时尝试下一条。
+ * 号段只保证唯一和大致有序，不保证严格递增。
+ *
+ * 由连续计数器切换而来时，首次初始化通道计数器前先为原计数器加上一段很大的跳跃（栅栏），
+ * 通道计数器从跳跃前的值之后开始：切换前租出的号段都在跳跃前的值之前，
+ * 仍按原配置运行的实例此后从跳跃后的值继续租用，与通道的号段相隔
+ * {@link #legacy_fence_units}个ID（不超过剩余取值空间的一半），须在通道用完这段空间前完成切换。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class InterleavedSegmentSource implements SegmentSource {
+
+  private static Logger log = LoggerFactory.getLogger(InterleavedSegmentSource.class);
+
+  /**
+   * 切换时原计数器跳跃的ID数量
+   */
+  private static long legacy_fence_units = 1L << 40;
+
+  /**
+   * 持有的通道的计数器
+   */
+  private final Counter[] counters;
+
+  /**
+   * 持有的通道编号，与counters一一对应
+   */
+  private final int[] lanes;
+
+  /**
+   * 通道总数K
+   */
+  private final int laneCount;
+
+  private final long base;
+
+  private final long incr;
+
+  /**
+   * 切换为交错模式前的连续计数器，为null时通道计数器从0开始；初始化时加上栅栏
+   */
+  private final Counter legacy;
+
+  private final AtomicInteger next = new AtomicInteger(ThreadLocalRandom.current().nextInt(1 << 16));
+
+  /**
+   * 构造函数
+   *
+   * @param counters 持有的通道的计数器
+   * @param lanes 持有的通道编号，范围[0,laneCount)
+   * @param laneCount 通道总数
+   * @param base 序列起始值
+   * @param incr 序列步长
+   * @param legacy 切换为交错模式前的连续计数器，初始化时加上栅栏，通道计数器从栅栏之前的值之后开始；可为null
+   */
+  public InterleavedSegmentSource(Counter[] counters, int[] lanes, int laneCount, long base,
+      long incr, Counter legacy) {
+    Preconditions.checkArgument(counters.length > 0 && counters.length == lanes.length,
+        "Counters and lanes must be non-empty and of the same length");
+    for (int lane : lanes) {
+      Preconditions.checkArgument(lane >= 0 && lane < laneCount,
+          "Lane must be in [0," + laneCount + "),cur val:" + lane);
+    }
+    this.counters = counters;
+    this.lanes = lanes;
+    this.laneCount = laneCount;
+    this.base = base;
+    this.incr = incr;
+    this.legacy = legacy;
+  }
+
+  @Override
+  public void initialize(long start) throws GidException {
+    long seed = 0;
+    if (null != legacy && !isInitialized()) {
+      long current = legacy.get();
+      if (current != 0) {
+        // 以原子的加法取得栅栏前的值，避免快照之后原计数器租出的号段与通道重叠
+        long delta = fenceDelta(current);
+        long fenced = legacy.getAndAdd(delta);
+        seed = laneValue(fenced);
+        log.info("Fence legacy counter {} : {} -> {}", legacy, fenced, fenced + delta);
+      }
+    }
+    for (Counter counter : counters) {
+      counter.initialize(seed);
+    }
+  }
+
+  /**
+   * 持有的通道计数器是否已有值（已初始化且不为0）
+   */
+  private boolean isInitialized() throws GidException {
+    for (Counter counter : counters) {
+      if (counter.get() != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 计算原计数器的栅栏跳跃量：{@link #legacy_fence_units}个ID，且不超过剩余取值空间的一半
+   */
+  private long fenceDelta(long current) {
+    long headroom = incr > 0
+        ? UnsignedLongs.divide(Long.MAX_VALUE - current, incr)
+        : UnsignedLongs.divide(current - Long.MIN_VALUE, -incr);
+    return Math.min(legacy_fence_units, headroom >>> 1) * incr;
+  }
+
+  @Override
+  public Segment lease(long count) throws GidException {
+    GidException failure = null;
+    for (int attempt = 0; attempt < counters.length; attempt++) {
+      int k = (next.getAndIncrement() & Integer.MAX_VALUE) % counters.length;
+      try {
+        long v = counters[k].getAndAdd(incr * count);
+        return new Segment(base + v * laneCount + lanes[k] * incr, step(), count);
+      } catch (GidException e) {
+        log.warn("Lease from lane {} failure : {}", lanes[k], e.getMessage());
+        failure = e;
+      }
+    }
+    throw failure;
+  }
+
+  @Override
+  public long step() {
+    return incr * laneCount;
+  }
+
+  @Override
+  public boolean isIssued(Segment segment) throws GidException {
+    long units = (segment.start() - base) / incr;
+    int lane = (int) (((units % laneCount) + laneCount) % laneCount);
+    for (int k = 0; k < lanes.length; k++) {
+      if (lanes[k] == lane) {
+        long end = (units - lane) / laneCount * incr + incr * segment.count();
+        long current = counters[k].get();
+        return incr > 0 ? current >= end : current <= end;
+      }
+    }
+    // 不是本实例持有的通道
+    return false;
+  }
+
+  @Override
+  public void reset(long newStart) throws GidException {
+    long value = laneValue(newStart);
+    for (Counter counter : counters) {
+      counter.forceSet(value);
+    }
+  }
+
+  /**
+   * 计算通道计数器的值，使各通道此后分配的ID都不早于value
+   */
+  private long laneValue(long value) {
+    long units = ceilDiv(value - base, incr);
+    if (units <= 0) {
+      return 0;
+    }
+    return ceilDiv(units, laneCount) * incr;
+  }
+
+  private static long ceilDiv(long a, long b) {
+    long q = a / b;
+    return (a % b != 0 && (a ^ b) >= 0) ? q + 1 : q;
+  }
+
+  @Override
+  public String toString() {
+    return "interleaved[" + laneCount + " lanes,holding " + lanes.length + "]";
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.base.Preconditions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * <pre>
+ * 基于数据库的计数器：每个计数器对应序列表中的一行。
+ *
+ * 申请号段时在同一事务内先 UPDATE 当前值 = 当前值 + delta，再读回当前值，
+ * UPDATE持有的行锁保证并发申请串行化，读回值 - delta 即为增加前的值。
+ *
+ * 表结构（表名可指定）：
+ *   CREATE TABLE raptor_sequence (
+ *     seq_name      VARCHAR(255) NOT NULL PRIMARY KEY,
+ *     current_value BIGINT       NOT NULL
+ *   )
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class JdbcCounter implements Counter {
+
+  public static final String DEFAULT_TABLE = "raptor_sequence";
+
+  private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+  private final DataSource dataSource;
+
+  /**
+   * 计数器名称（seq_name列的值）
+   */
+  private final String name;
+
+  private final String selectSql;
+
+  private final String insertSql;
+
+  private final String addSql;
+
+  private final String setSql;
+
+  /**
+   * 构造函数
+   *
+   * @param dataSource 数据源
+   * @param table 序列表名
+   * @param name 计数器名称
+   */
+  public JdbcCounter(DataSource dataSource, String table, String name) {
+    Preconditions.checkNotNull(dataSource, "DataSource can not be null");
+    Preconditions.checkArgument(null != table && TABLE_NAME.matcher(table).matches(),
+        "Illegal table name : %s", table);
+    this.dataSource = dataSource;
+    this.name = name;
+    this.selectSql = "SELECT current_value FROM " + table + " WHERE seq_name = ?";
+    this.insertSql = "INSERT INTO " + table + " (seq_name, current_value) VALUES (?, ?)";
+    this.addSql = "UPDATE " + table + " SET current_value = current_value + ? WHERE seq_name = ?";
+    this.setSql = "UPDATE " + table + " SET current_value = ? WHERE seq_name = ?";
+  }
+
+  @Override
+  public boolean initialize(long start) throws GidException {
+    try (Connection conn = dataSource.getConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        if (null != select(conn)) {
+          conn.commit();
+          return false;
+        }
+        update(conn, insertSql, name, start);
+        conn.commit();
+        return true;
+      } catch (SQLException e) {
+        conn.rollback();
+        // 并发初始化时主键冲突，以已存在的行为准
+        boolean exists = null != select(conn);
+        conn.commit();
+        if (exists) {
+          return false;
+        }
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException e) {
+      throw new GidException("Initialize counter " + name + " failure", e);
+    }
+  }
+
+  @Override
+  public long get() throws GidException {
+    try (Connection conn = dataSource.getConnection()) {
+      Long value = select(conn);
+      return null == value ? 0 : value;
+    } catch (SQLException e) {
+      throw new GidException("Get counter " + name + " failure", e);
+    }
+  }
+
+  @Override
+  public long getAndAdd(long delta) throws GidException {
+    try (Connection conn = dataSource.getConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        if (update(conn, addSql, delta, name) != 1) {
+          throw new SQLException("Counter row not found");
+        }
+        Long value = select(conn);
+        conn.commit();
+        return value - delta;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException e) {
+      throw new GidException("Add " + delta + " to counter " + name + " failure", e);
+    }
+  }
+
+  @Override
+  public void forceSet(long value) throws GidException {
+    try (Connection conn = dataSource.getConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        if (update(conn, setSql, value, name) == 0) {
+          update(conn, insertSql, name, value);
+        }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException e) {
+      throw new GidException("Force set counter " + name + " failure", e);
+    }
+  }
+
+  private Long select(Connection conn) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+      stmt.setString(1, name);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : null;
+      }
+    }
+  }
+
+  private static int update(Connection conn, String sql, Object first, Object second)
+      throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setObject(1, first);
+      stmt.setObject(2, second);
+      return stmt.executeUpdate();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "jdbc[" + name + "]";
+  }
+}
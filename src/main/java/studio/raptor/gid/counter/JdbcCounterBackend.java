@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import javax.sql.DataSource;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 基于数据库的计数器后端，计数器为{@link JdbcCounter}，以计数器的键作为seq_name。
+ *
+ * 需持有数据源，不经{@link java.util.ServiceLoader}加载，使用前通过
+ * {@link CounterBackends#register(CounterBackend)}注册。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class JdbcCounterBackend implements CounterBackend {
+
+  public static final String NAME = "jdbc";
+
+  private final DataSource dataSource;
+
+  private final String table;
+
+  public JdbcCounterBackend(DataSource dataSource) {
+    this(dataSource, JdbcCounter.DEFAULT_TABLE);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param dataSource 数据源
+   * @param table 序列表名
+   */
+  public JdbcCounterBackend(DataSource dataSource, String table) {
+    this.dataSource = dataSource;
+    this.table = table;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Counter create(String key, CounterContext context) {
+    return new JdbcCounter(dataSource, table, key);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.RateMeter;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 统计申请速率的计数器装饰器。
+ *
+ * 只统计成功申请到的增量（取绝对值），不在取号路径上增加开销。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class MeteredCounter implements Counter {
+
+  private final Counter delegate;
+
+  private final RateMeter meter;
+
+  public MeteredCounter(Counter delegate) {
+    this(delegate, new RateMeter());
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param delegate 被装饰的计数器
+   * @param meter 速率计量器，可在多个计数器间共享
+   */
+  public MeteredCounter(Counter delegate, RateMeter meter) {
+    this.delegate = delegate;
+    this.meter = meter;
+  }
+
+  /**
+   * 获取每秒申请的增量
+   *
+   * @return 每秒申请的增量
+   */
+  public double rate() {
+    return meter.rate();
+  }
+
+  @Override
+  public boolean initialize(long start) throws GidException {
+    return delegate.initialize(start);
+  }
+
+  @Override
+  public long get() throws GidException {
+    return delegate.get();
+  }
+
+  @Override
+  public long getAndAdd(long delta) throws GidException {
+    long pre = delegate.getAndAdd(delta);
+    meter.mark(Math.abs(delta));
+    return pre;
+  }
+
+  @Override
+  public void forceSet(long value) throws GidException {
+    delegate.forceSet(value);
+  }
+}
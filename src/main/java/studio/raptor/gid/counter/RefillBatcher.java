@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 号段批量申请器。
+ *
+ * <ol>
+ *     <li>收集多个序列同时发起的号段申请，在一个zookeeper multi事务中使用带版本号的setData一次提交</li>
+ *     <li>计数器的值与版本号在本地缓存，缓存缺失时通过异步读取（流水线）一次性补齐</li>
+ *     <li>事务因版本冲突失败时清空缓存重读后重试，重试仍失败则由调用方退回单独申请</li>
+ * </ol>
+ *
+ * 计数器节点的数据格式与{@link org.apache.curator.framework.recipes.atomic.DistributedAtomicLong}一致（8字节long），
+ * 批量申请与单独申请可以混合使用。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class RefillBatcher implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(RefillBatcher.class);
+
+  private static final AtomicInteger batcherId = new AtomicInteger(0);
+
+  /**
+   * 单个事务中最多包含的申请数量
+   */
+  private static final int DEFAULT_MAX_BATCH_SIZE = 128;
+
+  /**
+   * 收到第一个申请后等待其他申请加入的时间（毫秒）
+   */
+  private static final long DEFAULT_LINGER_MS = 2;
+
+  /**
+   * 等待批量申请结果的超时时间（毫秒）
+   */
+  private static final long DEFAULT_LEASE_TIMEOUT_MS = 5000;
+
+  /**
+   * 事务提交的最大尝试次数
+   */
+  private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+  private final CuratorFramework zkClient;
+
+  private final int maxBatchSize;
+
+  private final long lingerMs;
+
+  /**
+   * 待处理的申请
+   */
+  private final BlockingQueue<Refill> pending = new LinkedBlockingQueue<Refill>();
+
+  /**
+   * 计数器值与版本号缓存，只在批量线程中访问
+   */
+  private final Map<String, Versioned> versions = new HashMap<String, Versioned>();
+
+  private final Thread worker;
+
+  private volatile boolean running = true;
+
+  /**
+   * 构造函数
+   *
+   * @param zkClient zk客户端
+   */
+  public RefillBatcher(CuratorFramework zkClient) {
+    this(zkClient, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_MS);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param zkClient zk客户端
+   * @param maxBatchSize 单个事务中最多包含的申请数量
+   * @param lingerMs 收到第一个申请后等待其他申请加入的时间（毫秒）
+   */
+  public RefillBatcher(CuratorFramework zkClient, int maxBatchSize, long lingerMs) {
+    this.zkClient = zkClient;
+    this.maxBatchSize = maxBatchSize;
+    this.lingerMs = lingerMs;
+    this.worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "refill_batcher" + batcherId.getAndIncrement());
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /**
+   * 申请号段，阻塞至所在批次提交完成
+   *
+   * @param path 计数器节点路径
+   * @param delta 增量
+   * @return 增加前的计数器值
+   * @throws GidException 批量提交失败或超时
+   */
+  public long lease(String path, long delta) throws GidException {
+    if (!running) {
+      throw new GidException("Refill batcher is closed");
+    }
+    Refill refill = new Refill(path, delta);
+    pending.offer(refill);
+    try {
+      return refill.result.get(DEFAULT_LEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GidException(e);
+    } catch (ExecutionException e) {
+      throw new GidException("Batched refill of " + path + " failure", e.getCause());
+    } catch (TimeoutException e) {
+      throw new GidException("Batched refill of " + path + " timeout", e);
+    }
+  }
+
+  /**
+   * 是否已关闭
+   */
+  public boolean isClosed() {
+    return !running;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    worker.interrupt();
+  }
+
+  private void loop() {
+    while (running) {
+      List<Refill> batch = new ArrayList<Refill>();
+      try {
+        batch.add(pending.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (batch.size() < maxBatchSize) {
+          Refill next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (null == next) {
+            break;
+          }
+          batch.add(next);
+        }
+        commit(batch);
+      } catch (InterruptedException e) {
+        failAll(batch, e);
+        Thread.currentThread().interrupt();
+        break;
+      } catch (Exception e) {
+        log.error("Refill batcher run commit task failure", e);
+        failAll(batch, e);
+      }
+    }
+
+    List<Refill> rest = new ArrayList<Refill>();
+    pending.drainTo(rest);
+    failAll(rest, new GidException("Refill batcher is closed"));
+  }
+
+  /**
+   * 在一个事务中提交一批申请
+   *
+   * @param batch 申请列表
+   */
+  void commit(List<Refill> batch) throws Exception {
+    // 同一计数器的多个申请合并为一次写入
+    Map<String, Long> deltas = new LinkedHashMap<String, Long>();
+    for (Refill refill : batch) {
+      Long sum = deltas.get(refill.path);
+      deltas.put(refill.path, (null == sum ? 0L : sum) + refill.delta);
+    }
+
+    Exception lastError = null;
+    for (int attempt = 1; attempt <= MAX_COMMIT_ATTEMPTS; attempt++) {
+      try {
+        Map<String, Versioned> current = snapshot(deltas.keySet());
+
+        CuratorTransaction tx = zkClient.inTransaction();
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+          Versioned v = current.get(entry.getKey());
+          tx = tx.setData().withVersion(v.version)
+              .forPath(entry.getKey(), toBytes(v.value + entry.getValue()))
+              .and();
+        }
+        Iterable<CuratorTransactionResult> results = ((CuratorTransactionFinal) tx).commit();
+
+        for (CuratorTransactionResult result : results) {
+          String path = result.getForPath();
+          Versioned v = current.get(path);
+          versions.put(path,
+              new Versioned(v.value + deltas.get(path), result.getResultStat().getVersion()));
+        }
+
+        // 按申请顺序切分合并后的号段
+        Map<String, Long> cursors = new HashMap<String, Long>();
+        for (Map.Entry<String, Versioned> entry : current.entrySet()) {
+          cursors.put(entry.getKey(), entry.getValue().value);
+        }
+        for (Refill refill : batch) {
+          long pre = cursors.get(refill.path);
+          cursors.put(refill.path, pre + refill.delta);
+          refill.result.set(pre);
+        }
+        if (batch.size() > 1) {
+          log.debug("Committed {} refills on {} counters in one transaction", batch.size(),
+              deltas.size());
+        }
+        return;
+      } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e) {
+        // 其他进程已修改计数器，重读后重试
+        lastError = e;
+        versions.keySet().removeAll(deltas.keySet());
+      } catch (Exception e) {
+        versions.keySet().removeAll(deltas.keySet());
+        throw e;
+      }
+    }
+    throw new GidException(
+        "Commit refills failure after " + MAX_COMMIT_ATTEMPTS + " attempts", lastError);
+  }
+
+  /**
+   * 获取计数器的值与版本号，缓存缺失的部分通过异步读取一次性补齐
+   *
+   * @param paths 计数器节点路径
+   * @return 值与版本号
+   */
+  private Map<String, Versioned> snapshot(Iterable<String> paths) throws Exception {
+    final Map<String, Versioned> result = new HashMap<String, Versioned>();
+    List<String> missing = new ArrayList<String>();
+    for (String path : paths) {
+      Versioned v = versions.get(path);
+      if (null == v) {
+        missing.add(path);
+      } else {
+        result.put(path, v);
+      }
+    }
+    if (missing.isEmpty()) {
+      return result;
+    }
+
+    final CountDownLatch latch = new CountDownLatch(missing.size());
+    final Map<String, Object> fetched = new ConcurrentHashMap<String, Object>();
+    BackgroundCallback callback = new BackgroundCallback() {
+      @Override
+      public void processResult(CuratorFramework client, CuratorEvent event) {
+        String path = (String) event.getContext();
+        if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+          fetched.put(path, new Versioned(fromBytes(event.getData()), event.getStat().getVersion()));
+        } else {
+          fetched.put(path,
+              KeeperException.create(KeeperException.Code.get(event.getResultCode()), path));
+        }
+        latch.countDown();
+      }
+    };
+    for (String path : missing) {
+      zkClient.getData().inBackground(callback, path).forPath(path);
+    }
+    if (!latch.await(DEFAULT_LEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+      throw new GidException("Read " + missing.size() + " counters timeout");
+    }
+
+    for (String path : missing) {
+      Object v = fetched.get(path);
+      if (v instanceof Exception) {
+        throw (Exception) v;
+      }
+      result.put(path, (Versioned) v);
+      versions.put(path, (Versioned) v);
+    }
+    return result;
+  }
+
+  private void failAll(List<Refill> batch, Throwable e) {
+    for (Refill refill : batch) {
+      refill.result.setException(e);
+    }
+  }
+
+  private static byte[] toBytes(long value) {
+    byte[] data = new byte[8];
+    ByteBuffer.wrap(data).putLong(value);
+    return data;
+  }
+
+  private static long fromBytes(byte[] data) {
+    if (null == data || data.length == 0) {
+      return 0L;
+    }
+    return ByteBuffer.wrap(data).getLong();
+  }
+
+  /**
+   * 号段申请
+   */
+  static class Refill {
+
+    final String path;
+    final long delta;
+    final SettableFuture<Long> result = SettableFuture.create();
+
+    Refill(String path, long delta) {
+      this.path = path;
+      this.delta = delta;
+    }
+  }
+
+  /**
+   * 计数器的值与版本号
+   */
+  private static class Versioned {
+
+    final long value;
+    final int version;
+
+    Versioned(long value, int version) {
+      this.value = value;
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 号段：以start起始、步长为step的count个ID。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class Segment {
+
+  private final long start;
+
+  private final long step;
+
+  private final long count;
+
+  public Segment(long start, long step, long count) {
+    this.start = start;
+    this.step = step;
+    this.count = count;
+  }
+
+  /**
+   * 起始ID
+   */
+  public long start() {
+    return start;
+  }
+
+  /**
+   * 相邻ID的间隔
+   */
+  public long step() {
+    return step;
+  }
+
+  /**
+   * ID数量
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * 最后一个ID之后的位置（不含）
+   */
+  public long end() {
+    return start + step * count;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + "," + end() + ")/" + step;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import studio.raptor.gid.common.GidException;
+
+/**
+ * 号段来源。
+ *
+ * 面包屑序列的缓冲区、应急储备及无缓冲取号都通过号段来源申请号段，
+ * 号段如何映射到计数器（单个计数器连续分配，或多个计数器交错分配）由实现决定。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface SegmentSource {
+
+  /**
+   * 初始化计数器（仅当计数器尚不存在时生效）
+   *
+   * @param start 序列起始值
+   * @throws GidException 远端访问异常
+   */
+  void initialize(long start) throws GidException;
+
+  /**
+   * 申请号段
+   *
+   * @param count ID数量
+   * @return 号段
+   * @throws GidException 远端访问异常
+   */
+  Segment lease(long count) throws GidException;
+
+  /**
+   * 号段中相邻ID的间隔
+   */
+  long step();
+
+  /**
+   * 计数器是否已越过号段末尾（号段日志恢复前检查，未越过说明计数器可能被重置过）
+   *
+   * @param segment 号段
+   * @return 是否已越过
+   * @throws GidException 远端访问异常
+   */
+  boolean isIssued(Segment segment) throws GidException;
+
+  /**
+   * 重置序列，此后申请的ID不小于（步长为负时不大于）newStart
+   *
+   * @param newStart 新的起始值
+   * @throws GidException 远端访问异常
+   */
+  void reset(long newStart) throws GidException;
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import com.google.common.base.Preconditions;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * <pre>
+ * 数据中心条带：多个数据中心各自使用本地zookeeper集群时，每个数据中心持有取值空间中交错的一条，
+ * 本中心的计数器只在本地集群上申请号段，不产生跨数据中心的写入。
+ *
+ * 共D个数据中心、每个序列K个分片时，取值空间按D * K条通道交错（见{@link InterleavedSegmentSource}），
+ * 数据中心d持有通道 d * K ~ d * K + K - 1，计数器位于 序列计数器路径/dc-d 下，各中心的ID永不重复。
+ * 各中心的index与count配置必须一致且index互不相同。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class Stripe {
+
+  /**
+   * 单数据中心（不切分条带）
+   */
+  public static final Stripe SINGLE = new Stripe(0, 1);
+
+  private final int index;
+
+  private final int count;
+
+  /**
+   * 构造函数
+   *
+   * @param index 本数据中心编号，范围[0,count)
+   * @param count 数据中心总数
+   */
+  public Stripe(int index, int count) {
+    Preconditions.checkArgument(count >= 1, "Datacenter count must ge 1,cur val:%s", count);
+    Preconditions.checkArgument(index >= 0 && index < count,
+        "Datacenter index must be in [0,%s),cur val:%s", count, index);
+    this.index = index;
+    this.count = count;
+  }
+
+  /**
+   * 本数据中心编号
+   */
+  public int index() {
+    return index;
+  }
+
+  /**
+   * 数据中心总数
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * 是否切分了条带
+   */
+  public boolean isStriped() {
+    return count > 1;
+  }
+
+  /**
+   * 本数据中心的第shard个分片对应的通道编号
+   *
+   * @param shards 每个数据中心的分片数
+   * @param shard 分片编号
+   */
+  public int lane(int shards, int shard) {
+    return index * shards + shard;
+  }
+
+  @Override
+  public String toString() {
+    return "dc-" + index + "/" + count;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.AtomicValue;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.retry.RetryNTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 基于zookeeper {@link DistributedAtomicLong} 的计数器。
+ *
+ * 若指定了{@link RefillBatcher}，号段申请将交由批量器与其他序列合并到同一个zookeeper事务中提交，
+ * 批量提交失败时退回到单独申请。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class ZookeeperCounter implements Counter {
+
+  private static Logger log = LoggerFactory.getLogger(ZookeeperCounter.class);
+
+  /**
+   * 计数器节点路径
+   */
+  private final String path;
+
+  /**
+   * 计数器（@zk）
+   */
+  private final DistributedAtomicLong maxId;
+
+  /**
+   * 批量申请器，可为空
+   */
+  private final RefillBatcher batcher;
+
+  /**
+   * 构造函数
+   *
+   * @param zkClient zk客户端
+   * @param path 计数器节点路径
+   * @param batcher 批量申请器，为null时单独申请
+   */
+  public ZookeeperCounter(CuratorFramework zkClient, String path, RefillBatcher batcher) {
+    this(path, new DistributedAtomicLong(zkClient, path, new RetryNTimes(3, 200)), batcher);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param path 计数器节点路径
+   * @param maxId 计数器
+   * @param batcher 批量申请器，为null时单独申请
+   */
+  public ZookeeperCounter(String path, DistributedAtomicLong maxId, RefillBatcher batcher) {
+    this.path = path;
+    this.maxId = maxId;
+    this.batcher = batcher;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  @Override
+  public boolean initialize(long start) throws GidException {
+    try {
+      return this.maxId.initialize(start);
+    } catch (Exception e) {
+      throw new GidException("Initialize counter " + path + " failure", e);
+    }
+  }
+
+  @Override
+  public long get() throws GidException {
+    try {
+      return this.maxId.get().postValue();
+    } catch (Exception e) {
+      throw new GidException("Get counter " + path + " failure", e);
+    }
+  }
+
+  @Override
+  public long getAndAdd(long delta) throws GidException {
+    if (null != this.batcher) {
+      try {
+        return this.batcher.lease(this.path, delta);
+      } catch (GidException e) {
+        // 批量申请器已随序列服务器关闭，zk客户端随后也会关闭，不再单独申请
+        if (this.batcher.isClosed()) {
+          throw e;
+        }
+        log.warn("Batched refill of {} failure, fall back to single refill", path, e);
+      }
+    }
+
+    try {
+      AtomicValue<Long> rc;
+      // 乐观锁冲突时重试直到成功
+      do {
+        rc = this.maxId.add(delta);
+      } while (!rc.succeeded());
+      return rc.preValue();
+    } catch (Exception e) {
+      throw new GidException("Add " + delta + " to counter " + path + " failure", e);
+    }
+  }
+
+  @Override
+  public void forceSet(long value) throws GidException {
+    try {
+      this.maxId.forceSet(value);
+    } catch (Exception e) {
+      throw new GidException("Force set counter " + path + " failure", e);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 基于zookeeper的计数器后端（默认后端），计数器为{@link ZookeeperCounter}。
+ *
+ * 从上下文中取出CuratorFramework（必需）与{@link RefillBatcher}（可选，存在时批量申请号段）；
+ * 可用性跟随zk连接状态，SUSPENDED/LOST时不可用。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class ZookeeperCounterBackend implements CounterBackend, AvailabilityAware {
+
+  public static final String NAME = "zookeeper";
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Counter create(String key, CounterContext context) throws GidException {
+    CuratorFramework zkClient = connected(context);
+    return new ZookeeperCounter(zkClient, key, context.get(RefillBatcher.class));
+  }
+
+  @Override
+  public CounterAvailability availability(CounterContext context) throws GidException {
+    return new ConnectionAvailability(context.require(CuratorFramework.class));
+  }
+
+  /**
+   * 取出zk客户端并等待连接（同一客户端只等待一次）
+   */
+  private static CuratorFramework connected(CounterContext context) throws GidException {
+    CuratorFramework zkClient = context.require(CuratorFramework.class);
+    try {
+      if (!CuratorUtil.awaitConnected(zkClient, CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS)) {
+        throw new GidException("Zookeeper is NOT isConnected ");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GidException(e);
+    }
+    return zkClient;
+  }
+
+  /**
+   * 跟随zk连接状态的可用性
+   */
+  private static class ConnectionAvailability implements CounterAvailability {
+
+    private final CuratorFramework zkClient;
+
+    private final ConcurrentMap<Listener, ConnectionStateListener> listeners =
+        new ConcurrentHashMap<Listener, ConnectionStateListener>();
+
+    ConnectionAvailability(CuratorFramework zkClient) {
+      this.zkClient = zkClient;
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return zkClient.getZookeeperClient().isConnected();
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+      ConnectionStateListener adapter = new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+          switch (newState) {
+            case SUSPENDED:
+            case LOST:
+              listener.availabilityChanged(false);
+              break;
+            case CONNECTED:
+            case RECONNECTED:
+              listener.availabilityChanged(true);
+              break;
+            default:
+              break;
+          }
+        }
+      };
+      if (null == listeners.putIfAbsent(listener, adapter)) {
+        zkClient.getConnectionStateListenable().addListener(adapter);
+      }
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+      ConnectionStateListener adapter = listeners.remove(listener);
+      if (null != adapter) {
+        zkClient.getConnectionStateListenable().removeListener(adapter);
+      }
+    }
+  }
+}
@@ -32,6 +32,18 @@ public abstract class BreadcrumbDef implements SequenceDef {
     validate();
   }
 
+  /**
+   * 构造函数，供在构造函数中赋值的子类使用：字段赋值后再调用{@link #validate()}
+   *
+   * @param validate 是否立即校验
+   * @throws GidException 校验异常
+   */
+  protected BreadcrumbDef(boolean validate) throws GidException {
+    if (validate) {
+      validate();
+    }
+  }
+
   /**
    * 获取序列名称
    *
@@ -65,6 +77,35 @@ public abstract class BreadcrumbDef implements SequenceDef {
    */
   public abstract long start();
 
+  /**
+   * 获取应急储备号段可支撑的时长（秒），0表示不启用应急储备
+   *
+   * 应急储备只在zookeeper连接处于SUSPENDED或LOST状态时使用，大小按实测的取号速率换算
+   *
+   * @return 应急储备时长（秒）
+   */
+  public int reserve() {
+    return DefaultBreadcrumbDef.DEFAULT_RESERVE;
+  }
+
+  /**
+   * 获取计数器分片数，大于1时序列的取值空间按步长交错切分到多个计数器，
+   * 各节点在分片间分散申请号段，单个计数器的写入压力降为1/分片数；此时序列值只保证唯一和大致有序
+   *
+   * @return 计数器分片数
+   */
+  public int shards() {
+    return DefaultBreadcrumbDef.DEFAULT_SHARDS;
+  }
+
+  /**
+   * 获取计数器后端名称（见{@link studio.raptor.gid.counter.CounterBackend}），默认为zookeeper
+   *
+   * @return 计数器后端名称
+   */
+  public String backend() {
+    return DefaultBreadcrumbDef.DEFAULT_BACKEND;
+  }
 
   @Override
   public void validate() throws GidException {
@@ -76,14 +117,27 @@ public abstract class BreadcrumbDef implements SequenceDef {
     if (incr() == 0) {
       throw new GidException(name() + " -> incr @breadcrumbDef must be unequal 0");
     }
+
+    if (reserve() < 0) {
+      throw new GidException(
+          name() + " -> reserve @breadcrumbDef must be equal or greater than 0");
+    }
+
+    if (shards() < 1) {
+      throw new GidException(name() + " -> shards @breadcrumbDef must be greater than 0");
+    }
+
+    if (null == backend() || backend().trim().isEmpty()) {
+      throw new GidException(name() + " -> backend @breadcrumbDef can not be empty");
+    }
   }
 
   @Override
   public String toString() {
-    return String.format("sequenceDef[name=%s" + ",type=%s" + ",cache=%s" + ",incr=%s" + ",start=%s]",
+    return String.format("sequenceDef[name=%s" + ",type=%s" + ",cache=%s" + ",incr=%s" + ",start=%s" + ",reserve=%s" + ",shards=%s" + ",backend=%s]",
         name(),
         type().name,
-        cache(), incr(), start());
+        cache(), incr(), start(), reserve(), shards(), backend());
 
   }
 }
@@ -17,6 +17,12 @@ public abstract class DefaultBreadcrumbDef extends BreadcrumbDef {
   //start 在序列已使用过后无效
   public static final long DEFAULT_START = 0; // 默认起始位置
 
+  public static final int DEFAULT_RESERVE = 0; // 默认不启用应急储备
+
+  public static final int DEFAULT_SHARDS = 1; // 默认不分片
+
+  public static final String DEFAULT_BACKEND = "zookeeper"; // 默认使用zookeeper计数器
+
   public DefaultBreadcrumbDef() throws GidException {
     super();
   }
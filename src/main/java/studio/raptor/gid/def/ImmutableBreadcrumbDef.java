@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.def;
+
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 不可变的面包屑型序列实例定义。
+ *
+ * 各属性在构造时解析为final字段，取值不再有额外开销；可按属性值比较。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public final class ImmutableBreadcrumbDef extends BreadcrumbDef {
+
+  private final String name;
+
+  private final int cache;
+
+  private final long incr;
+
+  private final long start;
+
+  private final int reserve;
+
+  private final int shards;
+
+  private final String backend;
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param cache 缓冲大小
+   * @param incr 增长步长
+   * @param start 起始值
+   * @param reserve 应急储备时长（秒）
+   * @throws GidException 校验异常
+   */
+  public ImmutableBreadcrumbDef(String name, int cache, long incr, long start, int reserve)
+      throws GidException {
+    this(name, cache, incr, start, reserve, DefaultBreadcrumbDef.DEFAULT_SHARDS);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param cache 缓冲大小
+   * @param incr 增长步长
+   * @param start 起始值
+   * @param reserve 应急储备时长（秒）
+   * @param shards 计数器分片数
+   * @throws GidException 校验异常
+   */
+  public ImmutableBreadcrumbDef(String name, int cache, long incr, long start, int reserve,
+      int shards) throws GidException {
+    this(name, cache, incr, start, reserve, shards, DefaultBreadcrumbDef.DEFAULT_BACKEND);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param cache 缓冲大小
+   * @param incr 增长步长
+   * @param start 起始值
+   * @param reserve 应急储备时长（秒）
+   * @param shards 计数器分片数
+   * @param backend 计数器后端名称
+   * @throws GidException 校验异常
+   */
+  public ImmutableBreadcrumbDef(String name, int cache, long incr, long start, int reserve,
+      int shards, String backend) throws GidException {
+    super(false);
+    this.name = name;
+    this.cache = cache;
+    this.incr = incr;
+    this.start = start;
+    this.reserve = reserve;
+    this.shards = shards;
+    this.backend = backend;
+    validate();
+  }
+
+  /**
+   * 复制为不可变的序列定义
+   *
+   * @param def 序列定义
+   * @return 不可变的序列定义，已是不可变时返回自身
+   * @throws GidException 校验异常
+   */
+  public static ImmutableBreadcrumbDef copyOf(BreadcrumbDef def) throws GidException {
+    if (def instanceof ImmutableBreadcrumbDef) {
+      return (ImmutableBreadcrumbDef) def;
+    }
+    return new ImmutableBreadcrumbDef(def.name(), def.cache(), def.incr(), def.start(),
+        def.reserve(), def.shards(), def.backend());
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  @Override
+  public int cache() {
+    return cache;
+  }
+
+  @Override
+  public long incr() {
+    return incr;
+  }
+
+  @Override
+  public long start() {
+    return start;
+  }
+
+  @Override
+  public int reserve() {
+    return reserve;
+  }
+
+  @Override
+  public int shards() {
+    return shards;
+  }
+
+  @Override
+  public String backend() {
+    return backend;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutableBreadcrumbDef)) {
+      return false;
+    }
+    ImmutableBreadcrumbDef that = (ImmutableBreadcrumbDef) o;
+    return cache == that.cache && incr == that.incr && start == that.start
+        && reserve == that.reserve && shards == that.shards && name.equals(that.name)
+        && backend.equals(that.backend);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = name.hashCode();
+    result = 31 * result + cache;
+    result = 31 * result + (int) (incr ^ (incr >>> 32));
+    result = 31 * result + (int) (start ^ (start >>> 32));
+    result = 31 * result + reserve;
+    result = 31 * result + shards;
+    result = 31 * result + backend.hashCode();
+    return result;
+  }
+}
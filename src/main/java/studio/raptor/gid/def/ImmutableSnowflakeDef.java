@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.def;
+
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 不可变的Snowflake序列定义。
+ *
+ * @author bruce
+ * @since 0.2
+ * @see ImmutableBreadcrumbDef
+ */
+@ThreadSafe
+public final class ImmutableSnowflakeDef extends SnowflakeDef {
+
+  private final String name;
+
+  private final int workerIdWidth;
+
+  private final int sequenceWidth;
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param workerIdWidth 工作节点位数
+   * @param sequenceWidth 序列位数
+   * @throws GidException 校验异常
+   */
+  public ImmutableSnowflakeDef(String name, int workerIdWidth, int sequenceWidth)
+      throws GidException {
+    super(false);
+    this.name = name;
+    this.workerIdWidth = workerIdWidth;
+    this.sequenceWidth = sequenceWidth;
+    validate();
+  }
+
+  /**
+   * 复制为不可变的序列定义
+   *
+   * @param def 序列定义
+   * @return 不可变的序列定义，已是不可变时返回自身
+   * @throws GidException 校验异常
+   */
+  public static ImmutableSnowflakeDef copyOf(SnowflakeDef def) throws GidException {
+    if (def instanceof ImmutableSnowflakeDef) {
+      return (ImmutableSnowflakeDef) def;
+    }
+    return new ImmutableSnowflakeDef(def.name(), def.workerIdWidth(), def.sequenceWidth());
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  @Override
+  public int workerIdWidth() {
+    return workerIdWidth;
+  }
+
+  @Override
+  public int sequenceWidth() {
+    return sequenceWidth;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutableSnowflakeDef)) {
+      return false;
+    }
+    ImmutableSnowflakeDef that = (ImmutableSnowflakeDef) o;
+    return workerIdWidth == that.workerIdWidth && sequenceWidth == that.sequenceWidth
+        && name.equals(that.name);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = name.hashCode();
+    result = 31 * result + workerIdWidth;
+    result = 31 * result + sequenceWidth;
+    return result;
+  }
+}
@@ -33,6 +33,18 @@ public abstract class SnowflakeDef implements SequenceDef {
     validate();
   }
 
+  /**
+   * 构造函数，供在构造函数中赋值的子类使用：字段赋值后再调用{@link #validate()}
+   *
+   * @param validate 是否立即校验
+   * @throws GidException 校验异常
+   */
+  protected SnowflakeDef(boolean validate) throws GidException {
+    if (validate) {
+      validate();
+    }
+  }
+
   public abstract String name();
 
   @Override
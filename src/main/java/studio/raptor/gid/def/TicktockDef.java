@@ -32,6 +32,10 @@ public abstract class TicktockDef extends SnowflakeDef {
     super();
   }
 
+  protected TicktockDef(boolean validate) throws GidException {
+    super(validate);
+  }
+
   @Override
   public Type type() {
     return Type.TICKTOCK;
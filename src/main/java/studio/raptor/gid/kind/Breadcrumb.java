@@ -17,15 +17,40 @@
 
 package studio.raptor.gid.kind;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.atomic.AtomicValue;
-import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
-import org.apache.curator.retry.RetryNTimes;
 import org.apache.curator.utils.ZKPaths;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import studio.raptor.gid.async.AsyncIds;
+import studio.raptor.gid.async.AsyncSequence;
+import studio.raptor.gid.async.IdPublisher;
+import studio.raptor.gid.async.SequencePublisher;
+import studio.raptor.gid.common.ExecutorUtil;
 import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.RateMeter;
 import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.AvailabilityAware;
+import studio.raptor.gid.counter.CounterAvailability;
+import studio.raptor.gid.counter.CounterBackend;
+import studio.raptor.gid.counter.CounterBackends;
+import studio.raptor.gid.counter.CounterContext;
+import studio.raptor.gid.counter.CounterSegmentSource;
+import studio.raptor.gid.counter.InterleavedSegmentSource;
+import studio.raptor.gid.counter.MeteredCounter;
+import studio.raptor.gid.counter.RefillBatcher;
+import studio.raptor.gid.counter.Segment;
+import studio.raptor.gid.counter.SegmentSource;
+import studio.raptor.gid.counter.Stripe;
 import studio.raptor.gid.def.BreadcrumbDef;
 import studio.raptor.gid.def.SequenceDef;
 
@@ -43,11 +68,39 @@ import studio.raptor.gid.def.SequenceDef;
  * 三、使用场景
  * 传统使用数据库序列的场景
  *
+ * 四、应急储备
+ * 配置了reserve（秒）时，序列在连接正常时额外持有一个按实测取号速率换算的储备号段，
+ * 仅当zookeeper连接处于SUSPENDED或LOST状态且缓冲区已取空时使用，用于平稳度过zookeeper故障。
+ * 使用储备期间序列值仍全局唯一，但不再保证严格递增。
+ *
+ * 五、号段日志
+ * 启用号段日志（{@link SegmentJournal}）时，缓冲区最近一次申请的号段及其取号游标记录在本地内存映射文件中，
+ * 进程在租期内重启可直接恢复剩余号段而不写zookeeper。
+ *
+ * 六、计数器分片
+ * 配置了shards（K > 1）时，序列的取值空间按步长交错切分到K个计数器节点，分片i只分配
+ * (序列值 - start) / incr ≡ i (mod K) 的值（见{@link InterleavedSegmentSource}），
+ * 各节点在分片间轮询申请号段，单个zk节点的写入压力降为1/K。此时序列值只保证唯一和大致有序。
+ *
+ * 七、数据中心条带
+ * 多个数据中心各自使用本地zookeeper集群时，可为每个中心指定条带（{@link Stripe}），
+ * 取值空间按 数据中心数 * 分片数 交错，各中心只在本地集群的 序列计数器路径/dc-d 下申请号段，
+ * 补号不产生跨数据中心的写入，ID仍全局唯一（同样只保证大致有序）。
+ * 由单中心切换为条带模式时，本地集群上原计数器的值会作为条带的起点；
+ * 对看不到原计数器的中心（新集群、或原为分片模式），需将start调整到已分配的最大值之后。
+ *
+ * 八、计数器后端
+ * 号段由backend属性指定的计数器后端（{@link CounterBackend}，默认为zookeeper）分配，
+ * 缓冲、预取、储备、分片与条带均建立在计数器之上，与具体后端无关。
+ * 计数器由后端从{@link CounterContext}中取出所需资源创建（上下文含序列定义，zookeeper后端另需zk客户端，
+ * 其他后端可不提供zk客户端）；应急储备的挂起与恢复跟随后端报告的可用性（{@link AvailabilityAware}），
+ * 未报告可用性的后端视为始终可用。
+ *
  * @author bruce
  * @since 0.1
  */
 @ThreadSafe
-public class Breadcrumb extends ZookeeperSequence {
+public class Breadcrumb extends ZookeeperSequence implements AsyncSequence, Closeable {
 
   public static final String SEQ_ROOT_PATH = "/raptor-sequences/";
 
@@ -55,9 +108,105 @@ public class Breadcrumb extends ZookeeperSequence {
   private static Logger log = LoggerFactory.getLogger(Breadcrumb.class);
   ////
 
+  /**
+   * 应急储备维护线程池（所有序列共享）
+   */
+  private static ScheduledExecutorService reserveKeeper = ExecutorUtil
+      .createScheduledThreadPool("reserve_keeper", 1);
+
+  /**
+   * 应急储备维护间隔（毫秒）
+   */
+  private static final long RESERVE_KEEP_INTERVAL_MS = 1000;
+
   private BreadcrumbDef seqDef;
 
-  private DistributedAtomicLong maxId;
+  /**
+   * 增长步长，构造时从序列定义读取一次，取号时不再调用序列定义
+   */
+  private final long incr;
+
+  /**
+   * 本数据中心的条带
+   */
+  private final Stripe stripe;
+
+  /**
+   * 计数器后端
+   */
+  private final CounterBackend backend;
+
+  /**
+   * 号段来源（无缓冲取号、重置）
+   */
+  private SegmentSource source;
+
+  /**
+   * 缓冲区申请号段使用的号段来源（可批量申请）
+   */
+  private SegmentSource refillSource;
+
+  /**
+   * 应急储备申请号段使用的号段来源（不计入取号速率）
+   */
+  private SegmentSource reserveSource;
+
+  /**
+   * 取号速率（按申请到的号段统计）
+   */
+  private RateMeter rateMeter = new RateMeter();
+
+  /**
+   * 应急储备号段
+   */
+  private volatile ReserveSegment reserve;
+
+  /**
+   * 计数器后端是否报告为不可用（如zookeeper连接处于SUSPENDED或LOST状态）
+   */
+  private volatile boolean suspended = false;
+
+  /**
+   * 是否正在申请应急储备
+   */
+  private AtomicBoolean isReserving = new AtomicBoolean(false);
+
+  /**
+   * 从应急储备中取出的ID数量
+   */
+  private AtomicLong reserveUsed = new AtomicLong(0);
+
+  private ScheduledFuture<?> reserveTask;
+
+  /**
+   * 计数器后端的可用性，后端未报告可用性时为null
+   */
+  private CounterAvailability availability;
+
+  /**
+   * 应急储备使用的可用性监听器
+   */
+  private CounterAvailability.Listener availabilityListener;
+
+  /**
+   * 保护应急储备的替换与重置：重置时递增代数，代数变化前申请的储备号段作废
+   */
+  private final ReentrantLock reserveLock = new ReentrantLock();
+
+  /**
+   * 应急储备代数（受reserveLock保护）
+   */
+  private long reserveGeneration = 0;
+
+  /**
+   * 是否已关闭
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * 号段日志槽位
+   */
+  private SegmentJournal.Slot journalSlot;
 
   private IdBuffer buffer;
 
@@ -70,36 +219,165 @@ public class Breadcrumb extends ZookeeperSequence {
    * @throws GidException 起始ID初始化异常
    */
   public Breadcrumb(final SequenceDef seqDef, CuratorFramework zkClient) throws GidException {
-    super(zkClient);
+    this(seqDef, zkClient, null);
+  }
 
-    if (!this.isConnected) {
-      throw new GidException("Zookeeper is NOT isConnected ");
-    }
+  /**
+   * 构造函数
+   *
+   * @param seqDef 序列定义
+   * @param zkClient zk客户端
+   * @param batcher 号段批量申请器，为null时单独申请
+   * @throws GidException 起始ID初始化异常
+   */
+  public Breadcrumb(final SequenceDef seqDef, CuratorFramework zkClient, RefillBatcher batcher)
+      throws GidException {
+    this(seqDef, zkClient, batcher, null);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param seqDef 序列定义
+   * @param zkClient zk客户端
+   * @param batcher 号段批量申请器，为null时单独申请
+   * @param journal 号段日志，为null时不记录号段
+   * @throws GidException 起始ID初始化异常
+   */
+  public Breadcrumb(final SequenceDef seqDef, CuratorFramework zkClient, RefillBatcher batcher,
+      SegmentJournal journal) throws GidException {
+    this(seqDef, zkClient, batcher, journal, Stripe.SINGLE);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param seqDef 序列定义
+   * @param zkClient 本数据中心的zk客户端，计数器后端不需要时可为null
+   * @param batcher 号段批量申请器，为null时单独申请
+   * @param journal 号段日志，为null时不记录号段
+   * @param stripe 本数据中心的条带
+   * @throws GidException 起始ID初始化异常，或计数器后端不可用
+   */
+  public Breadcrumb(final SequenceDef seqDef, CuratorFramework zkClient, RefillBatcher batcher,
+      SegmentJournal journal, Stripe stripe) throws GidException {
+    // 连接由计数器后端检查
+    super(zkClient, false);
 
     this.seqDef = (BreadcrumbDef) seqDef;
+    this.incr = this.seqDef.incr();
+    this.stripe = stripe;
 
     // 序列计数器
-    this.maxId = new DistributedAtomicLong(zkClient,
-        ZKPaths.makePath(SEQ_ROOT_PATH, seqDef.name()),
-        new RetryNTimes(3, 200));
+    String path = ZKPaths.makePath(SEQ_ROOT_PATH, seqDef.name());
+    this.backend = CounterBackends.get(this.seqDef.backend());
+    CounterContext context = CounterContext.EMPTY.with(CuratorFramework.class, zkClient)
+        .with(BreadcrumbDef.class, this.seqDef);
+    this.reserveSource = newSource(context, path, null);
+    this.source = newSource(context, path, this.rateMeter);
+    this.refillSource = null == batcher ? this.source
+        : newSource(context.with(RefillBatcher.class, batcher), path, this.rateMeter);
 
     // 设置起始值
-    long startId = this.seqDef.start();
     try {
-      if (!this.maxId.initialize(startId)) {
-        startId = this.maxId.get().postValue().longValue();
-        log.info("seq <" + this.seqDef.name() + "> 's curId is " + startId);
-      }
-    } catch (Exception e) {
+      this.source.initialize(this.seqDef.start());
+      log.info("seq <" + this.seqDef.name() + "> 's segment source is " + this.source);
+    } catch (GidException e) {
       throw new GidException("initalize startid failure", e);
     }
 
+    // 号段日志
+    if (null != journal) {
+      this.journalSlot = journal.claim(this.seqDef.name());
+    }
+
     // 初始化缓冲区
     if (this.seqDef.cache() > 0) {
       isCached = true;
-      buffer = new IdBuffer(this.maxId, this.seqDef);
+      buffer = new IdBuffer(this.refillSource, this.seqDef, this.seqDef.cache(),
+          this.journalSlot);
+    }
+
+    // 应急储备
+    if (this.seqDef.reserve() > 0) {
+      if (this.backend instanceof AvailabilityAware) {
+        this.availability = ((AvailabilityAware) this.backend).availability(context);
+        this.availabilityListener = new CounterAvailability.Listener() {
+          @Override
+          public void availabilityChanged(boolean available) {
+            onAvailabilityChanged(available);
+          }
+        };
+        this.availability.addListener(this.availabilityListener);
+      }
+      this.reserveTask = reserveKeeper.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          keepReserve();
+        }
+      }, 0, RESERVE_KEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
+  }
 
+  /**
+   * 预热：将缓冲区填充到指定比例
+   *
+   * @param fillLevel 缓冲区目标填充比例（0~1）
+   * @param timeoutMs 超时时间（毫秒）
+   * @return 是否已达到目标
+   */
+  public boolean warmup(double fillLevel, long timeoutMs) throws GidException {
+    if (!this.isCached || fillLevel <= 0) {
+      return true;
+    }
+    IdBuffer current = this.buffer;
+    return current.awaitFill((int) Math.ceil(this.seqDef.cache() * fillLevel), timeoutMs);
+  }
+
+  /**
+   * 退役（配置热加载时被替换或移除）。
+   *
+   * 作废日志中的号段，避免同名的新实例从日志恢复出仍在本实例缓冲区中的ID
+   * （日志槽位已转交给新实例时不做任何事）；
+   * 仍持有本实例的调用方可继续取号，ID来自同一计数器，不会重复。
+   */
+  public void retire() {
+    if (null != this.journalSlot) {
+      this.journalSlot.clear();
+    }
+  }
+
+  /**
+   * 取回已转交给同名新实例的日志槽位（替换序列时新实例创建失败，本实例继续服务）
+   */
+  public void reclaimJournal() {
+    if (null != this.journalSlot) {
+      this.journalSlot.reclaim();
+    }
+  }
+
+  /**
+   * 关闭：退役并停止维护应急储备（取消维护任务、移除可用性监听器），缓冲区停止申请号段。
+   *
+   * 关闭后仍可取出缓冲区与已持有储备中剩余的ID，只是不再申请新的号段。
+   */
+  @Override
+  public void close() {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    retire();
+    IdBuffer current = this.buffer;
+    if (null != current) {
+      current.close();
+    }
+    if (null != this.reserveTask) {
+      this.reserveTask.cancel(false);
+    }
+    if (null != this.availabilityListener) {
+      this.availability.removeListener(this.availabilityListener);
+    }
   }
 
   /**
@@ -109,10 +387,22 @@ public class Breadcrumb extends ZookeeperSequence {
   @Override
   public void reset(long newStart) throws GidException {
     try{
-      this.maxId.forceSet(newStart);
+      this.source.reset(newStart);
       if(null != this.buffer) {
         this.buffer.clear();
       }
+      // 储备中的ID可能与重置后的计数器重复，正在申请的储备号段同样作废
+      reserveLock.lock();
+      try {
+        this.reserveGeneration++;
+        this.reserve = null;
+      } finally {
+        reserveLock.unlock();
+      }
+      // 日志中的号段同样作废
+      if (null != this.journalSlot) {
+        this.journalSlot.clear();
+      }
     }catch (Exception e){
       throw new GidException("Reset sequence start error,", e);
     }
@@ -128,7 +418,7 @@ public class Breadcrumb extends ZookeeperSequence {
     else{
       log.debug( "sequence "+this.seqDef.name()+" isCached = false" );
       isCached = true;
-      buffer = new IdBuffer(this.maxId, this.seqDef, newCache);
+      buffer = new IdBuffer(this.refillSource, this.seqDef, newCache, this.journalSlot);
       result=true;
     }
     return result;
@@ -137,22 +427,230 @@ public class Breadcrumb extends ZookeeperSequence {
   @Override
   public long nextId() throws GidException {
     try {
+      if (null != this.reserve && isSuspended()) {
+        return nextIdInSuspension();
+      }
+
       if (this.isCached) {
         return this.buffer.nextId();
       }
 
-      boolean succeed;
-      Long id = null;
-      do {
-        AtomicValue<Long> value = this.maxId.add(this.seqDef.incr());
-        if (succeed = value.succeeded()) {
-          id = value.preValue();
-        }
-      } while (!succeed);
-      return id;
+      return this.source.lease(1).start();
     } catch (Exception e) {
       throw new GidException("get <" + this.seqDef.name() + "> next id fail", e);
     }
   }
 
+  @Override
+  public long nextLong() {
+    if (null != this.reserve && isSuspended()) {
+      try {
+        return nextIdInSuspension();
+      } catch (GidException e) {
+        throw IdUnavailableException.EXHAUSTED;
+      }
+    }
+
+    if (this.isCached) {
+      return this.buffer.nextLong();
+    }
+
+    try {
+      return this.source.lease(1).start();
+    } catch (GidException e) {
+      log.warn("Get <{}> next id fail", this.seqDef.name(), e);
+      throw IdUnavailableException.UNAVAILABLE;
+    }
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    if (this.isCached && !(null != this.reserve && isSuspended())) {
+      this.buffer.nextIds(dst, off, len);
+      return;
+    }
+    for (int i = off, end = off + len; i < end; i++) {
+      dst[i] = nextLong();
+    }
+  }
+
+  @Override
+  public ListenableFuture<Long> nextIdAsync() {
+    if (null != this.reserve && isSuspended()) {
+      return AsyncIds.immediate(this);
+    }
+
+    if (this.isCached) {
+      return this.buffer.nextIdAsync();
+    }
+
+    // 无缓冲时每次取号都要访问zk，交由后台线程执行
+    return AsyncIds.supply(this);
+  }
+
+  @Override
+  public IdPublisher ids() {
+    return new SequencePublisher(this);
+  }
+
+  /**
+   * 获取应急储备剩余的ID数量
+   *
+   * @return 剩余ID数量，未启用应急储备时为0
+   */
+  public long reserveRemaining() {
+    ReserveSegment segment = this.reserve;
+    return null == segment ? 0 : segment.remaining();
+  }
+
+  /**
+   * 获取从应急储备中取出的ID数量
+   *
+   * @return 已使用的ID数量
+   */
+  public long reserveUsed() {
+    return this.reserveUsed.get();
+  }
+
+  /**
+   * 按实测取号速率估算应急储备可支撑的时长
+   *
+   * @return 可支撑的时长（秒），速率未知时为-1
+   */
+  public double reserveRunwaySeconds() {
+    double rate = idRate();
+    return rate > 0 ? reserveRemaining() / rate : -1;
+  }
+
+  /**
+   * 实测的每秒取号数量
+   *
+   * @return 每秒取号数量
+   */
+  public double idRate() {
+    return this.rateMeter.rate() / Math.abs(this.incr);
+  }
+
+  /**
+   * 计数器后端是否不可用：监听器尚未收到通知时也以后端当前的可用性为准（只读本地状态，不访问后端），
+   * 避免挂起初期取号线程在缓冲区取空后得不到储备
+   */
+  private boolean isSuspended() {
+    return this.suspended || (null != this.availability && !this.availability.isAvailable());
+  }
+
+  /**
+   * 连接挂起期间取号：优先取缓冲区中剩余的ID，取空后使用应急储备
+   */
+  private long nextIdInSuspension() throws GidException {
+    if (this.isCached && this.buffer.available() > 0) {
+      try {
+        return this.buffer.nextId();
+      } catch (GidException e) {
+        // 缓冲区已被其他线程取空
+      }
+    }
+    ReserveSegment segment = this.reserve;
+    if (null == segment) {
+      // 储备已被重置作废
+      throw new GidException("Reserve segment of <" + this.seqDef.name() + "> is discarded");
+    }
+    long id = segment.next();
+    if (this.reserveUsed.getAndIncrement() == 0) {
+      log.warn("Sequence <{}> is serving ids from reserve segment {}", this.seqDef.name(),
+          segment);
+    }
+    return id;
+  }
+
+  private void onAvailabilityChanged(boolean available) {
+    if (!available) {
+      this.suspended = true;
+      log.warn("Counter backend {} unavailable, sequence <{}> reserve remaining {}, runway {}s",
+          this.backend.name(), this.seqDef.name(), reserveRemaining(), reserveRunwaySeconds());
+      return;
+    }
+    if (this.suspended) {
+      log.info("Counter backend {} available, sequence <{}> used {} reserved ids",
+          this.backend.name(), this.seqDef.name(), this.reserveUsed.get());
+    }
+    this.suspended = false;
+  }
+
+  /**
+   * 创建号段来源：未分片且未切分条带时为单个计数器，否则为交错的多个计数器
+   * （路径为 序列计数器路径[/dc-d][/shard-i]）
+   *
+   * @param context 计数器创建上下文（含批量申请器时批量申请）
+   * @param path 序列计数器路径
+   * @param meter 取号速率，为null时不计入
+   */
+  private SegmentSource newSource(CounterContext context, String path, RateMeter meter)
+      throws GidException {
+    int shards = this.seqDef.shards();
+    if (shards <= 1 && !this.stripe.isStriped()) {
+      return new CounterSegmentSource(metered(backend.create(path, context), meter), this.incr);
+    }
+    String stripePath = this.stripe.isStriped()
+        ? ZKPaths.makePath(path, "dc-" + this.stripe.index()) : path;
+    Counter[] counters = new Counter[shards];
+    int[] lanes = new int[shards];
+    for (int i = 0; i < shards; i++) {
+      String shardPath = shards > 1 ? ZKPaths.makePath(stripePath, "shard-" + i) : stripePath;
+      counters[i] = metered(backend.create(shardPath, context), meter);
+      lanes[i] = this.stripe.lane(shards, i);
+    }
+    // 由未分片切换为分片或条带时，各通道从原计数器当前值之后开始
+    return new InterleavedSegmentSource(counters, lanes, shards * this.stripe.count(),
+        this.seqDef.start(), this.incr,
+        backend.create(path, context.with(RefillBatcher.class, null)));
+  }
+
+  private static Counter metered(Counter counter, RateMeter meter) {
+    return null == meter ? counter : new MeteredCounter(counter, meter);
+  }
+
+  /**
+   * 维护应急储备：连接正常时，若储备不足目标大小的一半则申请新的储备号段
+   */
+  private void keepReserve() {
+    if (this.closed || this.suspended || !this.isReserving.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      // 目标大小 = 实测速率 * 储备时长，速率未知时至少为一个缓冲区大小
+      long target = Math.max((long) Math.ceil(idRate() * this.seqDef.reserve()),
+          Math.max(this.seqDef.cache(), 1));
+      ReserveSegment segment = this.reserve;
+      if (null != segment && segment.remaining() * 2 >= target) {
+        return;
+      }
+      long generation;
+      reserveLock.lock();
+      try {
+        generation = this.reserveGeneration;
+      } finally {
+        reserveLock.unlock();
+      }
+      Segment leased = this.reserveSource.lease(target);
+      reserveLock.lock();
+      try {
+        // 申请期间序列被重置，号段可能与重置后的计数器重复
+        if (generation != this.reserveGeneration) {
+          log.info("Sequence <{}> is reset while leasing reserve, discard {}",
+              this.seqDef.name(), leased);
+          return;
+        }
+        this.reserve = new ReserveSegment(leased.start(), leased.step(), target);
+      } finally {
+        reserveLock.unlock();
+      }
+      log.info("Sequence <{}> leased reserve segment {}", this.seqDef.name(), this.reserve);
+    } catch (Exception e) {
+      log.warn("Sequence <{}> lease reserve segment failure", this.seqDef.name(), e);
+    } finally {
+      this.isReserving.set(false);
+    }
+  }
+
 }
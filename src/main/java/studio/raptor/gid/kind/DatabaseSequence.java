@@ -1,17 +1,172 @@
 package studio.raptor.gid.kind;
 
-import org.apache.curator.framework.CuratorFramework;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.CounterSegmentSource;
+import studio.raptor.gid.counter.JdbcCounter;
+import studio.raptor.gid.counter.SegmentSource;
+import studio.raptor.gid.def.BreadcrumbDef;
 
 /**
+ * <pre>
  * 基于数据库的序列
  *
+ * 一、特性
+ * 语义与{@link Breadcrumb}相同（name/incr/start/cache），号段由序列表中每个序列一行的计数器分配
+ * （见{@link JdbcCounter}），不依赖zookeeper；缓冲与预取复用{@link IdBuffer}，
+ * 配置了cache时每次补号只访问一次数据库。
+ *
+ * 二、优缺点
+ *【优】全局唯一、严格有序，无需zookeeper
+ *【缺】依赖数据库，补号性能与可用性受数据库限制；不支持应急储备、号段日志与计数器分片
+ *
+ * 计数器名称与backend为jdbc的{@link Breadcrumb}相同（{@link Breadcrumb#SEQ_ROOT_PATH} + 序列名），
+ * 两者可共用同一张序列表交替使用。
+ * </pre>
+ *
  * @author bruce
  * @since 0.1
  */
-public abstract class DatabaseSequence implements Sequencable {
+@ThreadSafe
+public class DatabaseSequence implements Sequencable {
+
+  ////
+  private static Logger log = LoggerFactory.getLogger(DatabaseSequence.class);
+  ////
+
+  private final BreadcrumbDef seqDef;
+
+  /**
+   * 号段来源（无缓冲取号、重置）
+   */
+  private final SegmentSource source;
+
+  /**
+   * ID缓冲区，未配置cache时为null
+   */
+  private volatile IdBuffer buffer;
+
+  /**
+   * 构造函数，使用默认序列表
+   *
+   * @param seqDef 序列定义
+   * @param dataSource 数据源
+   * @throws GidException 起始ID初始化异常
+   */
+  public DatabaseSequence(BreadcrumbDef seqDef, DataSource dataSource) throws GidException {
+    this(seqDef, new JdbcCounter(dataSource, JdbcCounter.DEFAULT_TABLE,
+        Breadcrumb.SEQ_ROOT_PATH + seqDef.name()));
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param seqDef 序列定义
+   * @param counter 计数器
+   * @throws GidException 起始ID初始化异常
+   */
+  public DatabaseSequence(BreadcrumbDef seqDef, Counter counter) throws GidException {
+    this.seqDef = seqDef;
+    this.source = new CounterSegmentSource(counter, seqDef.incr());
+
+    // 设置起始值
+    try {
+      this.source.initialize(seqDef.start());
+      log.info("seq <" + seqDef.name() + "> 's segment source is " + this.source);
+    } catch (GidException e) {
+      throw new GidException("initalize startid failure", e);
+    }
+
+    // 初始化缓冲区
+    if (seqDef.cache() > 0) {
+      this.buffer = new IdBuffer(this.source, seqDef, seqDef.cache(), null);
+    }
+  }
+
+  /**
+   * 等待缓冲区填充到指定比例
+   *
+   * @param fillLevel 缓冲区目标填充比例（0~1）
+   * @param timeoutMs 超时时间（毫秒）
+   * @return 是否已达到目标
+   */
+  public boolean warmup(double fillLevel, long timeoutMs) throws GidException {
+    IdBuffer current = this.buffer;
+    if (null == current || fillLevel <= 0) {
+      return true;
+    }
+    return current.awaitFill((int) Math.ceil(this.seqDef.cache() * fillLevel), timeoutMs);
+  }
+
+  @Override
+  public long nextId() throws GidException {
+    try {
+      IdBuffer current = this.buffer;
+      if (null != current) {
+        return current.nextId();
+      }
+      return this.source.lease(1).start();
+    } catch (Exception e) {
+      throw new GidException("get <" + this.seqDef.name() + "> next id fail", e);
+    }
+  }
+
+  @Override
+  public long nextLong() {
+    IdBuffer current = this.buffer;
+    if (null != current) {
+      return current.nextLong();
+    }
 
-  public DatabaseSequence(CuratorFramework zkClient) {
+    try {
+      return this.source.lease(1).start();
+    } catch (GidException e) {
+      log.warn("Get <{}> next id fail", this.seqDef.name(), e);
+      throw IdUnavailableException.UNAVAILABLE;
+    }
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    IdBuffer current = this.buffer;
+    if (null != current) {
+      current.nextIds(dst, off, len);
+      return;
+    }
+    for (int i = off, end = off + len; i < end; i++) {
+      dst[i] = nextLong();
+    }
+  }
 
+  /**
+   * 重置序列起始值：重置计数器后清空缓冲区，正在申请中的旧号段随之作废
+   */
+  @Override
+  public void reset(long newStart) throws GidException {
+    this.source.reset(newStart);
+    IdBuffer current = this.buffer;
+    if (null != current) {
+      current.clear();
+    }
   }
 
+  @Override
+  public synchronized boolean adjustCache(int newCache) throws Exception {
+    if (null != this.buffer) {
+      this.buffer.adjustCache(newCache);
+    } else {
+      this.buffer = new IdBuffer(this.source, this.seqDef, newCache, null);
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "DatabaseSequence[" + this.seqDef.name() + "," + this.source + "]";
+  }
 }
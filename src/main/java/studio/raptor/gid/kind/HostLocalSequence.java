@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+
+/**
+ * <pre>
+ * 主机内共享序列。
+ *
+ * 同一主机上的多个JVM共享一个{@link SharedSegmentRing}：持有计数器的进程竞争发布者身份，
+ * 发布者向计数器（zookeeper）申请号段并写入环中，所有进程直接从环中领取ID。
+ * 每台主机只需一个进程持有zookeeper会话，申请次数也由每个进程一次变为每台主机一次。
+ *
+ * 不持有计数器的进程只领取ID；发布者进程退出后，其他持有计数器的进程在一秒内接替。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class HostLocalSequence implements LongSequence, Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(HostLocalSequence.class);
+
+  /**
+   * 环中没有ID时等待的超时时间（毫秒）
+   */
+  private static int get_id_timeout_ms = 100;
+
+  /**
+   * 发布者检查环中余量的间隔（微秒）
+   */
+  private static int publish_interval_us = 500;
+
+  /**
+   * 非发布者重新竞争发布者身份的间隔（毫秒）
+   */
+  private static int election_interval_ms = 1000;
+
+  /**
+   * 单个取号时使用的线程本地数组
+   */
+  private static final ThreadLocal<long[]> single = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  private final String name;
+
+  private final SharedSegmentRing ring;
+
+  private final Counter counter;
+
+  private final long incr;
+
+  private final int segmentSize;
+
+  private final Thread publisher;
+
+  private volatile boolean running = true;
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param ring 共享号段环
+   * @param counter 最大ID计数器，为null时只领取ID、不参与发布
+   * @param incr 增长步长
+   * @param segmentSize 单次申请的ID数量
+   */
+  public HostLocalSequence(String name, SharedSegmentRing ring, Counter counter, long incr,
+      int segmentSize) {
+    this.name = name;
+    this.ring = ring;
+    this.counter = counter;
+    this.incr = incr;
+    this.segmentSize = segmentSize;
+    if (null == counter) {
+      this.publisher = null;
+      return;
+    }
+    this.publisher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        publishLoop();
+      }
+    }, "shared_ring_publisher-" + name);
+    this.publisher.setDaemon(true);
+    this.publisher.start();
+  }
+
+  /**
+   * 本进程是否是发布者
+   */
+  public boolean isPublisher() {
+    return null != counter && ring.tryPublish();
+  }
+
+  @Override
+  public long nextLong() {
+    long[] id = single.get();
+    nextIds(id, 0, 1);
+    return id[0];
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    long deadline = 0;
+    while (len > 0) {
+      int n = ring.claim(dst, off, len);
+      if (n > 0) {
+        off += n;
+        len -= n;
+        continue;
+      }
+      // 环已取空，等待发布者补充
+      if (0 == deadline) {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(get_id_timeout_ms);
+      } else if (System.nanoTime() >= deadline) {
+        throw IdUnavailableException.EXHAUSTED;
+      }
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+      if (Thread.interrupted()) {
+        Thread.currentThread().interrupt();
+        throw IdUnavailableException.INTERRUPTED;
+      }
+    }
+  }
+
+  /**
+   * 停止发布并关闭环
+   */
+  @Override
+  public void close() {
+    running = false;
+    if (null != publisher) {
+      LockSupport.unpark(publisher);
+      try {
+        publisher.join(election_interval_ms * 2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    ring.close();
+  }
+
+  /**
+   * 发布者线程：竞争发布者身份，成为发布者后保持环中至少有一个号段的余量
+   */
+  private void publishLoop() {
+    boolean publishing = false;
+    while (running) {
+      if (!ring.tryPublish()) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(election_interval_ms));
+        continue;
+      }
+      if (!publishing) {
+        publishing = true;
+        log.info("Become publisher of shared sequence {} on {}", name, ring);
+      }
+      try {
+        while (running && ring.available() < segmentSize && ring.hasVacancy()) {
+          long delta = incr * segmentSize;
+          long start = counter.getAndAdd(delta);
+          ring.publish(start, incr, segmentSize);
+          log.debug("Publish segment of {} : range -> [{},{})", name, start, start + delta);
+        }
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(publish_interval_us));
+      } catch (GidException | RuntimeException e) {
+        log.error("Publish segment of {} failure", name, e);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(election_interval_ms));
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "shared[" + name + "," + ring + "]";
+  }
+}
@@ -1,18 +1,36 @@
 package studio.raptor.gid.kind;
 
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.curator.framework.recipes.atomic.AtomicValue;
 import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.utils.ZKPaths;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import studio.raptor.gid.common.ExecutorUtil;
 import studio.raptor.gid.common.OnewayLinkedBlockingQueue;
 import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.CounterSegmentSource;
+import studio.raptor.gid.counter.Segment;
+import studio.raptor.gid.counter.SegmentSource;
+import studio.raptor.gid.counter.ZookeeperCounter;
 import studio.raptor.gid.def.BreadcrumbDef;
 
 /**
@@ -32,9 +50,13 @@ public class IdBuffer {
   private static Logger log = LoggerFactory.getLogger(IdBuffer.class);
 
   /**
-   * 用于执行ID申请的线程池
+   * 用于执行ID申请的线程池。
+   *
+   * 队列有界且满时拒绝，申请任务从不在提交线程（取号线程、延迟调度线程）上执行；
+   * 每个缓冲区同时只有一个申请任务，被拒绝时复位申请标志，由后续取号重新触发。
    */
-  public static ExecutorService idWorkerExecutor = ExecutorUtil.createCachedThreadPool("id_worker", 1, Runtime.getRuntime().availableProcessors());
+  public static ExecutorService idWorkerExecutor = ExecutorUtil.createBoundedThreadPool("id_worker",
+      Math.max(2, Runtime.getRuntime().availableProcessors()), 4096);
 
   /**
    * ID缓冲区空闲比率
@@ -46,15 +68,35 @@ public class IdBuffer {
    */
   private static int get_id_timeout_ms = 100;
 
+  /**
+   * 首次申请的号段为缓冲区大小的几分之一，之后逐次翻倍直到缓冲区大小
+   */
+  private static int initial_lease_divisor = 8;
+
+  /**
+   * 首次申请的最小ID数量，缓冲区较小时直接申请整个缓冲区
+   */
+  private static int min_initial_lease = 32;
+
+  /**
+   * 号段增长阶段的申请随机延迟上限（毫秒），避免集群整体重启时同时写zk
+   */
+  private static int ramp_jitter_ms = 500;
+
+  /**
+   * 用于延迟提交ID申请的线程池
+   */
+  private static ScheduledExecutorService refillScheduler = ExecutorUtil.createScheduledThreadPool("id_refill_jitter", 1);
+
   /**
    * ID池
    */
   private OnewayLinkedBlockingQueue<Long> idPool;
 
   /**
-   * ID最大值许可（@zk）
+   * 号段来源
    */
-  private DistributedAtomicLong maxId;
+  private SegmentSource source;
 
   /**
    * 序列定义
@@ -73,6 +115,11 @@ public class IdBuffer {
    */
   private AtomicBoolean isApplying;
 
+  /**
+   * 异步取号的等待者，缓冲区取空时登记，由填充线程完成
+   */
+  private final ConcurrentLinkedDeque<SettableFuture<Long>> waiters = new ConcurrentLinkedDeque<>();
+
   /**
    * 应用启动时的初始缓冲大小
    */
@@ -83,25 +130,66 @@ public class IdBuffer {
    */
   private AtomicInteger dynamicPoolSize=new AtomicInteger( 0 );
 
+  /**
+   * 号段日志槽位
+   */
+  private SegmentJournal.Slot journal;
+
+  /**
+   * 是否已关闭，关闭后不再申请号段
+   */
+  private volatile boolean closed;
+
+  /**
+   * 当前单次申请的ID数量上限，启动时较小，逐次翻倍直到缓冲区大小
+   */
+  private volatile int leaseSize;
+
+  /**
+   * 延迟提交中的ID申请任务
+   */
+  private final AtomicReference<IdWorker> delayedWorker = new AtomicReference<IdWorker>();
+
+  /**
+   * 串行化填充与清空，避免清空后仍有申请中的号段被放入缓冲区
+   */
+  private final ReentrantLock fillLock = new ReentrantLock();
+
+  /**
+   * 缓冲区代数：每次清空时递增（在fillLock下修改），代数变化前申请的号段作废
+   */
+  private volatile long generation = 0;
+
   /**
    * 构造函数
    *
    * @param maxId 最大ID计数器
    * @param seqDef 序列定义
    */
-  public IdBuffer(DistributedAtomicLong maxId, BreadcrumbDef seqDef) {
-    this.maxId = maxId;
-    this.seqDef = seqDef;
-    this.initPoolSize=this.seqDef.cache();
-    log.info("this.initPoolSize="+ this.initPoolSize+" this.dynamicPoolSize="+this.dynamicPoolSize );
-    if(this.dynamicPoolSize.get()==0){
-      this.dynamicPoolSize.set(this.initPoolSize);
-    }
-    this.idPool = new OnewayLinkedBlockingQueue<Long>(this.initPoolSize);
-    acquire(this.initPoolSize);//申请填充ID缓冲区
-    //缓冲大小*空闲比例
-    this.applicantThreshold = Math.max((long) Math.floor(this.initPoolSize * id_pool_vacancy_rate), 1);
-    this.isApplying = new AtomicBoolean(false);
+  public IdBuffer(DistributedAtomicLong maxId, BreadcrumbDef seqDef) throws GidException {
+    this(asCounter(maxId, seqDef), seqDef);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param maxId 最大ID计数器
+   * @param seqDef 序列定义
+   * @param newCache cache值
+   */
+  public IdBuffer(DistributedAtomicLong maxId, BreadcrumbDef seqDef, int newCache)
+      throws GidException {
+    this(asCounter(maxId, seqDef), seqDef, newCache);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param maxId 最大ID计数器
+   * @param seqDef 序列定义
+   */
+  public IdBuffer(Counter maxId, BreadcrumbDef seqDef) throws GidException {
+    this(maxId, seqDef, seqDef.cache());
   }
 
   /**
@@ -111,16 +199,48 @@ public class IdBuffer {
    * @param seqDef 序列定义
    * @param newCache cache值
    */
-  public IdBuffer(DistributedAtomicLong maxId, BreadcrumbDef seqDef,int newCache) {
-    this.maxId = maxId;
+  public IdBuffer(Counter maxId, BreadcrumbDef seqDef, int newCache) throws GidException {
+    this(maxId, seqDef, newCache, null);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param maxId 最大ID计数器
+   * @param seqDef 序列定义
+   * @param newCache cache值
+   * @param journal 号段日志槽位，为null时不记录号段
+   */
+  public IdBuffer(Counter maxId, BreadcrumbDef seqDef, int newCache, SegmentJournal.Slot journal)
+      throws GidException {
+    this(new CounterSegmentSource(maxId, seqDef.incr()), seqDef, newCache, journal);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param source 号段来源
+   * @param seqDef 序列定义
+   * @param newCache cache值
+   * @param journal 号段日志槽位，为null时不记录号段
+   */
+  public IdBuffer(SegmentSource source, BreadcrumbDef seqDef, int newCache,
+      SegmentJournal.Slot journal) throws GidException {
+    this.source = source;
     this.seqDef = seqDef;
+    this.journal = journal;
     this.initPoolSize=newCache;
     log.info("this.initPoolSize="+ this.initPoolSize+" this.dynamicPoolSize="+this.dynamicPoolSize );
     if(this.dynamicPoolSize.get()==0){
       this.dynamicPoolSize.set(this.initPoolSize);
     }
     this.idPool = new OnewayLinkedBlockingQueue<Long>(this.initPoolSize);
-    acquire(this.initPoolSize);//申请填充ID缓冲区
+    // 先申请一个小号段立即提供服务，其余部分在增长阶段带随机延迟补充
+    this.leaseSize = Math.max(this.initPoolSize / initial_lease_divisor,
+        Math.min(this.initPoolSize, min_initial_lease));
+    if (!resume()) {
+      acquire(this.initPoolSize);//申请填充ID缓冲区
+    }
     //缓冲大小*空闲比例
     this.applicantThreshold = Math.max((long) Math.floor(this.initPoolSize * id_pool_vacancy_rate), 1);
     this.isApplying = new AtomicBoolean(false);
@@ -130,11 +250,170 @@ public class IdBuffer {
    * 获取ID
    */
   public Long nextId() throws GidException {
+    Long id;
+    try {
+      id = poll();
+    } catch (InterruptedException e) {
+      throw new GidException(e);
+    }
+
+    if (null == id) {
+      throw new GidException("Id pool is empty ,maybe too fast to get");
+    }
+    return id;
+  }
+
+  /**
+   * 获取ID，失败时抛出预先分配的非受检异常
+   */
+  public long nextLong() {
+    Long id;
+    try {
+      id = poll();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw IdUnavailableException.INTERRUPTED;
+    }
+
+    if (null == id) {
+      throw IdUnavailableException.EXHAUSTED;
+    }
+    return id;
+  }
+
+  /**
+   * 批量获取ID，每次加锁从缓冲区取出尽可能多的ID，缓冲区为空时按{@link #nextLong()}等待填充。
+   *
+   * 只减少了加锁与日志标记的次数：缓冲区按单个ID存放装箱的Long（填充时装箱、取出后拆箱），
+   * 每批还需一个临时列表，并非按号段整段拷贝；分配开销与逐个取号相同。
+   *
+   * @param dst 目标数组
+   * @param off 起始下标
+   * @param len 数量
+   */
+  public void nextIds(long[] dst, int off, int len) {
+    List<Long> batch = new ArrayList<Long>(Math.min(len, this.initPoolSize));
+    int i = off, end = off + len;
+    while (i < end) {
+      prepare();
+      batch.clear();
+      if (0 == idPool.drainTo(batch, end - i)) {
+        dst[i++] = nextLong();
+        continue;
+      }
+      for (Long id : batch) {
+        if (null != journal) {
+          journal.handOut(id);
+        }
+        dst[i++] = id;
+      }
+    }
+    prepare();
+  }
+
+  /**
+   * 从缓冲区取出ID，必要时触发填充
+   *
+   * @return ID，超时未取到时返回null
+   */
+  private Long poll() throws InterruptedException {
+    prepare();
+
+    Long id = idPool.poll(get_id_timeout_ms, TimeUnit.MILLISECONDS);
+
+    if (null != id && null != journal) {
+      journal.handOut(id);
+    }
+
+    return id;
+  }
+
+  /**
+   * 异步获取ID
+   *
+   * 缓冲区中有ID时返回已完成的future；否则登记等待者，由填充线程在号段申请完成后完成，调用线程不阻塞。
+   *
+   * @return ID future，申请失败时以{@link IdUnavailableException#UNAVAILABLE}完成
+   */
+  public ListenableFuture<Long> nextIdAsync() {
+    prepare();
+
+    Long id = take();
+    if (null != id) {
+      return Futures.immediateFuture(id);
+    }
+
+    SettableFuture<Long> waiter = SettableFuture.create();
+    this.waiters.offer(waiter);
+    // 登记期间可能已完成填充，重新检查
+    prepare();
+    serveWaiters();
+    if (this.closed) {
+      failWaiters();
+    }
+    return waiter;
+  }
+
+  /**
+   * 非阻塞地从缓冲区取出ID
+   *
+   * @return ID，缓冲区为空时返回null
+   */
+  private Long take() {
+    Long id = idPool.poll();
+    if (null != id && null != journal) {
+      journal.handOut(id);
+    }
+    return id;
+  }
+
+  /**
+   * 按登记顺序为异步等待者分配ID，缓冲区取空时停止
+   */
+  private void serveWaiters() {
+    SettableFuture<Long> waiter;
+    while (null != (waiter = this.waiters.poll())) {
+      if (waiter.isDone()) {
+        continue;
+      }
+      Long id = take();
+      if (null == id) {
+        this.waiters.offerFirst(waiter);
+        // 归还后缓冲区可能又有了ID，且填充线程已结束服务，需再检查一次
+        if (this.idPool.size() == 0) {
+          return;
+        }
+        continue;
+      }
+      if (!waiter.set(id)) {
+        // 等待者已取消，ID不可回收（可能已写入日志），仅造成号段空洞
+        log.debug("Async waiter of sequence {} cancelled, id {} skipped", this.seqDef.name(), id);
+      }
+    }
+  }
+
+  /**
+   * 异步等待者全部以失败完成
+   */
+  private void failWaiters() {
+    SettableFuture<Long> waiter;
+    while (null != (waiter = this.waiters.poll())) {
+      waiter.setException(IdUnavailableException.UNAVAILABLE);
+    }
+  }
+
+  /**
+   * 取号前的准备：必要时触发填充、切换调整后的缓冲区
+   */
+  private void prepare() {
+    if (this.closed) {
+      return;
+    }
     if(!this.isCacheChanged()){
       // id池中空闲位数量超过指定阈值 且 idBuffer未处在申请状态
       if ((this.idPool.remainingCapacity() >= this.applicantThreshold)
               && (this.isApplying.compareAndSet(false, true))) {
-        idWorkerExecutor.submit(new IdWorker(this.idPool.remainingCapacity()));
+        submitRefill(this.idPool.remainingCapacity());
       }
     }else{
       //cache调整过,等待上一个idPool全部用完，才开启下一个新size的idPool
@@ -149,7 +428,7 @@ public class IdBuffer {
           // 申请填充ID缓冲区,通过线程池获取
           //acquire方法会和和fillIdPool.put方法会造成死锁
 //        acquire(this.initPoolSize);
-        idWorkerExecutor.submit(new IdWorker(this.initPoolSize));
+        submitRefill(this.initPoolSize);
           //初始化1/3
 //          int num=Math.max(this.initPoolSize/3,1);
 //          idWorkerExecutor.submit(new IdWorker(num));
@@ -157,22 +436,69 @@ public class IdBuffer {
       }
     }
 
-    Long id;
-    try {
-      id = idPool.poll(get_id_timeout_ms, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException e) {
-      throw new GidException(e);
+    // 缓冲区已取空时不再等待延迟中的申请任务
+    if (this.idPool.size() == 0) {
+      IdWorker worker = this.delayedWorker.getAndSet(null);
+      if (null != worker) {
+        dispatch(worker);
+      }
     }
+  }
 
-    if (null == id) {
-      throw new GidException("Id pool is empty ,maybe too fast to get");
-    }
+  /**
+   * 缓冲区中可用的ID数量
+   */
+  public int available() {
+    return this.idPool.size();
+  }
 
-    return id;
+  /**
+   * 等待缓冲区填充到指定数量（用于预热）
+   *
+   * @param target 目标数量，超过缓冲区大小时按缓冲区大小计
+   * @param timeoutMs 超时时间（毫秒）
+   * @return 是否已达到目标数量
+   */
+  public boolean awaitFill(int target, long timeoutMs) throws GidException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    int goal = Math.min(target, this.initPoolSize);
+    while (this.idPool.size() < goal) {
+      if (!isCacheChanged() && this.idPool.remainingCapacity() > 0
+          && this.isApplying.compareAndSet(false, true)) {
+        submitRefill(this.idPool.remainingCapacity());
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        return false;
+      }
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GidException(e);
+      }
+    }
+    return true;
   }
 
+  /**
+   * 清空缓冲区（如重置序列后），正在申请中的号段随之作废，不会再放入缓冲区
+   */
   public void clear(){
-    this.idPool.clear();
+    fillLock.lock();
+    try {
+      this.generation++;
+      this.idPool.clear();
+    } finally {
+      fillLock.unlock();
+    }
+  }
+
+  /**
+   * 关闭缓冲区：不再申请号段，缓冲区中剩余的ID仍可取出，等待中的异步请求以失败完成
+   */
+  public void close() {
+    this.closed = true;
+    failWaiters();
   }
 
   /**
@@ -180,37 +506,145 @@ public class IdBuffer {
    *
    * @param num 申请的ID数量
    */
-  private void acquire(int num) {
+  private void acquire(int num) throws GidException {
     log.info("acquire sequence "+this.seqDef.name()+ " acquire:"+num+" initPoolSize="+this.initPoolSize+" dynamicPoolSize="+this.dynamicPoolSize.get() );
-    AtomicValue<Long> rc = null;
-    // 增加maxId直到成功 TODO v0.2 将根据ZK ERROR进行有限尝试
-    do {
-      try {
-        //增长步长值*申请数量
-        long delta = seqDef.incr() * num;
-        rc = maxId.add(delta);
-      } catch (Exception e) {
-        log.warn("Apply for adding " + num + " to " + seqDef.name() + " failure", e);
-      }
-    } while (!rc.succeeded());
+    // 增长阶段限制单次申请数量
+    int lease = this.leaseSize;
+    num = Math.min(num, lease);
+    if (lease < this.initPoolSize) {
+      this.leaseSize = Math.min(lease * 2, this.initPoolSize);
+    }
+    long gen = this.generation;
+    Segment segment = source.lease(num);
+    if (gen != this.generation) {
+      log.info("Buffer of sequence {} is cleared while leasing, discard {}", seqDef.name(),
+          segment);
+      return;
+    }
 
-    fillIdPool(rc.preValue(), rc.postValue(), seqDef.incr());
+    // 先记录号段再发出ID，重启时才能从日志恢复
+    if (null != journal) {
+      journal.record(segment.start(), segment.step(), num);
+    }
+    fillIdPool(segment.start(), segment.end(), segment.step(), gen);
     log.info("acquire sequence finished");
   }
 
   /**
-   * 填充ID
+   * 提交ID申请任务。
+   *
+   * 号段增长阶段且缓冲区中的ID足够支撑延迟时随机延迟提交，分散集群重启后的zk写入；
+   * 取号压力大时立即提交，不影响取号。
+   *
+   * @param shortage 短缺的ID数量
+   */
+  private void submitRefill(int shortage) {
+    final IdWorker worker = new IdWorker(shortage);
+    if (this.leaseSize < this.initPoolSize && ramp_jitter_ms > 0
+        && this.idPool.size() >= this.applicantThreshold) {
+      this.delayedWorker.set(worker);
+      refillScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (delayedWorker.compareAndSet(worker, null)) {
+            dispatch(worker);
+          }
+        }
+      }, ThreadLocalRandom.current().nextInt(ramp_jitter_ms), TimeUnit.MILLISECONDS);
+    } else {
+      dispatch(worker);
+    }
+  }
+
+  /**
+   * 将申请任务交给申请线程池，不在当前线程执行（异步取号路径依赖此保证）；
+   * 线程池饱和时放弃本次申请并复位申请标志
+   */
+  private void dispatch(IdWorker worker) {
+    try {
+      idWorkerExecutor.execute(worker);
+    } catch (RejectedExecutionException e) {
+      log.warn("Id worker executor saturated, refill of sequence {} dropped", seqDef.name());
+      isApplying.set(false);
+      // 异步等待者不能无限期挂起，以失败完成，由调用方重试
+      failWaiters();
+    }
+  }
+
+  /**
+   * 从号段日志恢复上次运行未发出的ID，恢复时不写zookeeper
+   *
+   * @return 是否已恢复
+   */
+  private boolean resume() throws GidException {
+    if (null == journal) {
+      return false;
+    }
+    long[] segment = journal.recover();
+    if (null == segment) {
+      return false;
+    }
+    long start = segment[0], step = segment[1], count = segment[2];
+    long end = start + step * count;
+    if (step != source.step() || count > this.initPoolSize) {
+      log.info("Journaled segment of sequence {} does not match definition, discard it",
+          seqDef.name());
+      return false;
+    }
+    // 计数器必须已越过号段末尾，否则计数器可能被重置过，号段中的ID会被再次分配
+    boolean issued;
+    try {
+      issued = source.isIssued(new Segment(start, step, count));
+    } catch (GidException e) {
+      // 无法确认（如代理计数器不支持读取当前值）时按未越过处理，丢弃号段只造成号段空洞
+      log.info("Journaled segment of sequence {} can not be verified, discard it : {}",
+          seqDef.name(), e.getMessage());
+      return false;
+    }
+    if (!issued) {
+      log.info("Counter of sequence {} is behind journaled segment, discard it", seqDef.name());
+      return false;
+    }
+    journal.resume(start, step, count, segment[3]);
+    fillIdPool(start, end, step, this.generation);
+    log.info("Resume sequence {} from journal : range -> [{},{})", seqDef.name(), start, end);
+    return true;
+  }
+
+  /**
+   * 将zk计数器包装为{@link Counter}
+   */
+  private static Counter asCounter(DistributedAtomicLong maxId, BreadcrumbDef seqDef) {
+    return new ZookeeperCounter(ZKPaths.makePath(Breadcrumb.SEQ_ROOT_PATH, seqDef.name()), maxId,
+        null);
+  }
+
+  /**
+   * 填充ID，缓冲区被清空（代数变化）时放弃剩余部分
    *
    * @param start 开始ID
    * @param end 结束ID
    * @param step 步长
+   * @param gen 申请号段时的缓冲区代数
    */
-  private void fillIdPool(long start, long end, long step) {
+  private void fillIdPool(long start, long end, long step, long gen) {
     log.info("Fill id pool ：range -> [{},{}),total -> {}", start, end, end - start);
     long id = start;
     do {
-      //对于put方法，若向队尾添加元素的时候发现队列已经满了会发生阻塞一直等待空间，以加入元素
-      idPool.put(id);
+      // 缓冲区满时在锁外等待空间，只有申请线程放入元素，锁内的put不会阻塞
+      while (idPool.remainingCapacity() == 0 && gen == this.generation) {
+        LockSupport.parkNanos(1000);
+      }
+      fillLock.lock();
+      try {
+        if (gen != this.generation) {
+          log.info("Buffer of sequence {} is cleared, discard [{},{})", seqDef.name(), id, end);
+          return;
+        }
+        idPool.put(id);
+      } finally {
+        fillLock.unlock();
+      }
       id += step;
     } while (id < end);
     log.info( "Fill id pool finished" );
@@ -246,13 +680,29 @@ public class IdBuffer {
 
     @Override
     public void run() {
+      boolean acquired = false;
       try {
-        acquire(this.shortage);
+        if (!closed) {
+          acquire(this.shortage);
+          acquired = true;
+        }
       } catch (Exception e) {
         log.error("Id worker run acquiring task failure", e);
       } finally {
         isApplying.set(false);
       }
+
+      serveWaiters();
+      if (!acquired) {
+        failWaiters();
+      }
+
+      // 申请期间缓冲区可能已被取空，此后取号线程只等待而不会再触发申请，需在此补充申请
+      if (acquired && !closed && !isCacheChanged()
+          && idPool.remainingCapacity() >= applicantThreshold
+          && isApplying.compareAndSet(false, true)) {
+        submitRefill(idPool.remainingCapacity());
+      }
     }
   }
 
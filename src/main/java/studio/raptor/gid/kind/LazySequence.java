@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.async.AsyncIds;
+import studio.raptor.gid.async.AsyncSequence;
+import studio.raptor.gid.async.IdPublisher;
+import studio.raptor.gid.async.SequencePublisher;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 延迟创建的序列。
+ *
+ * 只持有序列名称与创建方式，首次取号时才创建真正的序列（zk计数器、ID缓冲区等），
+ * 并发的首次调用只会创建一次；创建失败时下次调用重新创建。
+ * 关闭（被替换或移除）后不再创建：仍持有本实例的调用方取号失败，不会创建出不受管理的序列。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class LazySequence implements Sequencable, AsyncSequence, Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(LazySequence.class);
+
+  /**
+   * 序列创建方式
+   */
+  public interface Factory {
+
+    /**
+     * 创建序列
+     *
+     * @return 序列实例
+     * @throws GidException 创建失败
+     */
+    Sequencable create() throws GidException;
+  }
+
+  private final String name;
+
+  private final Factory factory;
+
+  private volatile Sequencable target;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * 是否已关闭（受lock保护写入）
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * 构造函数
+   *
+   * @param name 序列名称
+   * @param factory 序列创建方式
+   */
+  public LazySequence(String name, Factory factory) {
+    this.name = name;
+    this.factory = factory;
+  }
+
+  @Override
+  public long nextId() throws Exception {
+    return materialize().nextId();
+  }
+
+  @Override
+  public long nextLong() {
+    Sequencable seq = this.target;
+    return (null == seq ? materializeUnchecked() : seq).nextLong();
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    Sequencable seq = this.target;
+    (null == seq ? materializeUnchecked() : seq).nextIds(dst, off, len);
+  }
+
+  @Override
+  public ListenableFuture<Long> nextIdAsync() {
+    Sequencable seq = this.target;
+    if (null == seq) {
+      // 尚未创建时创建过程需访问zk，交由后台线程执行
+      return AsyncIds.supply(this);
+    }
+    return AsyncIds.nextIdAsync(seq);
+  }
+
+  @Override
+  public IdPublisher ids() {
+    return new SequencePublisher(this);
+  }
+
+  @Override
+  public void reset(long newStart) throws GidException {
+    materialize().reset(newStart);
+  }
+
+  @Override
+  public boolean adjustCache(int newCache) throws Exception {
+    return materialize().adjustCache(newCache);
+  }
+
+  /**
+   * 获取真正的序列，尚未创建时创建
+   *
+   * @return 序列实例
+   * @throws GidException 创建失败
+   * @throws IdUnavailableException 尚未创建时已被关闭
+   */
+  public Sequencable materialize() throws GidException {
+    Sequencable seq = this.target;
+    if (null != seq) {
+      return seq;
+    }
+    // 创建过程需访问zk，使用显式锁以免在虚拟线程中钉住载体线程
+    lock.lock();
+    try {
+      if (this.closed && null == this.target) {
+        throw IdUnavailableException.UNAVAILABLE;
+      }
+      if (null == this.target) {
+        this.target = factory.create();
+        log.info("Sequence <{}> is materialized on first use", name);
+      }
+      return this.target;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Sequencable materializeUnchecked() {
+    try {
+      return materialize();
+    } catch (GidException e) {
+      log.warn("Materialize sequence <{}> failure", name, e);
+      throw IdUnavailableException.UNAVAILABLE;
+    }
+  }
+
+  /**
+   * 关闭：此后不再创建序列，已创建的序列随之关闭（与直接创建的序列被替换或移除时相同）。
+   * 正在进行的创建完成后才关闭，创建出的序列同样被关闭。
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      this.closed = true;
+      Sequencable seq = this.target;
+      if (seq instanceof Closeable) {
+        try {
+          ((Closeable) seq).close();
+        } catch (IOException e) {
+          log.warn("Close sequence <{}> failure", name, e);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 获取已创建的序列
+   *
+   * @return 序列实例，尚未创建时返回null
+   */
+  public Sequencable target() {
+    return target;
+  }
+
+  /**
+   * 是否已创建
+   */
+  public boolean isMaterialized() {
+    return null != target;
+  }
+
+  @Override
+  public String toString() {
+    return "lazy[" + name + "," + (null == target ? "idle" : target) + "]";
+  }
+}
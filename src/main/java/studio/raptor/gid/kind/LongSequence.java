@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import studio.raptor.gid.common.IdUnavailableException;
+
+/**
+ * 基本类型序列。
+ *
+ * 取号不声明受检异常，失败时抛出预先分配的{@link IdUnavailableException}（无堆栈），
+ * 调用方无需try/catch，取号路径也不会因包装异常而分配对象。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public interface LongSequence {
+
+  /**
+   * 生产下一个序列值
+   *
+   * @return 序列值
+   * @throws IdUnavailableException 暂时无法取号
+   */
+  long nextLong();
+
+  /**
+   * 批量生产序列值，依次写入dst[off]到dst[off + len - 1]
+   *
+   * @param dst 目标数组
+   * @param off 起始下标
+   * @param len 数量
+   * @throws IdUnavailableException 暂时无法取号，此时dst中可能已写入部分序列值
+   */
+  void nextIds(long[] dst, int off, int len);
+}
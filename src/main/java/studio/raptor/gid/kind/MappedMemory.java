@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * <pre>
+ * 映射内存的原子访问，只供{@link SharedSegmentRing}使用。
+ *
+ * 共享号段环需要在多个进程共同映射的内存上做CAS与volatile读写，ByteBuffer只提供普通读写，
+ * AtomicLong等原子类只能作用于本进程的Java对象，Java 7也没有VarHandle，只能通过sun.misc.Unsafe
+ * 按绝对地址访问。
+ *
+ * Unsafe全部限定在本类中，且只通过反射与MethodHandle访问：直接引用sun.misc.Unsafe时javac
+ * 会给出“内部专用API”警告，该警告无法用@SuppressWarnings消除。static final的MethodHandle
+ * 会被JIT内联，与直接调用Unsafe没有差别。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+final class MappedMemory {
+
+  private static final MethodHandle GET_LONG;
+
+  private static final MethodHandle GET_LONG_FIELD;
+
+  private static final MethodHandle PUT_LONG;
+
+  private static final MethodHandle GET_LONG_VOLATILE;
+
+  private static final MethodHandle PUT_LONG_VOLATILE;
+
+  private static final MethodHandle COMPARE_AND_SWAP_LONG;
+
+  private static final long ADDRESS_OFFSET;
+
+  static {
+    try {
+      Class<?> type = Class.forName("sun.misc.Unsafe");
+      Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Object unsafe = field.get(null);
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      GET_LONG = lookup.findVirtual(type, "getLong",
+          MethodType.methodType(long.class, long.class)).bindTo(unsafe);
+      GET_LONG_FIELD = lookup.findVirtual(type, "getLong",
+          MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+      PUT_LONG = lookup.findVirtual(type, "putLong",
+          MethodType.methodType(void.class, long.class, long.class)).bindTo(unsafe);
+      GET_LONG_VOLATILE = lookup.findVirtual(type, "getLongVolatile",
+          MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+      PUT_LONG_VOLATILE = lookup.findVirtual(type, "putLongVolatile",
+          MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+      COMPARE_AND_SWAP_LONG = lookup.findVirtual(type, "compareAndSwapLong",
+          MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class))
+          .bindTo(unsafe);
+      MethodHandle objectFieldOffset = lookup.findVirtual(type, "objectFieldOffset",
+          MethodType.methodType(long.class, Field.class)).bindTo(unsafe);
+      ADDRESS_OFFSET = (long) objectFieldOffset
+          .invokeExact(Buffer.class.getDeclaredField("address"));
+    } catch (Throwable e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private MappedMemory() {
+  }
+
+  /**
+   * 映射区域的起始地址
+   */
+  static long address(MappedByteBuffer buffer) {
+    try {
+      Object target = buffer;
+      return (long) GET_LONG_FIELD.invokeExact(target, ADDRESS_OFFSET);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  static long getLong(long address) {
+    try {
+      return (long) GET_LONG.invokeExact(address);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  static void putLong(long address, long value) {
+    try {
+      PUT_LONG.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  static long getLongVolatile(long address) {
+    try {
+      return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  static void putLongVolatile(long address, long value) {
+    try {
+      PUT_LONG_VOLATILE.invokeExact((Object) null, address, value);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  static boolean compareAndSwapLong(long address, long expected, long value) {
+    try {
+      return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expected, value);
+    } catch (Throwable e) {
+      throw propagate(e);
+    }
+  }
+
+  private static RuntimeException propagate(Throwable e) {
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    throw new IllegalStateException(e);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import java.util.concurrent.atomic.AtomicLong;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 应急储备号段。
+ *
+ * 号段 start, start + step, ..., start + (count - 1) * step 已从计数器申请，
+ * 只记录游标而不预先生成ID，储备再大也不占用额外内存。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+class ReserveSegment {
+
+  private final long start;
+
+  private final long step;
+
+  private final long count;
+
+  private final AtomicLong cursor = new AtomicLong(0);
+
+  /**
+   * 构造函数
+   *
+   * @param start 起始ID
+   * @param step 步长
+   * @param count ID数量
+   */
+  ReserveSegment(long start, long step, long count) {
+    this.start = start;
+    this.step = step;
+    this.count = count;
+  }
+
+  /**
+   * 从储备中取号
+   *
+   * @return ID
+   * @throws GidException 储备已耗尽
+   */
+  long next() throws GidException {
+    long index = cursor.getAndIncrement();
+    if (index >= count) {
+      throw new GidException("Reserve segment is exhausted");
+    }
+    return start + index * step;
+  }
+
+  /**
+   * 剩余ID数量
+   */
+  long remaining() {
+    return Math.max(count - cursor.get(), 0);
+  }
+
+  long capacity() {
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("reserve[start=%s,step=%s,count=%s,remaining=%s]", start, step, count,
+        remaining());
+  }
+}
@@ -0,0 +1,600 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import com.google.common.base.Charsets;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * 号段日志。
+ *
+ * 以内存映射文件记录每个面包屑序列当前持有的号段及其取号游标，进程重启后可在租期内
+ * 直接从日志恢复剩余号段，无需再次写zookeeper。为保证ID唯一，恢复需满足以下规则：
+ * <ol>
+ *     <li>同一日志文件同时只能被一个进程持有（文件锁）</li>
+ *     <li>日志头中的命名空间、进程标识与当前进程一致</li>
+ *     <li>号段记录校验和正确，且记录时间在租期内</li>
+ *     <li>zookeeper计数器已越过号段末尾（计数器未被重置回退）</li>
+ *     <li>游标采用预写方式：先持久化游标上界再发出其下的ID，恢复时从上界继续</li>
+ * </ol>
+ *
+ * 号段记录写入后立即调用force；游标每前进一个步幅写一次，只写入映射内存，由后台定时force，
+ * 取号路径不做同步刷盘。进程崩溃时已写入的游标仍在页缓存中，可完整恢复；操作系统崩溃时
+ * 可能丢失最近一个刷盘周期内的游标推进，因此对操作系统崩溃的保护以刷盘周期为界。
+ * 同一号段中旧于最近一次申请的号段不记录，重启时直接丢弃。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class SegmentJournal implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(SegmentJournal.class);
+
+  private static final long MAGIC = 0x52474944_4A524E4CL; // RGIDJRNL
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 256;
+
+  private static final int HEADER_TEXT_SIZE = 96;
+
+  private static final int SLOT_SIZE = 128;
+
+  private static final int MAX_NAME_SIZE = 64;
+
+  // slot 内偏移
+  private static final int NAME_LEN = 0;
+  private static final int NAME = 8;
+  private static final int START = 72;
+  private static final int STEP = 80;
+  private static final int COUNT = 88;
+  private static final int LEASED_AT = 96;
+  private static final int CHECKSUM = 104;
+  private static final int MARK = 112;
+
+  /**
+   * 默认槽位数量
+   */
+  public static final int DEFAULT_SLOTS = 1024;
+
+  /**
+   * 默认租期（毫秒），超过租期的号段不再恢复
+   */
+  public static final long DEFAULT_LEASE_MS = TimeUnit.MINUTES.toMillis(10);
+
+  /**
+   * 游标后台刷盘周期（毫秒）
+   */
+  public static final long FLUSH_INTERVAL_MS = 200;
+
+  private static ScheduledExecutorService journalFlusher = ExecutorUtil
+      .createScheduledThreadPool("journal_flusher", 1);
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final FileLock fileLock;
+
+  private final MappedByteBuffer buffer;
+
+  private final int slotCount;
+
+  private final long leaseMs;
+
+  /**
+   * 写日志锁（游标检查点之外的所有写操作）
+   */
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private final Map<String, Slot> slots = new HashMap<String, Slot>();
+
+  private final boolean[] used;
+
+  /**
+   * 是否有尚未刷盘的游标
+   */
+  private volatile boolean dirty;
+
+  private final ScheduledFuture<?> flushTask;
+
+  /**
+   * 打开（或创建）号段日志
+   *
+   * @param file 日志文件
+   * @param namespace zk命名空间
+   * @param sysId 进程标识
+   * @throws GidException 文件已被其他进程持有或文件操作异常
+   */
+  public static SegmentJournal open(File file, String namespace, String sysId)
+      throws GidException {
+    return new SegmentJournal(file, namespace, sysId, DEFAULT_SLOTS, DEFAULT_LEASE_MS);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param file 日志文件
+   * @param namespace zk命名空间
+   * @param sysId 进程标识
+   * @param slotCount 槽位数量（可记录的序列数量）
+   * @param leaseMs 租期（毫秒）
+   * @throws GidException 文件已被其他进程持有或文件操作异常
+   */
+  public SegmentJournal(File file, String namespace, String sysId, int slotCount, long leaseMs)
+      throws GidException {
+    this.file = file;
+    this.slotCount = slotCount;
+    this.leaseMs = leaseMs;
+    this.used = new boolean[slotCount];
+
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (null != dir && !dir.exists() && !dir.mkdirs()) {
+      throw new GidException("Can not create journal directory " + dir);
+    }
+
+    try {
+      this.raf = new RandomAccessFile(file, "rw");
+      FileChannel channel = raf.getChannel();
+      FileLock lock;
+      try {
+        lock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        lock = null;
+      }
+      this.fileLock = lock;
+      if (null == this.fileLock) {
+        raf.close();
+        throw new GidException("Journal " + file + " is held by another process");
+      }
+      long size = HEADER_SIZE + (long) SLOT_SIZE * slotCount;
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      throw new GidException("Open journal " + file + " failure", e);
+    }
+
+    String owner = String.valueOf(namespace) + "/" + String.valueOf(sysId);
+    if (!readHeader(owner)) {
+      log.info("Journal {} is empty or belongs to another owner, reset it", file);
+      writeHeader(owner);
+    } else {
+      scanSlots();
+    }
+
+    this.flushTask = journalFlusher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 将尚未刷盘的游标写回磁盘
+   */
+  private void flush() {
+    if (dirty) {
+      dirty = false;
+      buffer.force();
+    }
+  }
+
+  /**
+   * 认领序列的日志槽位，供新创建的序列实例使用。
+   *
+   * 槽位已被本进程中仍在运行的实例认领时（如按新定义替换序列），记录转交给新实例并被清除：
+   * 旧实例缓冲区中的ID可能仍在发出，不能被新实例恢复。此后旧实例的槽位不再写入，
+   * 除非调用{@link Slot#reclaim()}取回。首次认领（如重启后）保留记录以便恢复。
+   *
+   * @param name 序列名称
+   * @return 日志槽位，名称过长或槽位已满时返回null
+   */
+  public Slot claim(String name) {
+    writeLock.lock();
+    try {
+      Slot slot = slot(name);
+      if (null == slot || !slot.claimed) {
+        if (null != slot) {
+          slot.claimed = true;
+        }
+        return slot;
+      }
+      Slot successor = new Slot(slot.index, name);
+      successor.claimed = true;
+      slot.segment = null;
+      slots.put(name, successor);
+      successor.erase();
+      log.info("Journal slot of <{}> is handed over to a new instance", name);
+      return successor;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * 获取序列的日志槽位
+   *
+   * @param name 序列名称
+   * @return 日志槽位，名称过长或槽位已满时返回null
+   */
+  public Slot slot(String name) {
+    writeLock.lock();
+    try {
+      Slot slot = slots.get(name);
+      if (null != slot) {
+        return slot;
+      }
+      byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+      if (nameBytes.length > MAX_NAME_SIZE) {
+        log.warn("Sequence name <{}> is too long for journal", name);
+        return null;
+      }
+      for (int i = 0; i < slotCount; i++) {
+        if (!used[i]) {
+          used[i] = true;
+          slot = new Slot(i, name);
+          int base = slot.base;
+          buffer.putLong(base + CHECKSUM, 0L);
+          buffer.putInt(base + NAME_LEN, nameBytes.length);
+          for (int j = 0; j < nameBytes.length; j++) {
+            buffer.put(base + NAME + j, nameBytes[j]);
+          }
+          slots.put(name, slot);
+          return slot;
+        }
+      }
+      log.warn("Journal {} is full, sequence <{}> will not be journaled", file, name);
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    flushTask.cancel(false);
+    try {
+      buffer.force();
+      fileLock.release();
+      raf.close();
+    } catch (IOException e) {
+      log.warn("Close journal {} failure", file, e);
+    }
+  }
+
+  private boolean readHeader(String owner) {
+    if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION
+        || buffer.getInt(12) != slotCount) {
+      return false;
+    }
+    byte[] ownerBytes = owner.getBytes(Charsets.UTF_8);
+    int len = buffer.getInt(16);
+    if (len != ownerBytes.length) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (buffer.get(20 + i) != ownerBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeHeader(String owner) {
+    byte[] ownerBytes = owner.getBytes(Charsets.UTF_8);
+    int len = Math.min(ownerBytes.length, HEADER_TEXT_SIZE);
+    for (int i = 0; i < HEADER_SIZE + SLOT_SIZE * slotCount; i += 8) {
+      buffer.putLong(i, 0L);
+    }
+    buffer.putInt(8, VERSION);
+    buffer.putInt(12, slotCount);
+    buffer.putInt(16, len);
+    for (int i = 0; i < len; i++) {
+      buffer.put(20 + i, ownerBytes[i]);
+    }
+    // 最后写入魔数，头部写一半时崩溃会被视为空文件
+    buffer.putLong(0, MAGIC);
+    buffer.force();
+  }
+
+  private void scanSlots() {
+    for (int i = 0; i < slotCount; i++) {
+      int base = HEADER_SIZE + i * SLOT_SIZE;
+      int len = buffer.getInt(base + NAME_LEN);
+      if (len <= 0 || len > MAX_NAME_SIZE) {
+        continue;
+      }
+      byte[] nameBytes = new byte[len];
+      for (int j = 0; j < len; j++) {
+        nameBytes[j] = buffer.get(base + NAME + j);
+      }
+      String name = new String(nameBytes, Charsets.UTF_8);
+      if (!slots.containsKey(name)) {
+        used[i] = true;
+        slots.put(name, new Slot(i, name));
+      }
+    }
+  }
+
+  /**
+   * 单个序列的日志槽位
+   */
+  public class Slot {
+
+    private final int index;
+
+    private final int base;
+
+    private final String name;
+
+    private final byte[] nameBytes;
+
+    /**
+     * 当前记录的号段，null表示没有可跟踪的号段
+     */
+    private volatile Segment segment;
+
+    /**
+     * 已持久化的游标上界：序号小于该值的ID可能已经发出
+     */
+    private volatile long mark;
+
+    /**
+     * 游标检查点步幅
+     */
+    private volatile long stride;
+
+    /**
+     * 是否已被序列实例认领（受writeLock保护）
+     */
+    private boolean claimed;
+
+    Slot(int index, String name) {
+      this.index = index;
+      this.base = HEADER_SIZE + index * SLOT_SIZE;
+      this.name = name;
+      this.nameBytes = name.getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * 读取上次运行记录的号段中尚未发出的部分
+     *
+     * @return 尚未发出的号段 {起始ID, 步长, 数量, 申请时间}，无有效记录时返回null
+     */
+    public long[] recover() {
+      writeLock.lock();
+      try {
+        if (!isCurrent()) {
+          return null;
+        }
+        long start = buffer.getLong(base + START);
+        long step = buffer.getLong(base + STEP);
+        long count = buffer.getLong(base + COUNT);
+        long leasedAt = buffer.getLong(base + LEASED_AT);
+        long checksum = buffer.getLong(base + CHECKSUM);
+        long mark = buffer.getLong(base + MARK);
+
+        if (checksum == 0 || checksum != checksum(start, step, count, leasedAt)) {
+          return null;
+        }
+        if (System.currentTimeMillis() - leasedAt > leaseMs) {
+          log.info("Journaled segment of <{}> is expired", name);
+          return null;
+        }
+        if (mark < 0 || mark >= count) {
+          return null;
+        }
+        return new long[]{start + mark * step, step, count - mark, leasedAt};
+      } finally {
+        writeLock.unlock();
+      }
+    }
+
+    /**
+     * 记录新申请到的号段（在号段中的ID发出之前调用）
+     *
+     * @param start 起始ID
+     * @param step 步长
+     * @param count 数量
+     */
+    public void record(long start, long step, long count) {
+      record(start, step, count, System.currentTimeMillis());
+    }
+
+    /**
+     * 重新记录从日志恢复的号段，保留原申请时间，租期不因重启而延长
+     *
+     * @param start 起始ID
+     * @param step 步长
+     * @param count 数量
+     * @param leasedAt 原申请时间
+     */
+    public void resume(long start, long step, long count, long leasedAt) {
+      record(start, step, count, leasedAt);
+    }
+
+    private void record(long start, long step, long count, long leasedAt) {
+      writeLock.lock();
+      try {
+        if (!isCurrent()) {
+          return;
+        }
+        this.stride = Math.max(count / 4, 1);
+        // 先使记录失效，避免写一半时崩溃留下不一致的记录
+        buffer.putLong(base + CHECKSUM, 0L);
+        buffer.putLong(base + START, start);
+        buffer.putLong(base + STEP, step);
+        buffer.putLong(base + COUNT, count);
+        buffer.putLong(base + LEASED_AT, leasedAt);
+        buffer.putLong(base + MARK, 0L);
+        buffer.putLong(base + CHECKSUM, checksum(start, step, count, leasedAt));
+        buffer.force();
+        this.mark = 0;
+        this.segment = new Segment(start, step, count);
+      } finally {
+        writeLock.unlock();
+      }
+    }
+
+    /**
+     * 发出ID前调用：ID属于当前记录的号段且越过已持久化的游标上界时，先推进上界
+     *
+     * @param id 即将发出的ID
+     */
+    public void handOut(long id) {
+      Segment current = this.segment;
+      if (null == current) {
+        return;
+      }
+      long index = current.indexOf(id);
+      if (index < this.mark) {
+        return;
+      }
+      writeLock.lock();
+      try {
+        if (current != this.segment || index < this.mark || !isCurrent()) {
+          return;
+        }
+        long newMark = Math.min(index + stride, current.count);
+        buffer.putLong(base + MARK, newMark);
+        this.mark = newMark;
+        dirty = true;
+      } finally {
+        writeLock.unlock();
+      }
+    }
+
+    /**
+     * 清除记录（序列重置、关闭时调用），槽位已转交给其他实例时不做任何事
+     */
+    public void clear() {
+      writeLock.lock();
+      try {
+        if (isCurrent()) {
+          erase();
+        }
+      } finally {
+        writeLock.unlock();
+      }
+    }
+
+    /**
+     * 从接替的实例取回槽位（如替换序列时新实例创建失败），槽位未转交时不做任何事。
+     * 取回时记录被清除：其中的号段属于接替的实例，本实例当前号段中的ID不再记录，下次申请号段时恢复记录
+     */
+    public void reclaim() {
+      writeLock.lock();
+      try {
+        Slot successor = slots.get(name);
+        if (successor == this) {
+          return;
+        }
+        if (null != successor) {
+          successor.segment = null;
+        }
+        slots.put(name, this);
+        this.claimed = true;
+        erase();
+      } finally {
+        writeLock.unlock();
+      }
+    }
+
+    /**
+     * 是否为序列当前使用的槽位（调用方须持有writeLock）
+     */
+    private boolean isCurrent() {
+      return slots.get(name) == this;
+    }
+
+    /**
+     * 清除记录（调用方须持有writeLock）
+     */
+    private void erase() {
+      buffer.putLong(base + CHECKSUM, 0L);
+      buffer.force();
+      this.segment = null;
+      this.mark = 0;
+    }
+
+    private long checksum(long start, long step, long count, long leasedAt) {
+      CRC32 crc = new CRC32();
+      crc.update(nameBytes);
+      byte[] bytes = new byte[32];
+      ByteBuffer.wrap(bytes).putLong(start).putLong(step).putLong(count)
+          .putLong(leasedAt);
+      crc.update(bytes);
+      // 0 保留为“无记录”
+      return crc.getValue() + 1;
+    }
+
+    @Override
+    public String toString() {
+      return "journal slot[" + name + ",mark=" + mark + "]";
+    }
+  }
+
+  /**
+   * 日志中跟踪的号段
+   */
+  private static class Segment {
+
+    final long start;
+    final long step;
+    final long count;
+
+    Segment(long start, long step, long count) {
+      this.start = start;
+      this.step = step;
+      this.count = count;
+    }
+
+    /**
+     * ID在号段中的序号，不属于号段时返回-1
+     */
+    long indexOf(long id) {
+      long offset = id - start;
+      if (offset % step != 0) {
+        return -1;
+      }
+      long index = offset / step;
+      return index >= 0 && index < count ? index : -1;
+    }
+  }
+}
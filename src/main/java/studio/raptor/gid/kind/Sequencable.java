@@ -26,11 +26,11 @@ import studio.raptor.gid.common.GidException;
  *
  * @author bruce shi
  */
-public interface Sequencable {
+public interface Sequencable extends LongSequence {
 
 
   /**
-   * 生产下一个序列值
+   * 生产下一个序列值（热点路径建议使用{@link #nextLong()}）
    *
    * @return
    * @throws Exception
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+
+/**
+ * <pre>
+ * 共享号段环。
+ *
+ * 同一主机上的多个进程通过内存映射文件共享号段：一个进程（发布者）申请号段并写入环中，
+ * 所有进程（包括发布者自身）在映射区域上以CAS直接领取ID，不加锁、不经过zookeeper。
+ *
+ * 文件布局（long均为本机字节序，只通过原子操作访问）：
+ *   | magic:long | version:int | capacity:int | ... | head:long（下一个待领取的号段序号）|
+ *   | tail:long（下一个待发布的号段序号）| 号段[capacity] |
+ * 号段：| state:long（高32位为号段序号，低32位为已领取数量）| start:long | step:long | count:long |
+ *
+ * 领取时对state做CAS，号段序号保证槽位被复用后旧的领取者CAS失败（避免ABA）；
+ * 发布者先将state置为新序号的“写入中”状态，再写号段内容，最后发布state，领取者不会读到写了一半的号段。
+ * head、tail及各号段分别位于不同的缓存行，避免伪共享。
+ *
+ * 发布者通过文件锁选举，同一时刻只有一个；发布者进程退出后文件锁自动释放，其他进程可接替。
+ * 已领取但未发出的ID在进程退出时丢失，只造成号段空洞。
+ * 映射内存的原子访问见{@link MappedMemory}。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class SharedSegmentRing implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(SharedSegmentRing.class);
+
+  private static final long MAGIC = 0x52474944_52494E47L; // RGIDRING
+
+  private static final int VERSION = 1;
+
+  private static final int CACHE_LINE = 64;
+
+  private static final int HEAD = CACHE_LINE;
+
+  private static final int TAIL = 2 * CACHE_LINE;
+
+  private static final int SEGMENTS = 3 * CACHE_LINE;
+
+  // 号段内偏移
+  private static final int STATE = 0;
+  private static final int START = 8;
+  private static final int STEP = 16;
+  private static final int COUNT = 24;
+
+  /**
+   * 写入中的号段的已领取数量，领取者视为已领完
+   */
+  private static final long WRITING = 0xffffffffL;
+
+  /**
+   * 单个号段的最大ID数量
+   */
+  public static final int MAX_SEGMENT = Integer.MAX_VALUE;
+
+  /**
+   * 初始化锁与发布者锁在文件中的位置（超出映射区域，只作为锁标识）
+   */
+  private static final long INIT_LOCK_POSITION = Long.MAX_VALUE - 2;
+
+  private static final long PUBLISHER_LOCK_POSITION = Long.MAX_VALUE - 1;
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final MappedByteBuffer buffer;
+
+  private final long address;
+
+  private final int capacity;
+
+  private FileLock publisherLock;
+
+  /**
+   * 打开（或创建）共享号段环
+   *
+   * @param file 映射文件，同一序列的所有进程使用同一文件
+   * @param capacity 号段数量，文件已存在时必须一致
+   * @throws GidException 文件操作异常或容量不一致
+   */
+  public SharedSegmentRing(File file, int capacity) throws GidException {
+    if (capacity <= 0) {
+      throw new GidException("Capacity must be greater than 0,cur val:" + capacity);
+    }
+    this.file = file;
+    this.capacity = capacity;
+
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (null != dir && !dir.exists() && !dir.mkdirs()) {
+      throw new GidException("Can not create ring directory " + dir);
+    }
+
+    try {
+      this.raf = new RandomAccessFile(file, "rw");
+      long size = SEGMENTS + (long) CACHE_LINE * capacity;
+      this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      this.address = MappedMemory.address(buffer);
+      initialize();
+    } catch (IOException e) {
+      throw new GidException("Open ring " + file + " failure", e);
+    }
+
+    int actual = buffer.getInt(12);
+    if (actual != capacity) {
+      close();
+      throw new GidException(
+          "Ring " + file + " capacity is " + actual + ",not match " + capacity);
+    }
+  }
+
+  /**
+   * 文件为空时写入文件头（本进程内串行，进程间通过文件锁互斥）
+   */
+  private void initialize() throws IOException {
+    synchronized (SharedSegmentRing.class) {
+      FileLock lock = raf.getChannel().lock(INIT_LOCK_POSITION, 1, false);
+      try {
+        if (MappedMemory.getLongVolatile(address) == MAGIC) {
+          return;
+        }
+        for (int i = 8; i < buffer.capacity(); i += 8) {
+          MappedMemory.putLong(address + i, 0L);
+        }
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, capacity);
+        MappedMemory.putLongVolatile(address, MAGIC);
+        log.info("Initialize shared segment ring {} with capacity {}", file, capacity);
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * 尝试成为发布者
+   *
+   * @return 是否是发布者（已经是发布者时返回true）
+   */
+  public synchronized boolean tryPublish() {
+    if (null != publisherLock && publisherLock.isValid()) {
+      return true;
+    }
+    try {
+      publisherLock = raf.getChannel().tryLock(PUBLISHER_LOCK_POSITION, 1, false);
+    } catch (OverlappingFileLockException e) {
+      // 本进程内的其他实例已是发布者
+      publisherLock = null;
+    } catch (IOException e) {
+      log.warn("Try publisher lock of ring {} failure", file, e);
+      publisherLock = null;
+    }
+    return null != publisherLock;
+  }
+
+  /**
+   * 是否有空闲槽位可发布号段
+   */
+  public boolean hasVacancy() {
+    return tail() - head() < capacity;
+  }
+
+  /**
+   * 发布号段（只能由发布者调用）
+   *
+   * @param start 起始ID
+   * @param step 步长
+   * @param count 数量
+   * @return 是否已发布，环已满时返回false
+   */
+  public boolean publish(long start, long step, int count) {
+    if (null == publisherLock) {
+      throw new IllegalStateException("Not the publisher of ring " + file);
+    }
+    long tail = tail();
+    if (tail - head() >= capacity) {
+      return false;
+    }
+    long segment = segment(tail);
+    long seq = tail & 0xffffffffL;
+    // 先置为写入中，旧号段的领取者CAS失败，新号段的领取者不会读到写了一半的内容
+    MappedMemory.putLongVolatile(segment + STATE, seq << 32 | WRITING);
+    MappedMemory.putLong(segment + START, start);
+    MappedMemory.putLong(segment + STEP, step);
+    MappedMemory.putLong(segment + COUNT, count);
+    MappedMemory.putLongVolatile(segment + STATE, seq << 32);
+    MappedMemory.putLongVolatile(address + TAIL, tail + 1);
+    return true;
+  }
+
+  /**
+   * 领取ID，可能少于期望数量
+   *
+   * @param dst 目标数组
+   * @param off 起始下标
+   * @param len 期望数量
+   * @return 实际领取的数量，环中没有可领取的ID时返回0
+   */
+  public int claim(long[] dst, int off, int len) {
+    while (true) {
+      long head = head();
+      if (head >= tail()) {
+        return 0;
+      }
+      long segment = segment(head);
+      long state = MappedMemory.getLongVolatile(segment + STATE);
+      long claimed = state & 0xffffffffL;
+      if ((state >>> 32) != (head & 0xffffffffL) || claimed == WRITING) {
+        // head已过时，重新读取
+        continue;
+      }
+      long start = MappedMemory.getLong(segment + START);
+      long step = MappedMemory.getLong(segment + STEP);
+      long count = MappedMemory.getLong(segment + COUNT);
+      if (claimed >= count) {
+        // 号段已领完，推进head（失败说明其他领取者已推进）
+        MappedMemory.compareAndSwapLong(address + HEAD, head, head + 1);
+        continue;
+      }
+      int take = (int) Math.min(len, count - claimed);
+      if (MappedMemory.compareAndSwapLong(segment + STATE, state, state + take)) {
+        long id = start + claimed * step;
+        for (int i = 0; i < take; i++) {
+          dst[off + i] = id;
+          id += step;
+        }
+        return take;
+      }
+    }
+  }
+
+  /**
+   * 环中可领取的ID数量（近似值）
+   */
+  public long available() {
+    long total = 0;
+    long tail = tail();
+    for (long seq = head(); seq < tail; seq++) {
+      long segment = segment(seq);
+      long state = MappedMemory.getLongVolatile(segment + STATE);
+      long claimed = state & 0xffffffffL;
+      if ((state >>> 32) != (seq & 0xffffffffL) || claimed == WRITING) {
+        continue;
+      }
+      total += Math.max(MappedMemory.getLong(segment + COUNT) - claimed, 0);
+    }
+    return total;
+  }
+
+  /**
+   * 释放发布者身份并关闭文件。
+   *
+   * Java 7没有解除映射的公开API，映射区域在buffer被垃圾回收时才解除；关闭后不能再访问本实例，
+   * 否则仍会读写已关闭文件的映射区域。
+   */
+  @Override
+  public synchronized void close() {
+    try {
+      if (null != publisherLock && publisherLock.isValid()) {
+        publisherLock.release();
+      }
+      raf.close();
+    } catch (IOException e) {
+      log.warn("Close ring {} failure", file, e);
+    }
+  }
+
+  private long head() {
+    return MappedMemory.getLongVolatile(address + HEAD);
+  }
+
+  private long tail() {
+    return MappedMemory.getLongVolatile(address + TAIL);
+  }
+
+  private long segment(long seq) {
+    return address + SEGMENTS + (seq % capacity) * CACHE_LINE;
+  }
+
+  @Override
+  public String toString() {
+    return "ring[" + file + "," + capacity + "]";
+  }
+}
@@ -20,13 +20,20 @@ package studio.raptor.gid.kind;
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.curator.framework.CuratorFramework;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import studio.raptor.gid.async.AsyncIds;
+import studio.raptor.gid.async.AsyncSequence;
+import studio.raptor.gid.async.IdPublisher;
+import studio.raptor.gid.async.SequencePublisher;
 import studio.raptor.gid.common.CuratorUtil;
 import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
 import studio.raptor.gid.common.ThreadSafe;
 import studio.raptor.gid.common.VMHelper;
 import studio.raptor.gid.def.SequenceDef;
@@ -67,7 +74,7 @@ import studio.raptor.gid.def.SnowflakeDef;
  * @since 0.1
  */
 @ThreadSafe
-public class Snowflake extends ZookeeperSequence {
+public class Snowflake extends ZookeeperSequence implements AsyncSequence {
 
   public static final Logger log = LoggerFactory.getLogger(Snowflake.class);
 
@@ -118,6 +125,11 @@ public class Snowflake extends ZookeeperSequence {
 
   volatile long sequence = 0L;
 
+  /**
+   * 生产序列值的锁，不使用synchronized以免在虚拟线程中钉住载体线程
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
 
   /**
    * 构造函数
@@ -168,27 +180,78 @@ public class Snowflake extends ZookeeperSequence {
 
   @Override
   public long nextId() throws GidException {
-    return nextId0();
+    long id = nextId0();
+    if (id < 0) {
+      throw new GidException("Clock moved backwards.  Refusing to generate id for "
+          + (this.lastTimestamp - this.timestamp()) + " milliseconds");
+    }
+    return id;
   }
 
-  synchronized long nextId0() throws GidException {
-    long now = this.timestamp();
-
-    // 系统时钟不可用
-    if (now < this.lastTimestamp) {
-      throw new GidException("Clock moved backwards.  Refusing to generate id for "
-          + (this.lastTimestamp - now) + " milliseconds");
+  @Override
+  public long nextLong() {
+    long id = nextId0();
+    if (id < 0) {
+      throw IdUnavailableException.CLOCK_MOVED_BACKWARDS;
     }
-    // 同一时刻
-    if (this.lastTimestamp == now) {
-      //序列值超出最大值，阻塞到下一个时刻
-      now = produceSequence(now);
-    } else {
-      this.sequence = 0L;
+    return id;
+  }
+
+  @Override
+  public void nextIds(long[] dst, int off, int len) {
+    // 整批只获取一次锁
+    lock.lock();
+    try {
+      for (int i = off, end = off + len; i < end; i++) {
+        long id = nextId0();
+        if (id < 0) {
+          throw IdUnavailableException.CLOCK_MOVED_BACKWARDS;
+        }
+        dst[i] = id;
+      }
+    } finally {
+      lock.unlock();
     }
+  }
+
+  @Override
+  public ListenableFuture<Long> nextIdAsync() {
+    // 本地计算，不会阻塞
+    return AsyncIds.immediate(this);
+  }
+
+  @Override
+  public IdPublisher ids() {
+    return new SequencePublisher(this);
+  }
+
+  /**
+   * 生产序列值
+   *
+   * @return 序列值，时钟回拨时返回-1
+   */
+  long nextId0() {
+    lock.lock();
+    try {
+      long now = this.timestamp();
 
-    this.lastTimestamp = now;
-    return assembleId(now);
+      // 系统时钟不可用
+      if (now < this.lastTimestamp) {
+        return -1;
+      }
+      // 同一时刻
+      if (this.lastTimestamp == now) {
+        //序列值超出最大值，阻塞到下一个时刻
+        now = produceSequence(now);
+      } else {
+        this.sequence = 0L;
+      }
+
+      this.lastTimestamp = now;
+      return assembleId(now);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
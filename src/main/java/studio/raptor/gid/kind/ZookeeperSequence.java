@@ -1,6 +1,5 @@
 package studio.raptor.gid.kind;
 
-import java.util.concurrent.TimeUnit;
 import org.apache.curator.framework.CuratorFramework;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,12 +41,28 @@ public abstract class ZookeeperSequence implements Sequencable {
 
 
   public ZookeeperSequence(CuratorFramework zkClient) throws GidException {
+    this(zkClient, true);
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param zkClient zk客户端，不等待连接时可为null
+   * @param awaitConnected 是否等待连接（号段不由zookeeper分配的子类由计数器后端自行检查连接）
+   */
+  protected ZookeeperSequence(CuratorFramework zkClient, boolean awaitConnected)
+      throws GidException {
 
     this.zkClient = zkClient;
+    if (!awaitConnected) {
+      this.isConnected = null != zkClient && zkClient.getZookeeperClient().isConnected();
+      return;
+    }
 
     try {
-      this.isConnected = this.zkClient
-          .blockUntilConnected(CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      // 同一客户端只等待一次连接，避免zk不可用时每个序列各等待一个超时周期
+      this.isConnected = CuratorUtil
+          .awaitConnected(this.zkClient, CuratorUtil.DEFAULT_CONNECTION_TIMEOUT_MS);
       log.info("Connected to remote zookeeper {} {}", this.zkClient.getZookeeperClient().getCurrentConnectionString(), this.isConnected);
     } catch (InterruptedException e) {
       e.printStackTrace();
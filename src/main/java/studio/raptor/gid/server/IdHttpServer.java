@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.kind.Sequencable;
+
+/**
+ * <pre>
+ * 序列服务HTTP接口。
+ *
+ * 供只能发起HTTP调用的工具和无服务器任务批量取号，基于JDK内置的HTTP服务，支持keep-alive：
+ *
+ *   GET /ids/{name}?count=N[&format=text|binary]
+ *
+ * text（默认）：每行一个十进制序列值，Content-Type为text/plain；
+ * binary：大端字节序的long数组，Content-Type为application/octet-stream，也可通过Accept头指定。
+ *
+ * 响应使用分块传输编码，按块取号并写出，大批量取号不会在内存中缓存全部序列值。
+ * 第一块取号失败时返回503；之后失败时中断连接，客户端会收到不完整的分块响应。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class IdHttpServer implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(IdHttpServer.class);
+
+  /**
+   * 处理请求的线程池（所有HTTP服务共享）
+   */
+  private static ExecutorService workers = ExecutorUtil
+      .createCachedThreadPool("id_http_worker", 0, 64);
+
+  /**
+   * 请求路径前缀
+   */
+  public static final String CONTEXT = "/ids/";
+
+  /**
+   * 单次请求的最大取号数量
+   */
+  public static final int MAX_COUNT = 10000000;
+
+  public static final String TEXT = "text/plain; charset=utf-8";
+
+  public static final String BINARY = "application/octet-stream";
+
+  /**
+   * 每块取号数量
+   */
+  private static final int CHUNK = 1024;
+
+  private final Sequencer sequencer;
+
+  private final InetSocketAddress address;
+
+  private HttpServer server;
+
+  /**
+   * 构造函数
+   *
+   * @param sequencer 已启动的序列发生器
+   * @param address 监听地址
+   */
+  public IdHttpServer(Sequencer sequencer, InetSocketAddress address) {
+    this.sequencer = Preconditions.checkNotNull(sequencer, "Sequencer can not be null");
+    this.address = address;
+  }
+
+  /**
+   * 启动服务
+   *
+   * @throws IOException 端口绑定失败等
+   */
+  public void start() throws IOException {
+    Preconditions.checkState(null == server, "Id http server is already started");
+    server = HttpServer.create(address, 0);
+    server.createContext(CONTEXT, new IdsHandler());
+    server.setExecutor(workers);
+    server.start();
+    log.info("Id http server is listening on {}", server.getAddress());
+  }
+
+  /**
+   * 获取实际监听的端口
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * 关闭服务，最多等待1秒让进行中的请求完成
+   */
+  @Override
+  public void close() {
+    if (null != server) {
+      server.stop(1);
+      server = null;
+      log.info("Id http server on {} is closed", address);
+    }
+  }
+
+  /**
+   * 批量取号请求处理
+   */
+  private class IdsHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      // 取号中途失败时异常直接抛出，由HTTP服务断开连接，而不是正常结束分块响应
+      respond(exchange);
+      exchange.close();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+      drain(exchange.getRequestBody());
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        error(exchange, 405, "Only GET is supported");
+        return;
+      }
+      String name = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+      Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+
+      int count;
+      try {
+        count = params.containsKey("count") ? Integer.parseInt(params.get("count")) : 1;
+      } catch (NumberFormatException e) {
+        error(exchange, 400, "Illegal count " + params.get("count"));
+        return;
+      }
+      if (count <= 0 || count > MAX_COUNT) {
+        error(exchange, 400, "Count must be in [1," + MAX_COUNT + "],cur val:" + count);
+        return;
+      }
+
+      Sequencable sequence;
+      try {
+        sequence = sequencer.get(name);
+      } catch (GidException | RuntimeException e) {
+        error(exchange, 404, "Sequence " + name + " not found");
+        return;
+      }
+
+      write(exchange, sequence, count, isBinary(exchange, params));
+    }
+
+    /**
+     * 分块取号并写出
+     */
+    private void write(HttpExchange exchange, Sequencable sequence, int count, boolean binary)
+        throws IOException {
+      long[] ids = new long[Math.min(count, CHUNK)];
+      int n = ids.length;
+      try {
+        sequence.nextIds(ids, 0, n);
+      } catch (RuntimeException e) {
+        error(exchange, 503, e.getMessage());
+        return;
+      }
+
+      exchange.getResponseHeaders().set("Content-Type", binary ? BINARY : TEXT);
+      exchange.getResponseHeaders().set("X-Id-Count", String.valueOf(count));
+      exchange.sendResponseHeaders(200, 0);
+      OutputStream out = exchange.getResponseBody();
+      ByteBuffer chunk = binary ? ByteBuffer.allocate(8 * ids.length) : null;
+      StringBuilder text = binary ? null : new StringBuilder(20 * ids.length);
+      int written = 0;
+      while (true) {
+        if (binary) {
+          chunk.clear();
+          chunk.asLongBuffer().put(ids, 0, n);
+          out.write(chunk.array(), 0, 8 * n);
+        } else {
+          text.setLength(0);
+          for (int i = 0; i < n; i++) {
+            text.append(ids[i]).append('\n');
+          }
+          out.write(text.toString().getBytes(Charsets.US_ASCII));
+        }
+        written += n;
+        if (written == count) {
+          break;
+        }
+        n = Math.min(count - written, ids.length);
+        try {
+          sequence.nextIds(ids, 0, n);
+        } catch (RuntimeException e) {
+          // 响应头已发出，只能中断连接
+          log.warn("Sequence {} failed after {} ids were written : {}", sequence, written,
+              e.getMessage());
+          throw new IOException("Sequence is unavailable", e);
+        }
+      }
+      out.close();
+    }
+
+    private boolean isBinary(HttpExchange exchange, Map<String, String> params) {
+      String format = params.get("format");
+      if (null != format) {
+        return "binary".equals(format);
+      }
+      String accept = exchange.getRequestHeaders().getFirst("Accept");
+      return null != accept && accept.contains(BINARY);
+    }
+
+    private void error(HttpExchange exchange, int status, String message) throws IOException {
+      byte[] body = String.valueOf(message).getBytes(Charsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", TEXT);
+      exchange.sendResponseHeaders(status, body.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+    }
+  }
+
+  /**
+   * 解析查询参数，重复的参数以第一个为准
+   */
+  private static Map<String, String> params(String query) {
+    Map<String, String> params = new HashMap<String, String>();
+    if (null == query) {
+      return params;
+    }
+    for (String pair : Splitter.on('&').omitEmptyStrings().split(query)) {
+      int eq = pair.indexOf('=');
+      String key = eq < 0 ? pair : pair.substring(0, eq);
+      if (!params.containsKey(key)) {
+        params.put(key, eq < 0 ? "" : pair.substring(eq + 1));
+      }
+    }
+    return params;
+  }
+
+  /**
+   * 读完请求体，连接才能复用
+   */
+  private static void drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[256];
+    while (in.read(buffer) >= 0) {
+      // discard
+    }
+  }
+}
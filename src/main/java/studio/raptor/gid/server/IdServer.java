@@ -0,0 +1,580 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.kind.Sequencable;
+
+/**
+ * <pre>
+ * 独立部署的序列服务。
+ *
+ * 托管一个{@link Sequencer}，通过NIO以紧凑的二进制协议（见{@link Protocol}）对外提供取号服务，
+ * 供无法内嵌Sequencer的非JVM服务使用。
+ *
+ * 一个IO线程负责所有连接的读写，取号在工作线程中进行（号段申请可能阻塞）；
+ * 同一连接上的请求串行处理，响应顺序与请求顺序一致。
+ * 工作线程池有界且不在IO线程上执行任务，排队已满时请求以{@link Protocol#STATUS_BUSY}拒绝；
+ * 连接的待发送数据超过高水位时停止读取并暂停处理该连接的请求，发送到低水位以下后恢复。
+ * 批量取号时序列值从线程本地的long数组整批复制到直接内存缓冲区，不为单个序列值创建对象。
+ * 设置{@link SegmentProxy}后同时作为号段代理，向应用节点租出号段。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class IdServer implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(IdServer.class);
+
+  /**
+   * 执行取号的线程池（所有序列服务共享），排队已满时拒绝而不是在IO线程上执行
+   */
+  private static ExecutorService workers = ExecutorUtil
+      .createBoundedThreadPool("id_server_worker", 64, 1024);
+
+  /**
+   * 工作线程本地的取号数组，按需扩容
+   */
+  private static final ThreadLocal<long[]> scratch = new ThreadLocal<long[]>();
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * 待发送数据高水位：超过后停止读取和处理该连接的请求
+   */
+  private static final int OUTPUT_HIGH_WATER = 1024 * 1024;
+
+  /**
+   * 待发送数据低水位：发送到该值以下后恢复读取和处理
+   */
+  private static final int OUTPUT_LOW_WATER = OUTPUT_HIGH_WATER / 4;
+
+  /**
+   * 写缓冲区容量上限：高水位加上一个最大响应
+   */
+  private static final int MAX_WRITE_BUFFER = OUTPUT_HIGH_WATER
+      + Protocol.responseSize(Protocol.MAX_BATCH);
+
+  private final Sequencer sequencer;
+
+  private final InetSocketAddress address;
+
+  private Selector selector;
+
+  private ServerSocketChannel serverChannel;
+
+  private Thread ioThread;
+
+  private volatile boolean running = false;
+
+  /**
+   * 号段代理，为null时不支持租用号段
+   */
+  private volatile SegmentProxy segmentProxy;
+
+  /**
+   * 有待发送响应的连接，由IO线程发送
+   */
+  private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<Connection>();
+
+  /**
+   * 构造函数
+   *
+   * @param sequencer 已启动的序列发生器
+   * @param port 监听端口，0表示随机端口
+   */
+  public IdServer(Sequencer sequencer, int port) {
+    this(sequencer, new InetSocketAddress(port));
+  }
+
+  /**
+   * 构造函数
+   *
+   * @param sequencer 已启动的序列发生器
+   * @param address 监听地址
+   */
+  public IdServer(Sequencer sequencer, InetSocketAddress address) {
+    this.sequencer = Preconditions.checkNotNull(sequencer, "Sequencer can not be null");
+    this.address = address;
+  }
+
+  /**
+   * 启动服务
+   *
+   * @throws IOException 端口绑定失败等
+   */
+  public void start() throws IOException {
+    Preconditions.checkState(!running, "Id server is already started");
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    this.serverChannel.configureBlocking(false);
+    this.serverChannel.socket().setReuseAddress(true);
+    this.serverChannel.socket().bind(address);
+    this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.running = true;
+
+    this.ioThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "id_server_io-" + getPort());
+    this.ioThread.setDaemon(true);
+    this.ioThread.start();
+    log.info("Id server is listening on {}", serverChannel.socket().getLocalSocketAddress());
+  }
+
+  /**
+   * 启用号段代理，支持{@link Protocol#OP_LEASE}
+   *
+   * @param segmentProxy 号段代理
+   */
+  public void setSegmentProxy(SegmentProxy segmentProxy) {
+    this.segmentProxy = segmentProxy;
+  }
+
+  /**
+   * 获取实际监听的端口
+   */
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * 关闭服务及所有连接
+   */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    selector.wakeup();
+    try {
+      ioThread.join(5000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (SelectionKey key : selector.keys()) {
+      closeQuietly(key.channel());
+    }
+    closeQuietly(selector);
+    log.info("Id server on {} is closed", address);
+  }
+
+  private void loop() {
+    while (running) {
+      try {
+        selector.select();
+
+        Connection pending;
+        while (null != (pending = flushQueue.poll())) {
+          pending.flush();
+        }
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          if (key.isReadable()) {
+            connection.read();
+          }
+          if (key.isValid() && key.isWritable()) {
+            connection.flush();
+          }
+        }
+      } catch (Exception e) {
+        if (running) {
+          log.error("Id server io loop failure", e);
+        }
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (null == channel) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+  }
+
+  private static long[] scratch(int count) {
+    long[] ids = scratch.get();
+    if (null == ids || ids.length < count) {
+      ids = new long[Math.max(count, 1024)];
+      scratch.set(ids);
+    }
+    return ids;
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * 请求
+   */
+  private static class Request {
+
+    final byte opcode;
+
+    final int requestId;
+
+    final String name;
+
+    final int count;
+
+    Request(byte opcode, int requestId, String name, int count) {
+      this.opcode = opcode;
+      this.requestId = requestId;
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+  /**
+   * 客户端连接
+   */
+  private class Connection implements Runnable {
+
+    private final SocketChannel channel;
+
+    private SelectionKey key;
+
+    /**
+     * 读缓冲区，只由IO线程访问
+     */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * 写缓冲区（写模式），工作线程写入、IO线程发送，由outLock保护
+     */
+    private ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    private final ReentrantLock outLock = new ReentrantLock();
+
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<Request>();
+
+    /**
+     * 是否已提交到工作线程，保证同一连接的请求串行处理
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private volatile boolean closed = false;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * 读取并解析请求帧（IO线程）
+     */
+    void read() {
+      try {
+        if (channel.read(in) < 0) {
+          close();
+          return;
+        }
+      } catch (IOException e) {
+        close();
+        return;
+      }
+
+      in.flip();
+      while (in.remaining() >= 4) {
+        int length = in.getInt(in.position());
+        if (length < Protocol.REQUEST_OVERHEAD - 4 || length > Protocol.MAX_REQUEST_FRAME) {
+          log.warn("Illegal frame length {} from {}, close connection", length, remote());
+          close();
+          return;
+        }
+        if (in.remaining() < 4 + length) {
+          break;
+        }
+        in.getInt();
+        byte opcode = in.get();
+        int requestId = in.getInt();
+        int nameLength = in.getShort() & 0xffff;
+        if (nameLength != length - (Protocol.REQUEST_OVERHEAD - 4)) {
+          log.warn("Illegal name length {} from {}, close connection", nameLength, remote());
+          close();
+          return;
+        }
+        byte[] name = new byte[nameLength];
+        in.get(name);
+        int count = in.getInt();
+        requests.offer(new Request(opcode, requestId, new String(name, Charsets.UTF_8), count));
+      }
+      in.compact();
+      schedule();
+    }
+
+    private void schedule() {
+      if (!closed && !requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+        try {
+          workers.execute(this);
+        } catch (RejectedExecutionException e) {
+          scheduled.set(false);
+          reject();
+        }
+      }
+    }
+
+    /**
+     * 工作线程池已满，拒绝连接上所有待处理的请求
+     */
+    private void reject() {
+      log.warn("Id server workers are busy, reject requests from {}", remote());
+      Request request;
+      while (null != (request = requests.poll())) {
+        error(request, Protocol.STATUS_BUSY, "Id server is busy");
+      }
+    }
+
+    /**
+     * 待发送数据是否超过高水位
+     */
+    private boolean congested() {
+      outLock.lock();
+      try {
+        return out.position() >= OUTPUT_HIGH_WATER;
+      } finally {
+        outLock.unlock();
+      }
+    }
+
+    /**
+     * 处理请求（工作线程）
+     */
+    @Override
+    public void run() {
+      try {
+        Request request;
+        while (!closed && !congested() && null != (request = requests.poll())) {
+          handle(request);
+        }
+      } finally {
+        scheduled.set(false);
+      }
+      // 释放标记期间可能有新请求到达；拥塞时由IO线程发送到低水位后再调度
+      if (!congested()) {
+        schedule();
+      }
+    }
+
+    private void handle(Request request) {
+      if (request.opcode == Protocol.OP_LEASE) {
+        lease(request);
+        return;
+      }
+      if (request.opcode != Protocol.OP_NEXT_ID && request.opcode != Protocol.OP_NEXT_IDS) {
+        error(request, Protocol.STATUS_BAD_REQUEST, "Unknown opcode " + request.opcode);
+        return;
+      }
+      int count = request.opcode == Protocol.OP_NEXT_ID ? 1 : request.count;
+      if (count <= 0 || count > Protocol.MAX_BATCH) {
+        error(request, Protocol.STATUS_BAD_REQUEST,
+            "Count must be in [1," + Protocol.MAX_BATCH + "],cur val:" + count);
+        return;
+      }
+
+      Sequencable sequence;
+      try {
+        sequence = sequencer.get(request.name);
+      } catch (GidException | RuntimeException e) {
+        error(request, Protocol.STATUS_NOT_FOUND, e.getMessage());
+        return;
+      }
+
+      long[] ids = scratch(count);
+      try {
+        sequence.nextIds(ids, 0, count);
+      } catch (RuntimeException e) {
+        error(request, Protocol.STATUS_UNAVAILABLE, e.getMessage());
+        return;
+      }
+
+      respond(request, ids, count);
+    }
+
+    private void lease(Request request) {
+      SegmentProxy proxy = segmentProxy;
+      if (null == proxy) {
+        error(request, Protocol.STATUS_BAD_REQUEST, "Segment leasing is not enabled");
+        return;
+      }
+      if (!proxy.isServing(request.name)) {
+        try {
+          sequencer.get(request.name);
+        } catch (GidException | RuntimeException e) {
+          error(request, Protocol.STATUS_NOT_FOUND, e.getMessage());
+          return;
+        }
+      }
+      long[] segment;
+      try {
+        segment = proxy.lease(request.name, request.count, String.valueOf(remote()));
+      } catch (GidException | RuntimeException e) {
+        error(request, Protocol.STATUS_UNAVAILABLE, e.getMessage());
+        return;
+      }
+      respond(request, segment, segment.length);
+    }
+
+    private void respond(Request request, long[] ids, int count) {
+      outLock.lock();
+      try {
+        if (!ensureWritable(Protocol.responseSize(count))) {
+          return;
+        }
+        Protocol.writeIds(out, request.requestId, ids, count);
+      } finally {
+        outLock.unlock();
+      }
+      requestFlush();
+    }
+
+    private void error(Request request, byte status, String message) {
+      byte[] bytes = Protocol.message(message);
+      outLock.lock();
+      try {
+        if (!ensureWritable(Protocol.errorSize(bytes))) {
+          return;
+        }
+        Protocol.writeError(out, request.requestId, status, bytes);
+      } finally {
+        outLock.unlock();
+      }
+      requestFlush();
+    }
+
+    /**
+     * 写缓冲区剩余空间不足时扩容（持有outLock），容量不超过{@link #MAX_WRITE_BUFFER}
+     *
+     * @return 是否可以写入，超过上限时关闭连接并返回false
+     */
+    private boolean ensureWritable(int size) {
+      if (out.remaining() >= size) {
+        return true;
+      }
+      // 超过高水位后不再处理请求，正常情况下不会越过上限
+      if (out.position() + size > MAX_WRITE_BUFFER) {
+        log.warn("Output buffer of {} exceeds {} bytes, close connection", remote(),
+            MAX_WRITE_BUFFER);
+        close();
+        return false;
+      }
+      ByteBuffer bigger = ByteBuffer.allocateDirect(
+          Math.min(Math.max(out.capacity() * 2, out.position() + size), MAX_WRITE_BUFFER));
+      out.flip();
+      bigger.put(out);
+      out = bigger;
+      return true;
+    }
+
+    private void requestFlush() {
+      flushQueue.offer(this);
+      selector.wakeup();
+    }
+
+    /**
+     * 发送响应（IO线程），未发送完时关注可写事件；超过高水位时停止读取，
+     * 发送到低水位以下时恢复读取并重新调度暂停的请求
+     */
+    void flush() {
+      if (closed || !key.isValid()) {
+        return;
+      }
+      int pending;
+      outLock.lock();
+      try {
+        out.flip();
+        channel.write(out);
+        out.compact();
+        pending = out.position();
+        int ops = pending > 0 ? SelectionKey.OP_WRITE : 0;
+        if (pending < OUTPUT_HIGH_WATER) {
+          ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+      } catch (IOException e) {
+        close();
+        return;
+      } finally {
+        outLock.unlock();
+      }
+      if (pending <= OUTPUT_LOW_WATER) {
+        schedule();
+      }
+    }
+
+    private Object remote() {
+      return channel.socket().getRemoteSocketAddress();
+    }
+
+    private void close() {
+      closed = true;
+      if (null != key) {
+        key.cancel();
+      }
+      closeQuietly(channel);
+    }
+  }
+}
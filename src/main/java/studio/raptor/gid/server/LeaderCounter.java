@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.HostAndPort;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.apache.curator.framework.recipes.leader.Participant;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.client.IdClient;
+import studio.raptor.gid.client.ProxyCounter;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+
+/**
+ * <pre>
+ * 领导者计数器。
+ *
+ * 同一序列的所有节点通过Curator {@link LeaderLatch}选举一个领导者，只有领导者写zookeeper计数器：
+ * 领导者在本节点的{@link SegmentProxy}中登记该序列，其他节点经由领导者的{@link IdServer}
+ * 租用号段（{@link ProxyCounter}），zookeeper上的乐观锁竞争变为单一写入者。
+ *
+ * 故障切换：领导者会话过期或连接挂起时LeaderLatch立即撤销其身份并从代理中注销序列，其余节点重新选举；
+ * 选举期间或领导者不可达时，节点直接写zookeeper计数器，取号不中断。
+ * 号段始终由zookeeper计数器原子分配，任何切换时序下都不会重复。
+ *
+ * 当前领导者由选举节点的子节点监听维护，取号时只读缓存，不访问zookeeper；
+ * 向领导者租用失败后熔断一段时间（{@link #breaker_open_ms}），期间直接写zookeeper计数器，
+ * 不必每次都等待租用超时；领导者变更时熔断立即解除。
+ * 通常经由{@link LeaderCounterBackend}为backend为leader的序列创建。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class LeaderCounter implements Counter, Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(LeaderCounter.class);
+
+  /**
+   * 选举节点根路径
+   */
+  public static final String LEADER_ROOT_PATH = "/raptor-leaders/";
+
+  /**
+   * 处理领导者身份变更的线程池（所有领导者计数器共享）
+   */
+  private static ExecutorService listenerExecutor = ExecutorUtil
+      .createSingleThreadPool("leader_counter_listener");
+
+  /**
+   * 向领导者租用失败后的熔断时间（毫秒）
+   */
+  private static long breaker_open_ms = 2000;
+
+  private final String name;
+
+  private final long incr;
+
+  private final SegmentProxy proxy;
+
+  /**
+   * 本节点序列服务的地址（host:port），作为选举参与者标识
+   */
+  private final String endpoint;
+
+  /**
+   * zookeeper计数器，领导者及无领导者时使用
+   */
+  private final Counter upstream;
+
+  private final LeaderLatch latch;
+
+  /**
+   * 监听选举节点的子节点，维护当前领导者
+   */
+  private final PathChildrenCache participants;
+
+  /**
+   * 当前连接的领导者地址及客户端（受this锁保护）
+   */
+  private volatile String leaderEndpoint;
+
+  private IdClient leaderClient;
+
+  /**
+   * 当前领导者的计数器，尚无领导者或本节点是领导者时为null
+   */
+  private volatile ProxyCounter leaderCounter;
+
+  /**
+   * 熔断截止时间，此前不向领导者租用
+   */
+  private volatile long breakerOpenUntil = 0;
+
+  /**
+   * 构造函数
+   *
+   * @param zkClient zk客户端
+   * @param name 选举与代理使用的名称（如序列名，分片时含分片路径）
+   * @param incr 序列步长
+   * @param upstream zookeeper计数器，领导者及无领导者时使用，须与序列实际分配号段的计数器相同
+   *     （分片、条带时为对应分片的计数器）
+   * @param proxy 本节点序列服务上的号段代理
+   * @param endpoint 本节点序列服务的地址（host:port）
+   */
+  public LeaderCounter(CuratorFramework zkClient, String name, long incr, Counter upstream,
+      SegmentProxy proxy, String endpoint) {
+    this.name = name;
+    this.incr = incr;
+    this.proxy = Preconditions.checkNotNull(proxy, "Segment proxy can not be null");
+    this.endpoint = endpoint;
+    this.upstream = Preconditions.checkNotNull(upstream, "Upstream counter can not be null");
+    String latchPath = ZKPaths.makePath(LEADER_ROOT_PATH, name);
+    this.latch = new LeaderLatch(zkClient, latchPath, endpoint);
+    this.latch.addListener(new LeaderLatchListener() {
+      @Override
+      public void isLeader() {
+        LeaderCounter.this.proxy.register(LeaderCounter.this.name, LeaderCounter.this.incr,
+            LeaderCounter.this.upstream);
+        log.info("{} becomes leader of sequence {}", LeaderCounter.this.endpoint,
+            LeaderCounter.this.name);
+        refreshLeader();
+      }
+
+      @Override
+      public void notLeader() {
+        LeaderCounter.this.proxy.unregister(LeaderCounter.this.name);
+        log.info("{} is no longer leader of sequence {}", LeaderCounter.this.endpoint,
+            LeaderCounter.this.name);
+        refreshLeader();
+      }
+    }, listenerExecutor);
+    this.participants = new PathChildrenCache(zkClient, latchPath, false);
+    this.participants.getListenable().addListener(new PathChildrenCacheListener() {
+      @Override
+      public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+        refreshLeader();
+      }
+    }, listenerExecutor);
+  }
+
+  /**
+   * 参加选举
+   *
+   * @throws GidException 选举节点创建失败
+   */
+  public void start() throws GidException {
+    try {
+      latch.start();
+      participants.start();
+    } catch (Exception e) {
+      throw new GidException("Start leader latch of " + name + " failure", e);
+    }
+  }
+
+  /**
+   * 本节点缓存的当前领导者地址
+   *
+   * @return 领导者地址，尚无领导者或本节点是领导者时返回null
+   */
+  public String leaderEndpoint() {
+    return leaderEndpoint;
+  }
+
+  /**
+   * 本节点是否是领导者
+   */
+  public boolean isLeader() {
+    return latch.hasLeadership();
+  }
+
+  @Override
+  public boolean initialize(long start) throws GidException {
+    return upstream.initialize(start);
+  }
+
+  @Override
+  public long get() throws GidException {
+    return upstream.get();
+  }
+
+  @Override
+  public long getAndAdd(long delta) throws GidException {
+    long count = delta / incr;
+    if (count <= 0 || count > Integer.MAX_VALUE || count * incr != delta) {
+      return upstream.getAndAdd(delta);
+    }
+    if (latch.hasLeadership()) {
+      try {
+        return proxy.lease(name, (int) count, endpoint)[0];
+      } catch (GidException e) {
+        // 身份刚被撤销
+        log.debug("Lease from local proxy of {} failure : {}", name, e.getMessage());
+        return upstream.getAndAdd(delta);
+      }
+    }
+
+    ProxyCounter leader = this.leaderCounter;
+    if (null != leader && System.currentTimeMillis() >= breakerOpenUntil) {
+      try {
+        return leader.getAndAdd(delta);
+      } catch (GidException e) {
+        // 熔断，避免后续取号每次都等待租用超时
+        breakerOpenUntil = System.currentTimeMillis() + breaker_open_ms;
+        log.warn("Lease segment of {} from {} failure, fall back to zookeeper for {}ms : {}",
+            name, leaderEndpoint, breaker_open_ms, e.getMessage());
+      }
+    }
+    return upstream.getAndAdd(delta);
+  }
+
+  @Override
+  public void forceSet(long value) throws GidException {
+    upstream.forceSet(value);
+  }
+
+  /**
+   * 退出选举，领导者身份转移给其他节点
+   */
+  @Override
+  public synchronized void close() {
+    CloseableUtils.closeQuietly(participants);
+    try {
+      latch.close();
+    } catch (IOException | IllegalStateException e) {
+      log.warn("Close leader latch of {} failure", name, e);
+    }
+    proxy.unregister(name);
+    switchLeader(null);
+  }
+
+  /**
+   * 选举节点变化或本节点身份变化时重新确定领导者，领导者变更时重新连接（在监听线程中执行）
+   */
+  private synchronized void refreshLeader() {
+    if (latch.getState() != LeaderLatch.State.STARTED) {
+      return;
+    }
+    Participant participant;
+    try {
+      participant = latch.getLeader();
+    } catch (Exception e) {
+      log.warn("Get leader of {} failure : {}", name, e.getMessage());
+      switchLeader(null);
+      return;
+    }
+    if (!participant.isLeader() || endpoint.equals(participant.getId())) {
+      switchLeader(null);
+    } else {
+      switchLeader(participant.getId());
+    }
+  }
+
+  /**
+   * 切换到新的领导者
+   *
+   * @param newEndpoint 新领导者地址，为null表示尚无领导者或本节点是领导者
+   */
+  private synchronized void switchLeader(String newEndpoint) {
+    if (null == newEndpoint ? null == leaderEndpoint : newEndpoint.equals(leaderEndpoint)) {
+      return;
+    }
+    leaderCounter = null;
+    if (null != leaderClient) {
+      leaderClient.close();
+      leaderClient = null;
+    }
+    leaderEndpoint = newEndpoint;
+    breakerOpenUntil = 0;
+    if (null != newEndpoint) {
+      HostAndPort address = HostAndPort.fromString(newEndpoint);
+      leaderClient = new IdClient(address.getHost(), address.getPort(), 1);
+      leaderCounter = new ProxyCounter(leaderClient, name, incr);
+      log.info("Leader of sequence {} is {}", name, newEndpoint);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "leader[" + name + "," + endpoint + "]";
+  }
+}
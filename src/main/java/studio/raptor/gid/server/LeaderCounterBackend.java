@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.curator.framework.CuratorFramework;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.AvailabilityAware;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.CounterAvailability;
+import studio.raptor.gid.counter.CounterBackend;
+import studio.raptor.gid.counter.CounterBackends;
+import studio.raptor.gid.counter.CounterContext;
+import studio.raptor.gid.counter.RefillBatcher;
+import studio.raptor.gid.counter.ZookeeperCounterBackend;
+import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+
+/**
+ * 领导者计数器后端，计数器为{@link LeaderCounter}。
+ *
+ * 以本节点的号段代理与序列服务地址创建实例并注册（{@link CounterBackends#register(CounterBackend)}），
+ * 序列的backend属性设为leader即可；每个计数器（分片、条带各自独立）单独选举领导者，
+ * 上游为同一路径上的zookeeper计数器，可用性跟随zk连接状态。
+ *
+ * 同一计数器的领导者计数器只创建一次，由同名序列的各个实例（含热加载后的新实例）共用，
+ * 关闭后端时退出所有选举。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class LeaderCounterBackend implements CounterBackend, AvailabilityAware, Closeable {
+
+  public static final String NAME = "leader";
+
+  private final ZookeeperCounterBackend zookeeper = new ZookeeperCounterBackend();
+
+  private final SegmentProxy proxy;
+
+  private final String endpoint;
+
+  private final ConcurrentMap<String, LeaderCounter> counters = new ConcurrentHashMap<String, LeaderCounter>();
+
+  private volatile boolean closed = false;
+
+  /**
+   * 构造函数
+   *
+   * @param proxy 本节点序列服务上的号段代理
+   * @param endpoint 本节点序列服务的地址（host:port）
+   */
+  public LeaderCounterBackend(SegmentProxy proxy, String endpoint) {
+    this.proxy = Preconditions.checkNotNull(proxy, "Segment proxy can not be null");
+    this.endpoint = Preconditions.checkNotNull(endpoint, "Endpoint can not be null");
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public synchronized Counter create(String key, CounterContext context) throws GidException {
+    if (closed) {
+      throw new GidException("Leader counter backend is closed");
+    }
+    LeaderCounter counter = counters.get(key);
+    if (null != counter) {
+      return counter;
+    }
+    // 领导者按大号段写zookeeper，无需批量申请
+    Counter upstream = zookeeper.create(key, context.with(RefillBatcher.class, null));
+    String name = key.startsWith(Breadcrumb.SEQ_ROOT_PATH)
+        ? key.substring(Breadcrumb.SEQ_ROOT_PATH.length()) : key;
+    counter = new LeaderCounter(context.require(CuratorFramework.class), name,
+        context.require(BreadcrumbDef.class).incr(), upstream, proxy, endpoint);
+    counter.start();
+    counters.put(key, counter);
+    return counter;
+  }
+
+  @Override
+  public CounterAvailability availability(CounterContext context) throws GidException {
+    return zookeeper.availability(context);
+  }
+
+  /**
+   * 关闭：所有领导者计数器退出选举
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (LeaderCounter counter : counters.values()) {
+      counter.close();
+    }
+    counters.clear();
+  }
+}
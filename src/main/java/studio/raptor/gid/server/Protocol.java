@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Charsets;
+import java.nio.ByteBuffer;
+
+/**
+ * 序列服务二进制协议。
+ *
+ * <pre>
+ * 所有整数均为大端字节序，每个帧以4字节长度（不含自身）开头。
+ *
+ * 请求帧：
+ * | length:int | opcode:byte | requestId:int | nameLength:short | name:utf-8 | count:int |
+ *
+ * 响应帧：
+ * | length:int | requestId:int | status:byte | 成功：count:int ids:long[count] |
+ *                                            | 失败：messageLength:short message:utf-8 |
+ *
+ * 同一连接上可以连续发送多个请求而不等待响应（pipelining），响应按请求顺序返回，通过requestId对应。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public final class Protocol {
+
+  /**
+   * 获取一个序列值，count固定为1
+   */
+  public static final byte OP_NEXT_ID = 1;
+
+  /**
+   * 批量获取序列值
+   */
+  public static final byte OP_NEXT_IDS = 2;
+
+  /**
+   * 租用号段（需启用{@link SegmentProxy}），count为号段中的ID数量，
+   * 成功时响应的序列值依次为 {起始ID, 步长, 数量}
+   */
+  public static final byte OP_LEASE = 3;
+
+  public static final byte STATUS_OK = 0;
+
+  /**
+   * 序列不存在
+   */
+  public static final byte STATUS_NOT_FOUND = 1;
+
+  /**
+   * 序列暂时无法取号
+   */
+  public static final byte STATUS_UNAVAILABLE = 2;
+
+  /**
+   * 请求不合法
+   */
+  public static final byte STATUS_BAD_REQUEST = 3;
+
+  /**
+   * 服务繁忙，请求未被处理，可稍后重试
+   */
+  public static final byte STATUS_BUSY = 4;
+
+  /**
+   * 单次批量取号的最大数量
+   */
+  public static final int MAX_BATCH = 65536;
+
+  /**
+   * 请求帧的最大长度
+   */
+  public static final int MAX_REQUEST_FRAME = 1 + 4 + 2 + Short.MAX_VALUE + 4;
+
+  /**
+   * 请求帧除序列名称外的长度（含长度字段）
+   */
+  static final int REQUEST_OVERHEAD = 4 + 1 + 4 + 2 + 4;
+
+  /**
+   * 成功响应帧除序列值外的长度（含长度字段）
+   */
+  static final int RESPONSE_OVERHEAD = 4 + 4 + 1 + 4;
+
+  private Protocol() {
+  }
+
+  /**
+   * 请求帧的长度（含长度字段）
+   *
+   * @param name 序列名称（utf-8编码）
+   */
+  public static int requestSize(byte[] name) {
+    return REQUEST_OVERHEAD + name.length;
+  }
+
+  /**
+   * 写入请求帧
+   *
+   * @param dst 目标缓冲区，剩余空间不足时抛出BufferOverflowException
+   * @param opcode 操作码
+   * @param requestId 请求编号
+   * @param name 序列名称（utf-8编码）
+   * @param count 数量
+   */
+  public static void writeRequest(ByteBuffer dst, byte opcode, int requestId, byte[] name,
+      int count) {
+    dst.putInt(REQUEST_OVERHEAD - 4 + name.length);
+    dst.put(opcode);
+    dst.putInt(requestId);
+    dst.putShort((short) name.length);
+    dst.put(name);
+    dst.putInt(count);
+  }
+
+  /**
+   * 成功响应帧的长度（含长度字段）
+   *
+   * @param count 序列值数量
+   */
+  public static int responseSize(int count) {
+    return RESPONSE_OVERHEAD + 8 * count;
+  }
+
+  /**
+   * 写入成功响应帧，序列值从数组批量复制
+   */
+  static void writeIds(ByteBuffer dst, int requestId, long[] ids, int count) {
+    dst.putInt(responseSize(count) - 4);
+    dst.putInt(requestId);
+    dst.put(STATUS_OK);
+    dst.putInt(count);
+    dst.asLongBuffer().put(ids, 0, count);
+    dst.position(dst.position() + 8 * count);
+  }
+
+  /**
+   * 失败响应帧的长度（含长度字段）
+   */
+  static int errorSize(byte[] message) {
+    return 4 + 4 + 1 + 2 + message.length;
+  }
+
+  /**
+   * 写入失败响应帧
+   */
+  static void writeError(ByteBuffer dst, int requestId, byte status, byte[] message) {
+    dst.putInt(errorSize(message) - 4);
+    dst.putInt(requestId);
+    dst.put(status);
+    dst.putShort((short) message.length);
+    dst.put(message);
+  }
+
+  /**
+   * 编码错误信息，超长时截断
+   */
+  static byte[] message(String message) {
+    byte[] bytes = String.valueOf(message).getBytes(Charsets.UTF_8);
+    if (bytes.length > 1024) {
+      byte[] truncated = new byte[1024];
+      System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+      return truncated;
+    }
+    return bytes;
+  }
+}
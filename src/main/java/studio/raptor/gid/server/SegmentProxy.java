@@ -0,0 +1,630 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.common.ExecutorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.Pair;
+import studio.raptor.gid.common.ThreadSafe;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.ZookeeperCounter;
+import studio.raptor.gid.counter.ZookeeperCounterBackend;
+import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.def.SequenceDef;
+import studio.raptor.gid.kind.Breadcrumb;
+import studio.raptor.gid.kind.Sequencable;
+import studio.raptor.gid.kind.SegmentJournal;
+
+/**
+ * <pre>
+ * 号段代理。
+ *
+ * 应用节点众多时，每个节点的ID缓冲器都直接写zookeeper计数器，zookeeper的写入能力成为瓶颈。
+ * 号段代理作为中间层，一次从zookeeper申请一个大号段，再通过{@link IdServer}（{@link Protocol#OP_LEASE}）
+ * 将其切分为小号段租给应用节点，应用节点通过{@link studio.raptor.gid.client.ProxyCounter}透明使用。
+ *
+ * 唯一性：大号段由zookeeper计数器原子分配，各代理之间互不重叠；代理故障切换后新代理总是申请新的大号段，
+ * 从不复用故障代理的大号段，其中未租出的部分只造成号段空洞。
+ * 租出的小号段记录在租约台账中，用于排查哪些号段仍在应用节点手中：租期（与号段日志相同，
+ * 见{@link SegmentJournal#DEFAULT_LEASE_MS}）已过的号段视为已用完或已被放弃，从台账中移除。
+ * 提供zk客户端时各代理的台账分别定期写入 {@link #LEDGER_ROOT_PATH}序列名/代理标识 节点，
+ * 同时代理同一序列的多个代理互不干扰；代理存活期间在台账节点下保持临时节点{@link #LEDGER_ALIVE_NODE}。
+ * 代理首次代理某序列时接管已失效（无临时节点，如已关闭或会话已过期）的其他代理的台账：
+ * 读入其中仍在租期内的号段并删除其台账节点，台账节点已被其他代理接管时跳过。
+ *
+ * 代理的序列可以由序列发生器按名称解析（仅限未分片、未切分条带、以zookeeper为后端的面包屑序列），也可以通过{@link #register(String, long, Counter)}显式登记
+ * （如{@link LeaderCounter}只在成为领导者期间登记）。
+ * </pre>
+ *
+ * @author bruce
+ * @since 0.2
+ */
+@ThreadSafe
+public class SegmentProxy implements Closeable {
+
+  private static Logger log = LoggerFactory.getLogger(SegmentProxy.class);
+
+  /**
+   * 租约台账节点根路径
+   */
+  public static final String LEDGER_ROOT_PATH = "/raptor-proxy-ledgers/";
+
+  /**
+   * 台账节点下表示代理存活的临时节点名称
+   */
+  public static final String LEDGER_ALIVE_NODE = "alive";
+
+  /**
+   * 台账中号段的租期（毫秒）
+   */
+  private static long ledger_lease_ms = SegmentJournal.DEFAULT_LEASE_MS;
+
+  /**
+   * 台账节点的最大字节数（zookeeper节点数据上限为1M），超出时丢弃最早的租约
+   */
+  private static int ledger_max_bytes = 512 * 1024;
+
+  /**
+   * 台账写入间隔（毫秒）
+   */
+  private static final long LEDGER_FLUSH_INTERVAL_MS = 1000;
+
+  /**
+   * 台账写入线程池（所有代理共享）
+   */
+  private static ScheduledExecutorService ledgerFlusher = ExecutorUtil
+      .createScheduledThreadPool("proxy_ledger_flusher", 1);
+
+  /**
+   * 按名称解析序列，为null时只代理显式登记的序列
+   */
+  private final Sequencer sequencer;
+
+  private final CuratorFramework zkClient;
+
+  /**
+   * 代理标识（台账节点名称），每个代理实例唯一
+   */
+  private final String proxyId = UUID.randomUUID().toString();
+
+  /**
+   * 每次从zookeeper申请的大号段ID数量
+   */
+  private final int segmentSize;
+
+  private final ConcurrentMap<String, Upstream> upstreams = new ConcurrentHashMap<String, Upstream>();
+
+  /**
+   * 台账写入任务，未持久化台账时为null
+   */
+  private final ScheduledFuture<?> flushTask;
+
+  /**
+   * 构造函数
+   *
+   * @param sequencer 已启动的序列发生器（提供序列定义）
+   * @param zkClient 与序列发生器相同命名空间的zk客户端（同时用于持久化台账）
+   * @param segmentSize 每次从zookeeper申请的ID数量
+   */
+  public SegmentProxy(Sequencer sequencer, CuratorFramework zkClient, int segmentSize) {
+    this(segmentSize, Preconditions.checkNotNull(sequencer, "Sequencer can not be null"),
+        Preconditions.checkNotNull(zkClient, "Zookeeper client can not be null"));
+  }
+
+  /**
+   * 构造函数，只代理显式登记的序列，台账持久化到zookeeper
+   *
+   * @param zkClient 持久化台账的zk客户端
+   * @param segmentSize 每次从zookeeper申请的ID数量
+   */
+  public SegmentProxy(CuratorFramework zkClient, int segmentSize) {
+    this(segmentSize, null,
+        Preconditions.checkNotNull(zkClient, "Zookeeper client can not be null"));
+  }
+
+  /**
+   * 构造函数，只代理显式登记的序列，台账只保存在内存中
+   *
+   * @param segmentSize 每次从zookeeper申请的ID数量
+   */
+  public SegmentProxy(int segmentSize) {
+    this(segmentSize, null, null);
+  }
+
+  private SegmentProxy(int segmentSize, Sequencer sequencer, CuratorFramework zkClient) {
+    Preconditions.checkArgument(segmentSize > 0,
+        "Segment size must be greater than 0,cur val:" + segmentSize);
+    this.sequencer = sequencer;
+    this.zkClient = zkClient;
+    this.segmentSize = segmentSize;
+    this.flushTask = null == zkClient ? null : ledgerFlusher.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, LEDGER_FLUSH_INTERVAL_MS, LEDGER_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 登记代理的序列，已登记时替换（丢弃原有大号段的剩余部分）
+   *
+   * @param name 序列名称
+   * @param incr 序列步长
+   * @param upstream 上游计数器
+   */
+  public void register(String name, long incr, Counter upstream) {
+    upstreams.put(name, new Upstream(name, incr, upstream));
+  }
+
+  /**
+   * 注销代理的序列，此后不再租出该序列的号段（按名称解析的序列下次租用时重新解析），
+   * 注销前写入台账，此后台账可被其他代理接管
+   *
+   * @param name 序列名称
+   */
+  public void unregister(String name) {
+    Upstream upstream = upstreams.remove(name);
+    if (null != upstream) {
+      upstream.flush();
+      upstream.release();
+    }
+  }
+
+  /**
+   * 停止代理：写入所有序列的台账并停止定期写入，此后台账可被其他代理接管
+   */
+  @Override
+  public void close() {
+    if (null != flushTask) {
+      flushTask.cancel(false);
+    }
+    for (Upstream upstream : upstreams.values()) {
+      upstream.flush();
+      upstream.release();
+    }
+  }
+
+  /**
+   * 代理标识，即本代理台账节点的名称
+   */
+  public String proxyId() {
+    return proxyId;
+  }
+
+  /**
+   * 写入所有序列的台账
+   */
+  private void flush() {
+    for (Upstream upstream : upstreams.values()) {
+      upstream.flush();
+    }
+  }
+
+  /**
+   * 是否已代理该序列
+   */
+  public boolean isServing(String name) {
+    return upstreams.containsKey(name);
+  }
+
+  /**
+   * 租出小号段
+   *
+   * @param name 序列名称
+   * @param count ID数量
+   * @param lessee 承租方（用于台账）
+   * @return {起始ID, 步长, 数量}
+   * @throws GidException 序列不是面包屑序列或zookeeper访问异常
+   */
+  public long[] lease(String name, int count, String lessee) throws GidException {
+    if (count <= 0 || count > segmentSize) {
+      throw new GidException("Lease count must be in [1," + segmentSize + "],cur val:" + count);
+    }
+    Upstream upstream = upstreams.get(name);
+    if (null == upstream) {
+      upstream = resolve(name);
+      Upstream existing = upstreams.putIfAbsent(name, upstream);
+      if (null != existing) {
+        upstream = existing;
+      }
+    }
+    return upstream.lease(count, lessee);
+  }
+
+  /**
+   * 序列租出的、仍在租期内的小号段（从旧到新，含接管失效代理的台账时读入的号段）
+   *
+   * @param name 序列名称
+   * @return 租约列表
+   */
+  public List<SubLease> outstanding(String name) {
+    Upstream upstream = upstreams.get(name);
+    if (null == upstream) {
+      return new ArrayList<SubLease>();
+    }
+    return upstream.outstanding();
+  }
+
+  private Upstream resolve(String name) throws GidException {
+    if (null == sequencer) {
+      throw new GidException("Sequence " + name + " is not served by this proxy");
+    }
+    // 确保序列已创建（计数器节点已初始化）
+    sequencer.get(name);
+    Pair<SequenceDef, Sequencable> pair = sequencer.getSequences().get(name);
+    if (null == pair || !(pair.getKey() instanceof BreadcrumbDef)) {
+      throw new GidException("Sequence " + name + " is not a breadcrumb sequence");
+    }
+    // 大号段取自序列计数器路径上的单个zookeeper计数器，分片、条带或其他后端的序列不在该计数器上分配号段
+    BreadcrumbDef seqDef = (BreadcrumbDef) pair.getKey();
+    if (seqDef.shards() > 1 || sequencer.getStripe().isStriped()
+        || !ZookeeperCounterBackend.NAME.equals(seqDef.backend())) {
+      throw new GidException("Sequence " + name + " can not be proxied : shards "
+          + seqDef.shards() + ",stripe " + sequencer.getStripe() + ",backend "
+          + seqDef.backend());
+    }
+    return new Upstream(name, seqDef.incr(),
+        new ZookeeperCounter(zkClient, ZKPaths.makePath(Breadcrumb.SEQ_ROOT_PATH, name), null));
+  }
+
+  /**
+   * 单个序列的上游大号段
+   */
+  private class Upstream {
+
+    private final String name;
+
+    private final long incr;
+
+    private final Counter counter;
+
+    /**
+     * 当前大号段中下一个ID
+     */
+    private long next;
+
+    /**
+     * 当前大号段中剩余的ID数量
+     */
+    private long remaining = 0;
+
+    private final Deque<SubLease> ledger = new ArrayDeque<SubLease>();
+
+    /**
+     * 本代理的台账节点路径，未持久化台账时为null
+     */
+    private final String ledgerPath;
+
+    /**
+     * 台账自上次写入后是否有变化
+     */
+    private boolean dirty;
+
+    /**
+     * 串行化台账节点的读写
+     */
+    private final Object ledgerLock = new Object();
+
+    /**
+     * 台账节点的版本（受ledgerLock保护），-1表示台账节点已被其他代理接管，不再写入
+     */
+    private int ledgerVersion = -1;
+
+    Upstream(String name, long incr, Counter counter) {
+      this.name = name;
+      this.incr = incr;
+      this.counter = counter;
+      this.ledgerPath = null == zkClient ? null
+          : ZKPaths.makePath(ZKPaths.makePath(LEDGER_ROOT_PATH, name), proxyId);
+      load();
+    }
+
+    /**
+     * 创建本代理的台账节点及存活标记，读入本代理此前写入的台账，并接管已失效代理的台账
+     * （只保留仍在租期内的号段）
+     */
+    private void load() {
+      if (null == ledgerPath) {
+        return;
+      }
+      synchronized (ledgerLock) {
+        try {
+          Stat stat = new Stat();
+          List<SubLease> leases = new ArrayList<SubLease>();
+          try {
+            leases.addAll(decode(zkClient.getData().storingStatIn(stat).forPath(ledgerPath)));
+          } catch (KeeperException.NoNodeException e) {
+            zkClient.create().creatingParentsIfNeeded().forPath(ledgerPath, new byte[0]);
+            zkClient.getData().storingStatIn(stat).forPath(ledgerPath);
+          }
+          try {
+            zkClient.create().withMode(CreateMode.EPHEMERAL)
+                .forPath(ZKPaths.makePath(ledgerPath, LEDGER_ALIVE_NODE));
+          } catch (KeeperException.NodeExistsException ignored) {
+            // 重新登记同一序列
+          }
+          ledgerVersion = stat.getVersion();
+
+          int adopted = 0;
+          String parent = ZKPaths.getPathAndNode(ledgerPath).getPath();
+          for (String peer : zkClient.getChildren().forPath(parent)) {
+            if (!proxyId.equals(peer)) {
+              List<SubLease> taken = adopt(ZKPaths.makePath(parent, peer));
+              adopted += taken.size();
+              leases.addAll(taken);
+            }
+          }
+
+          Collections.sort(leases, new Comparator<SubLease>() {
+            @Override
+            public int compare(SubLease a, SubLease b) {
+              return Long.compare(a.leasedAt(), b.leasedAt());
+            }
+          });
+          long now = System.currentTimeMillis();
+          synchronized (this) {
+            for (SubLease lease : leases) {
+              if (now - lease.leasedAt() <= ledger_lease_ms) {
+                ledger.addLast(lease);
+              }
+            }
+            if (adopted > 0) {
+              dirty = true;
+            }
+            if (!ledger.isEmpty()) {
+              log.info("Load {} outstanding leases of sequence {} from ledger", ledger.size(),
+                  name);
+            }
+          }
+        } catch (Exception e) {
+          ledgerVersion = -1;
+          log.warn("Load ledger of sequence {} failure, ledger will not be persisted", name, e);
+        }
+      }
+    }
+
+    /**
+     * 接管失效代理的台账：读出后按版本删除其台账节点
+     *
+     * @param peerPath 其他代理的台账节点路径
+     * @return 台账中的租约，代理仍存活或台账已被接管时返回空列表
+     */
+    private List<SubLease> adopt(String peerPath) throws Exception {
+      List<SubLease> leases = new ArrayList<SubLease>();
+      try {
+        if (null != zkClient.checkExists().forPath(ZKPaths.makePath(peerPath, LEDGER_ALIVE_NODE))) {
+          return leases;
+        }
+        Stat stat = new Stat();
+        byte[] data = zkClient.getData().storingStatIn(stat).forPath(peerPath);
+        zkClient.delete().withVersion(stat.getVersion()).forPath(peerPath);
+        leases.addAll(decode(data));
+        log.info("Take over ledger {} of sequence {} : {} leases", peerPath, name, leases.size());
+      } catch (KeeperException.NoNodeException | KeeperException.BadVersionException
+          | KeeperException.NotEmptyException e) {
+        // 已被其他代理接管，或代理恢复存活
+        log.debug("Skip ledger {} of sequence {} : {}", peerPath, name, e.getMessage());
+      }
+      return leases;
+    }
+
+    /**
+     * 删除存活标记，此后台账可被其他代理接管
+     */
+    void release() {
+      if (null == ledgerPath) {
+        return;
+      }
+      try {
+        zkClient.delete().forPath(ZKPaths.makePath(ledgerPath, LEDGER_ALIVE_NODE));
+      } catch (KeeperException.NoNodeException ignored) {
+        // 会话已过期
+      } catch (Exception e) {
+        log.warn("Release ledger of sequence {} failure : {}", name, e.getMessage());
+      }
+    }
+
+    /**
+     * 写入台账，台账节点已被其他代理接管时停止写入
+     */
+    void flush() {
+      if (null == ledgerPath) {
+        return;
+      }
+      synchronized (ledgerLock) {
+        if (ledgerVersion < 0) {
+          return;
+        }
+        byte[] data;
+        synchronized (this) {
+          if (!dirty) {
+            return;
+          }
+          expire();
+          data = encode();
+          dirty = false;
+        }
+        try {
+          ledgerVersion = zkClient.setData().withVersion(ledgerVersion).forPath(ledgerPath, data)
+              .getVersion();
+        } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e) {
+          ledgerVersion = -1;
+          log.info("Ledger {} of sequence {} is taken over by another proxy", ledgerPath, name);
+        } catch (Exception e) {
+          synchronized (this) {
+            dirty = true;
+          }
+          log.warn("Flush ledger of sequence {} failure : {}", name, e.getMessage());
+        }
+      }
+    }
+
+    /**
+     * 移除租期已过的号段（台账按租出时间排序）
+     */
+    private void expire() {
+      long now = System.currentTimeMillis();
+      while (!ledger.isEmpty() && now - ledger.peekFirst().leasedAt() > ledger_lease_ms) {
+        ledger.removeFirst();
+        dirty = true;
+      }
+    }
+
+    /**
+     * 编码台账，每行一条租约：承租方 起始ID 步长 数量 租出时间（以制表符分隔）
+     */
+    private byte[] encode() {
+      StringBuilder text = new StringBuilder();
+      int dropped = 0;
+      for (SubLease lease : ledger) {
+        text.append(lease.lessee()).append('\t').append(lease.start()).append('\t')
+            .append(lease.step()).append('\t').append(lease.count()).append('\t')
+            .append(lease.leasedAt()).append('\n');
+      }
+      while (text.length() > ledger_max_bytes) {
+        // 按字符数近似字节数，承租方为ip:port
+        text.delete(0, text.indexOf("\n") + 1);
+        dropped++;
+      }
+      if (dropped > 0) {
+        log.warn("Ledger of sequence {} exceeds {} bytes, drop {} oldest leases", name,
+            ledger_max_bytes, dropped);
+      }
+      return text.toString().getBytes(Charsets.UTF_8);
+    }
+
+    private List<SubLease> decode(byte[] data) {
+      List<SubLease> leases = new ArrayList<SubLease>();
+      if (null == data || data.length == 0) {
+        return leases;
+      }
+      for (String line : new String(data, Charsets.UTF_8).split("\n")) {
+        String[] fields = line.split("\t");
+        if (fields.length != 5) {
+          continue;
+        }
+        try {
+          leases.add(new SubLease(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+              Integer.parseInt(fields[3]), Long.parseLong(fields[4])));
+        } catch (NumberFormatException e) {
+          log.warn("Skip malformed ledger line of sequence {} : {}", name, line);
+        }
+      }
+      return leases;
+    }
+
+    synchronized long[] lease(int count, String lessee) throws GidException {
+      if (remaining < count) {
+        if (remaining > 0) {
+          log.info("Abandon {} ids of sequence {} from {}", remaining, name, next);
+        }
+        long size = Math.max(segmentSize, count);
+        next = counter.getAndAdd(incr * size);
+        remaining = size;
+        log.info("Lease segment of sequence {} : range -> [{},{})", name, next,
+            next + incr * size);
+      }
+      long start = next;
+      next += incr * count;
+      remaining -= count;
+
+      expire();
+      ledger.addLast(new SubLease(lessee, start, incr, count, System.currentTimeMillis()));
+      dirty = true;
+      return new long[]{start, incr, count};
+    }
+
+    synchronized List<SubLease> outstanding() {
+      expire();
+      return new ArrayList<SubLease>(ledger);
+    }
+  }
+
+  /**
+   * 租出的小号段
+   */
+  public static final class SubLease {
+
+    private final String lessee;
+
+    private final long start;
+
+    private final long step;
+
+    private final int count;
+
+    private final long leasedAt;
+
+    SubLease(String lessee, long start, long step, int count, long leasedAt) {
+      this.lessee = lessee;
+      this.start = start;
+      this.step = step;
+      this.count = count;
+      this.leasedAt = leasedAt;
+    }
+
+    public String lessee() {
+      return lessee;
+    }
+
+    public long start() {
+      return start;
+    }
+
+    public long step() {
+      return step;
+    }
+
+    public int count() {
+      return count;
+    }
+
+    public long leasedAt() {
+      return leasedAt;
+    }
+
+    @Override
+    public String toString() {
+      return lessee + ":[" + start + "," + (start + step * count) + ")/" + step;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import studio.raptor.gid.Sequencer;
 import studio.raptor.gid.kind.Breadcrumb;
+import studio.raptor.gid.kind.LazySequence;
 import studio.raptor.gid.kind.Sequencable;
 import studio.raptor.gid.service.interfaces.CacheService;
 
@@ -23,6 +24,9 @@ public class CacheServiceImpl implements CacheService{
     public boolean adjustCache(String name,int newCache) throws Exception{
         boolean result=false;
         Sequencable sequence=sequencer.get(name);
+        if(sequence instanceof LazySequence){
+            sequence=((LazySequence) sequence).materialize();
+        }
         if(sequence instanceof Breadcrumb){
             Breadcrumb breadcrumb=(Breadcrumb) sequence;
             result=breadcrumb.adjustCache(newCache);
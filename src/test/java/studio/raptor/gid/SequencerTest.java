@@ -25,16 +25,32 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import studio.raptor.gid.common.CuratorUtil;
 import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
 import studio.raptor.gid.common.VMHelper;
 import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.kind.LazySequence;
 import studio.raptor.gid.kind.Sequencable;
 import studio.raptor.gid.service.impl.CacheServiceImpl;
 import studio.raptor.gid.service.interfaces.CacheService;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -252,6 +268,250 @@ public class SequencerTest {
     server.startup();
   }
 
+  @Test
+  public void testStartupAsync() throws Exception {
+    Sequencer server = new Sequencer(zkConnectStr, "test", "/xml/seq_test_well_formed_all.xml",
+        "127.0.0.1", 8080);
+    server.startupAsync();
+
+    // 序列创建完成前获取将等待其创建完成
+    assertThat(server.get("breadcrumb2").nextId(), notNullValue());
+    assertEquals(SequenceStatus.READY, server.status("breadcrumb2"));
+    assertEquals(SequenceStatus.READY, server.getStatuses().get("breadcrumb2"));
+  }
+
+  @Test
+  public void testWarmup() throws Exception {
+    Sequencer server = new Sequencer(zkConnectStr, "test", "/xml/seq_test_well_formed_all.xml",
+        "127.0.0.1", 8080);
+    server.setWarmup(1.0, 1000);
+    assertEquals(Readiness.STARTING, server.readiness());
+
+    server.startupAsync();
+    assertTrue(server.awaitReady(30, TimeUnit.SECONDS));
+    assertEquals(Readiness.READY, server.readiness());
+    assertEquals("READY", server.getReadiness());
+
+    server.shutdown();
+    assertEquals(Readiness.STARTING, server.readiness());
+  }
+
+  @Test
+  public void testHandle() throws Exception {
+    Sequencer server = new Sequencer(zkConnectStr, "test", "/xml/seq_test_well_formed_all.xml",
+        "127.0.0.1", 8080);
+    // 启动前即可获取句柄
+    SequenceHandle handle = server.handle("breadcrumb2");
+    assertFalse(handle.isBound());
+    try {
+      handle.nextLong();
+      fail("handle of a not started sequencer must be unavailable");
+    } catch (IdUnavailableException e) {
+      assertSame(IdUnavailableException.UNAVAILABLE, e);
+    }
+
+    server.startup();
+    assertTrue(handle.isBound());
+    assertSame(handle, server.handle(" breadcrumb2 "));
+    long first = handle.nextId();
+    assertTrue(handle.nextLong() > first);
+
+    long[] batch = new long[25];
+    handle.nextIds(batch, 0, batch.length);
+    for (int i = 1; i < batch.length; i++) {
+      assertTrue(batch[i] > batch[i - 1]);
+    }
+
+    // 关闭后句柄解除绑定，序列实例全部释放
+    server.shutdown();
+    assertFalse(handle.isBound());
+    assertTrue(server.getSequences().isEmpty());
+    assertTrue(server.getStatuses().isEmpty());
+  }
+
+  @Test
+  public void testHandleKeepsConcurrentBinding() throws Exception {
+    SequenceHandle handle = new SequenceHandle(null, "race");
+    SequenceHandle replaced = new SequenceHandle(null, "replaced");
+    SequenceHandle stale = new SequenceHandle(null, "stale");
+
+    // 查找期间发生了重新绑定，查找到的旧实例不能覆盖新绑定
+    int version = handle.version();
+    handle.bind(replaced);
+    assertSame(replaced, handle.bindIfUnchanged(stale, version));
+
+    // 查找期间序列被移除（解除绑定），同样不能写入
+    version = handle.version();
+    handle.bind(null);
+    assertNull(handle.bindIfUnchanged(stale, version));
+    assertFalse(handle.isBound());
+  }
+
+  @Test
+  public void testLazy() throws Exception {
+    Sequencer server = new Sequencer(zkConnectStr, "test", "/xml/seq_test_well_formed_all.xml",
+        "127.0.0.1", 8080);
+    server.setLazy(true);
+    server.startup();
+
+    final LazySequence lazy = (LazySequence) server.get("breadcrumb2");
+    assertFalse(lazy.isMaterialized());
+
+    // 并发首次取号只创建一次序列
+    final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    final Set<Sequencable> targets = Collections.synchronizedSet(new HashSet<Sequencable>());
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ids.add(lazy.nextId());
+            targets.add(lazy.target());
+          } catch (Exception e) {
+            logger.error("lazy nextId failure", e);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(threads.length, ids.size());
+    assertEquals(1, targets.size());
+    assertTrue(lazy.isMaterialized());
+  }
+
+  @Test
+  public void testLazyClose() throws Exception {
+    Sequencer server = new Sequencer(zkConnectStr, "test", "/xml/seq_test_well_formed_all.xml",
+        "127.0.0.1", 8080);
+    server.setLazy(true);
+    server.startup();
+
+    // 已创建的序列随延迟序列关闭
+    LazySequence materialized = (LazySequence) server.get("breadcrumb2");
+    materialized.nextId();
+    Sequencable target = materialized.target();
+    materialized.close();
+    // 丢弃缓冲后关闭的序列不再申请号段
+    target.reset(100000);
+    try {
+      target.nextId();
+      fail("closed breadcrumb should not refill");
+    } catch (GidException e) {
+      // expected
+    } catch (IdUnavailableException e) {
+      // expected
+    }
+
+    // 关闭后未创建的延迟序列不再创建
+    final int[] created = new int[1];
+    LazySequence stale = new LazySequence("breadcrumb2", new LazySequence.Factory() {
+      @Override
+      public Sequencable create() throws GidException {
+        created[0]++;
+        throw new GidException("should not be created");
+      }
+    });
+    stale.close();
+    try {
+      stale.nextId();
+      fail("closed lazy sequence should not materialize");
+    } catch (IdUnavailableException e) {
+      // expected
+    }
+    assertEquals(0, created[0]);
+    assertFalse(stale.isMaterialized());
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    File config = new File(new File(SequencerTest.class.getResource("/xml/").toURI()),
+        "seq_test_reload.xml");
+    writeConfig(config, "<breadcrumb name=\"reload_b1\" cache=\"10\"/>"
+        + "<breadcrumb name=\"reload_b2\" cache=\"10\"/>"
+        + "<snowflake name=\"reload_s1\"/>");
+    Sequencer server = new Sequencer(zkConnectStr, "testgid", "/xml/seq_test_reload.xml",
+        "127.0.0.1", 8080);
+    server.startup();
+    Sequencable b1 = server.get("reload_b1");
+    Sequencable b2 = server.get("reload_b2");
+    SequenceHandle h2 = server.handle("reload_b2");
+    SequenceHandle s1 = server.handle("reload_s1");
+    long before = h2.nextId();
+
+    // b1调整缓冲，b2修改步长，s1删除，b3新增
+    writeConfig(config, "<breadcrumb name=\"reload_b1\" cache=\"20\"/>"
+        + "<breadcrumb name=\"reload_b2\" cache=\"10\" incr=\"2\"/>"
+        + "<breadcrumb name=\"reload_b3\" cache=\"10\"/>");
+    assertEquals("added=[reload_b3],resized=[reload_b1],replaced=[reload_b2],retired=[reload_s1]",
+        server.reload());
+
+    assertSame(b1, server.get("reload_b1"));
+    assertNotSame(b2, server.get("reload_b2"));
+    // 句柄绑定到新实例
+    long after = h2.nextId();
+    assertTrue(after > before);
+    assertEquals(after + 2, h2.nextId());
+    assertFalse(s1.isBound());
+    assertNull(server.status("reload_s1"));
+    server.get("reload_b3").nextId();
+
+    // 无变化时不做任何变更
+    assertEquals("added=[],resized=[],replaced=[],retired=[]", server.reload());
+
+    // 定期检查到文件变化后自动加载
+    writeConfig(config, "<breadcrumb name=\"reload_b1\" cache=\"20\"/>");
+    config.setLastModified(System.currentTimeMillis() + 2000);
+    server.watchConfig(100, TimeUnit.MILLISECONDS);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (null != server.status("reload_b2") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertNull(server.status("reload_b2"));
+    assertNull(server.status("reload_b3"));
+    server.shutdown();
+    config.delete();
+  }
+
+  @Test
+  public void testZookeeperDefinitions() throws Exception {
+    CuratorUtil.createPersistentNode(client, "/definitions",
+        definitions("<breadcrumb name=\"zk_b1\" cache=\"10\"/>").getBytes(Charsets.UTF_8));
+    Sequencer server = new Sequencer(zkConnectStr, "testgid", "/not_exist_file.xml", "127.0.0.1",
+        8080);
+    server.setDefinitionPath("/definitions");
+    server.startup();
+    Sequencable b1 = server.get("zk_b1");
+    b1.nextId();
+
+    // 节点变化后各进程自动加载
+    CuratorUtil.setData(client, "/definitions",
+        definitions("<breadcrumb name=\"zk_b1\" cache=\"20\"/>"
+            + "<breadcrumb name=\"zk_b2\" cache=\"10\"/>").getBytes(Charsets.UTF_8));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.status("zk_b2") != SequenceStatus.READY
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(SequenceStatus.READY, server.status("zk_b2"));
+    assertSame(b1, server.get("zk_b1"));
+    server.shutdown();
+    CuratorUtil.deleteNode(client, "/definitions");
+  }
+
+  private void writeConfig(File config, String sequences) throws IOException {
+    Files.write(definitions(sequences), config, Charsets.UTF_8);
+  }
+
+  private String definitions(String sequences) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<sequences xmlns=\"http://f150.oschina.io/raptor-gid/gid\">"
+        + sequences + "</sequences>";
+  }
+
   @Test
   public void testCache() throws Exception {
 //    expectedEx.expect(GidException.class);
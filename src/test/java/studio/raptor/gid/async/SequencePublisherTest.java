@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+
+/**
+ * 异步取号及序列值流测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class SequencePublisherTest {
+
+  private TestingServer server;
+
+  private CuratorFramework client;
+
+  private Breadcrumb breadcrumb;
+
+  @Before
+  public void setup() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_async");
+    client.blockUntilConnected();
+    breadcrumb = new Breadcrumb(new BreadcrumbDef() {
+      @Override
+      public String name() {
+        return "async";
+      }
+
+      @Override
+      public int cache() {
+        return 100;
+      }
+
+      @Override
+      public long incr() {
+        return 1;
+      }
+
+      @Override
+      public long start() {
+        return 0;
+      }
+    }, client);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testNextIdAsync() throws Exception {
+    // 远超缓冲区大小，取空后由填充线程完成
+    List<ListenableFuture<Long>> futures = new ArrayList<ListenableFuture<Long>>();
+    for (int i = 0; i < 1000; i++) {
+      futures.add(breadcrumb.nextIdAsync());
+    }
+    Set<Long> ids = new HashSet<Long>();
+    for (ListenableFuture<Long> future : futures) {
+      assertTrue(ids.add(future.get(10, TimeUnit.SECONDS)));
+    }
+    assertEquals(1000, ids.size());
+  }
+
+  @Test
+  public void testBackPressure() throws Exception {
+    final List<Long> received = new CopyOnWriteArrayList<Long>();
+    final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+    final IdSubscription[] holder = new IdSubscription[1];
+    breadcrumb.ids().subscribe(new IdSubscriber() {
+      @Override
+      public void onSubscribe(IdSubscription subscription) {
+        holder[0] = subscription;
+      }
+
+      @Override
+      public void onNext(long id) {
+        received.add(id);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        errors.add(t);
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+
+    // 未请求时不推送
+    Thread.sleep(100);
+    assertTrue(received.isEmpty());
+
+    holder[0].request(250);
+    awaitSize(received, 250);
+    Thread.sleep(100);
+    assertEquals(250, received.size());
+
+    holder[0].request(10);
+    awaitSize(received, 260);
+    holder[0].cancel();
+    holder[0].request(10);
+    Thread.sleep(100);
+    assertEquals(260, received.size());
+    assertEquals(260, new HashSet<Long>(received).size());
+    assertTrue(errors.isEmpty());
+  }
+
+  private void awaitSize(List<Long> received, int size) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (received.size() < size && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(size, received.size());
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+import studio.raptor.gid.server.IdServer;
+
+/**
+ * 序列服务客户端测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class IdClientTest {
+
+  private TestingServer zkServer;
+
+  private Sequencer sequencer;
+
+  private IdServer server;
+
+  private IdClient client;
+
+  @Before
+  public void setup() throws Exception {
+    zkServer = new TestingServer();
+    sequencer = new Sequencer(zkServer.getConnectString(), "test_client", "/not_exist_file.xml",
+        "127.0.0.1", 8080);
+    sequencer.startupWithoutLoad();
+    sequencer.add(new ImmutableBreadcrumbDef("order", 1000, 1, 0, 0));
+
+    server = new IdServer(sequencer, new InetSocketAddress("127.0.0.1", 0));
+    server.start();
+    client = new IdClient("127.0.0.1", server.getPort(), 2);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+    sequencer.shutdown();
+    zkServer.close();
+  }
+
+  @Test
+  public void testPipelinedRequests() throws Exception {
+    List<ListenableFuture<long[]>> futures = new ArrayList<ListenableFuture<long[]>>();
+    for (int i = 0; i < 200; i++) {
+      futures.add(client.nextIds("order", 50));
+    }
+    Set<Long> ids = new HashSet<Long>();
+    for (ListenableFuture<long[]> future : futures) {
+      long[] block = future.get(10, TimeUnit.SECONDS);
+      assertEquals(50, block.length);
+      for (long id : block) {
+        ids.add(id);
+      }
+    }
+    assertEquals(10000, ids.size());
+  }
+
+  @Test
+  public void testRemoteSequence() throws Exception {
+    RemoteSequence sequence = client.sequence("order", 100);
+    Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    long last = -1;
+    for (int i = 0; i < 1000; i++) {
+      long id = sequence.nextLong();
+      assertTrue(id > last);
+      last = id;
+      ids.add(id);
+    }
+    long[] batch = new long[250];
+    sequence.nextIds(batch, 0, batch.length);
+    for (long id : batch) {
+      ids.add(id);
+    }
+    ids.add(sequence.nextIdAsync().get(10, TimeUnit.SECONDS));
+    assertEquals(1251, ids.size());
+    // 剩余ID低于阈值时已预取下一个号段
+    assertTrue(sequence.available() > 0);
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    try {
+      client.nextIds("not_exists", 1).get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof GidException);
+    }
+
+    try {
+      client.sequence("not_exists", 10).nextLong();
+      fail();
+    } catch (IdUnavailableException e) {
+      assertEquals(IdUnavailableException.UNAVAILABLE, e);
+    }
+
+    // 服务关闭后请求失败，不会无限等待
+    server.close();
+    try {
+      client.nextIds("order", 1).get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof GidException);
+    }
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+    // 只接受连接、从不响应的服务端
+    ServerSocket silent = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    IdClient slow = new IdClient(new InetSocketAddress("127.0.0.1", silent.getLocalPort()), 1,
+        200);
+    try {
+      long begin = System.currentTimeMillis();
+      try {
+        slow.nextIds("order", 1).get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof GidException);
+      }
+      assertTrue(System.currentTimeMillis() - begin < 2000);
+
+      // 超时的预取请求被丢弃，之后的取号重新发起请求而不是一直等待同一个请求
+      RemoteSequence sequence = slow.sequence("order", 10);
+      for (int i = 0; i < 2; i++) {
+        begin = System.currentTimeMillis();
+        try {
+          sequence.nextLong();
+          fail();
+        } catch (IdUnavailableException e) {
+          assertEquals(IdUnavailableException.UNAVAILABLE, e);
+        }
+        assertTrue(System.currentTimeMillis() - begin < 2000);
+      }
+    } finally {
+      slow.close();
+      silent.close();
+    }
+  }
+}
@@ -24,6 +24,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
@@ -101,5 +103,36 @@ public final class ConfigLoaderTest {
     }
   }
 
+  @Test
+  public void testLoadFromFileSystem() throws Exception {
+    File file = new File(ConfigLoaderTest.class.getResource(WELL_FORMED_FILE_PATH).toURI());
+    assertTrue(ConfigLoader.validate(file.getAbsolutePath()));
+    assertThat(ConfigLoader.load(file.getAbsolutePath()).size(),
+        equalTo(ConfigLoader.load(WELL_FORMED_FILE_PATH).size()));
+  }
+
+  @Test
+  public void testLoadLargeCatalog() throws Exception {
+    int count = 20000;
+    StringBuilder xml = new StringBuilder(
+        "<sequences xmlns=\"http://f150.oschina.io/raptor-gid/gid\">");
+    for (int i = 0; i < count; i++) {
+      xml.append("<breadcrumb name=\"breadcrumb").append(i).append("\" cache=\"10\"/>");
+    }
+    xml.append("</sequences>");
+
+    List<SequenceDef> sequenceDefs = ConfigLoader
+        .load(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")), "large catalog");
+    assertThat(sequenceDefs.size(), equalTo(count));
+    assertThat(((BreadcrumbDef) sequenceDefs.get(count - 1)).cache(), equalTo(10));
+  }
+
+  @Test
+  public void testLoadInvalidStream() throws Exception {
+    expectedEx.expect(GidException.class);
+    ConfigLoader.load(new ByteArrayInputStream(
+        "<sequences xmlns=\"http://f150.oschina.io/raptor-gid/gid\"><breadcrumb cache=\"-1\"/></sequences>"
+            .getBytes("UTF-8")), "invalid");
+  }
 
 }
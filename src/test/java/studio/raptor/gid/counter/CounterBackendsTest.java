@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+
+/**
+ * 计数器后端测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class CounterBackendsTest {
+
+  private static TestingServer server;
+
+  private static CuratorFramework client;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_backend");
+    client.blockUntilConnected();
+    CounterBackends.register(new MemoryCounterBackend());
+  }
+
+  @AfterClass
+  public static void afterClass() throws IOException {
+    client.close();
+    server.stop();
+  }
+
+  @Test
+  public void testDefaultBackend() throws Exception {
+    assertTrue(CounterBackends.get(ZookeeperCounterBackend.NAME) instanceof ZookeeperCounterBackend);
+  }
+
+  @Test(expected = GidException.class)
+  public void testUnknownBackend() throws Exception {
+    new Breadcrumb(new ImmutableBreadcrumbDef("unknown", 0, 1, 0, 0, 1, "not_exists"), client);
+  }
+
+  @Test
+  public void testCustomBackend() throws Exception {
+    // 缓冲与分片建立在自定义后端之上
+    Breadcrumb breadcrumb = new Breadcrumb(
+        new ImmutableBreadcrumbDef("memory_seq", 100, 1, 0, 0, 2, "memory"), client);
+    assertTrue(breadcrumb.warmup(1.0, 5000));
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 50; i++) {
+      assertTrue(ids.add(breadcrumb.nextLong()));
+    }
+    String path = Breadcrumb.SEQ_ROOT_PATH + "memory_seq";
+    assertTrue(MemoryCounterBackend.counters.containsKey(path + "/shard-0"));
+    assertTrue(MemoryCounterBackend.counters.containsKey(path + "/shard-1"));
+    assertNull(client.checkExists().forPath(path));
+  }
+
+  @Test
+  public void testBackendWithoutZookeeper() throws Exception {
+    // 不依赖zookeeper的后端无需zk客户端，且应急储备不跟随zk连接状态
+    Breadcrumb breadcrumb = new Breadcrumb(
+        new ImmutableBreadcrumbDef("memory_nozk", 10, 1, 0, 100, 1, "memory"), null);
+    assertTrue(breadcrumb.warmup(1.0, 5000));
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 50; i++) {
+      assertTrue(ids.add(breadcrumb.nextLong()));
+    }
+    breadcrumb.close();
+  }
+
+  @Test(expected = GidException.class)
+  public void testZookeeperBackendRequiresClient() throws Exception {
+    new Breadcrumb(new ImmutableBreadcrumbDef("zk_noclient", 0, 1, 0, 0, 1,
+        ZookeeperCounterBackend.NAME), null);
+  }
+
+  /**
+   * 内存计数器后端
+   */
+  private static class MemoryCounterBackend implements CounterBackend {
+
+    private static final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    @Override
+    public String name() {
+      return "memory";
+    }
+
+    @Override
+    public Counter create(final String path, CounterContext context) {
+      return new Counter() {
+        @Override
+        public boolean initialize(long start) {
+          return null == counters.putIfAbsent(path, new AtomicLong(start));
+        }
+
+        @Override
+        public long get() {
+          AtomicLong value = counters.get(path);
+          return null == value ? 0 : value.get();
+        }
+
+        @Override
+        public long getAndAdd(long delta) {
+          return counters.get(path).getAndAdd(delta);
+        }
+
+        @Override
+        public void forceSet(long value) {
+          counters.put(path, new AtomicLong(value));
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.counter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+
+/**
+ * 号段批量申请器测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class RefillBatcherTest {
+
+  private static TestingServer server;
+
+  private static CuratorFramework client;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_batcher");
+    client.blockUntilConnected();
+  }
+
+  @AfterClass
+  public static void afterClass() throws IOException {
+    client.close();
+    server.stop();
+  }
+
+  @Test
+  public void testLeaseManyCountersConcurrently() throws Exception {
+    final int counterNum = 20;
+    final int leasesPerCounter = 10;
+    final long delta = 100;
+
+    final RefillBatcher batcher = new RefillBatcher(client);
+    final ZookeeperCounter[] counters = new ZookeeperCounter[counterNum];
+    for (int i = 0; i < counterNum; i++) {
+      counters[i] = new ZookeeperCounter(client, "/raptor-sequences/batch" + i, batcher);
+      counters[i].initialize(0);
+    }
+
+    final Set<Long> starts = new ConcurrentSkipListSet<Long>();
+    final AtomicInteger failureCount = new AtomicInteger(0);
+    final CountDownLatch latch = new CountDownLatch(counterNum * leasesPerCounter);
+    for (int i = 0; i < counterNum; i++) {
+      for (int j = 0; j < leasesPerCounter; j++) {
+        final int index = i;
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              // 不同计数器的号段通过计数器编号区分
+              starts.add(index * 1000000L + counters[index].getAndAdd(delta));
+            } catch (Exception e) {
+              failureCount.incrementAndGet();
+            } finally {
+              latch.countDown();
+            }
+          }
+        }).start();
+      }
+    }
+    latch.await();
+    batcher.close();
+
+    assertEquals(0, failureCount.get());
+    assertEquals(counterNum * leasesPerCounter, starts.size());
+    for (int i = 0; i < counterNum; i++) {
+      assertEquals(delta * leasesPerCounter, counters[i].get());
+    }
+  }
+
+  @Test
+  public void testLeaseMixedWithSingleRefill() throws Exception {
+    RefillBatcher batcher = new RefillBatcher(client);
+    ZookeeperCounter batched = new ZookeeperCounter(client, "/raptor-sequences/mixed", batcher);
+    ZookeeperCounter single = new ZookeeperCounter(client, "/raptor-sequences/mixed", null);
+    batched.initialize(0);
+
+    long a = batched.getAndAdd(10);
+    long b = single.getAndAdd(10);
+    // 批量器缓存的版本号已过期，需重读后提交
+    long c = batched.getAndAdd(10);
+    batcher.close();
+
+    assertEquals(0, a);
+    assertEquals(10, b);
+    assertEquals(20, c);
+    assertTrue(single.get() == 30);
+  }
+}
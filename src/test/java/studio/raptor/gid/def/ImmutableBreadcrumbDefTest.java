@@ -0,0 +1,45 @@
+package studio.raptor.gid.def;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import studio.raptor.gid.common.GidException;
+
+/**
+ * ImmutableBreadcrumbDef测试用例。
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class ImmutableBreadcrumbDefTest {
+
+  @Test
+  public void testEquals() throws Exception {
+    ImmutableBreadcrumbDef def = new ImmutableBreadcrumbDef("immutable", 10, 1, 0, 0);
+    ImmutableBreadcrumbDef copy = ImmutableBreadcrumbDef.copyOf(new DefaultBreadcrumbDef() {
+      @Override
+      public String name() {
+        return "immutable";
+      }
+
+      @Override
+      public int cache() {
+        return 10;
+      }
+    });
+
+    assertEquals(def, copy);
+    assertEquals(def.hashCode(), copy.hashCode());
+    assertEquals(def.toString(), copy.toString());
+    assertSame(def, ImmutableBreadcrumbDef.copyOf(def));
+    assertNotEquals(def, new ImmutableBreadcrumbDef("immutable", 20, 1, 0, 0));
+  }
+
+  @Test(expected = GidException.class)
+  public void testValidate() throws Exception {
+    new ImmutableBreadcrumbDef("immutable", 10, 0, 0, 0);
+  }
+
+}
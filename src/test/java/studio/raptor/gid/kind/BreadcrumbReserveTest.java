@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.def.BreadcrumbDef;
+
+/**
+ * 面包屑序列应急储备测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class BreadcrumbReserveTest {
+
+  private TestingServer server;
+
+  private CuratorFramework client;
+
+  @Before
+  public void setup() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_reserve");
+    client.blockUntilConnected();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testServeFromReserveWhenSuspended() throws Exception {
+    Breadcrumb breadcrumb = newReserved("reserved");
+    assertTrue(breadcrumb.warmup(1.0, 5000));
+    awaitReserve(breadcrumb);
+
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 5; i++) {
+      ids.add(breadcrumb.nextId());
+    }
+
+    server.stop();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (client.getZookeeperClient().isConnected() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertFalse(client.getZookeeperClient().isConnected());
+
+    // 缓冲区最多剩余10个ID，之后从储备取号，取号线程不访问zk
+    for (int i = 0; i < 12; i++) {
+      long begin = System.currentTimeMillis();
+      assertTrue(ids.add(breadcrumb.nextId()));
+      assertTrue(System.currentTimeMillis() - begin < 1000);
+    }
+    assertTrue(breadcrumb.reserveUsed() > 0);
+    assertEquals(17, ids.size());
+  }
+
+  @Test
+  public void testResetAndCloseDiscardReserve() throws Exception {
+    Breadcrumb breadcrumb = newReserved("closed");
+    awaitReserve(breadcrumb);
+
+    breadcrumb.close();
+    breadcrumb.reset(100000);
+    assertEquals(0, breadcrumb.reserveRemaining());
+
+    // 关闭后不再申请新的储备号段，缓冲区也不再补号
+    Thread.sleep(2500);
+    assertEquals(0, breadcrumb.reserveRemaining());
+    try {
+      breadcrumb.nextId();
+      fail("closed breadcrumb should not refill");
+    } catch (GidException e) {
+      // expected
+    }
+  }
+
+  private Breadcrumb newReserved(final String name) throws GidException {
+    return new Breadcrumb(new BreadcrumbDef() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public int cache() {
+        return 10;
+      }
+
+      @Override
+      public long incr() {
+        return 1;
+      }
+
+      @Override
+      public long start() {
+        return 0;
+      }
+
+      @Override
+      public int reserve() {
+        return 60;
+      }
+    }, client);
+  }
+
+  private static void awaitReserve(Breadcrumb breadcrumb) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (breadcrumb.reserveRemaining() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertTrue(breadcrumb.reserveRemaining() >= 10);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.JdbcCounter;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+
+/**
+ * 数据库序列测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class DatabaseSequenceTest {
+
+  private JdbcDataSource dataSource;
+
+  private Connection keepAlive;
+
+  @Before
+  public void setup() throws Exception {
+    dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:test_dbseq");
+    // 内存库在最后一个连接关闭时销毁
+    keepAlive = dataSource.getConnection();
+    try (Statement stmt = keepAlive.createStatement()) {
+      stmt.execute("CREATE TABLE " + JdbcCounter.DEFAULT_TABLE
+          + " (seq_name VARCHAR(255) NOT NULL PRIMARY KEY, current_value BIGINT NOT NULL)");
+    }
+  }
+
+  @After
+  public void teardown() throws Exception {
+    keepAlive.close();
+  }
+
+  @Test
+  public void testNextIdWithoutCache() throws Exception {
+    DatabaseSequence sequence = new DatabaseSequence(
+        new ImmutableBreadcrumbDef("nocache", 0, 2, 100, 0), dataSource);
+    assertEquals(100, sequence.nextLong());
+    assertEquals(102, sequence.nextLong());
+    assertEquals(104, sequence.nextId());
+
+    sequence.reset(1000);
+    assertEquals(1000, sequence.nextLong());
+  }
+
+  @Test
+  public void testNextIdWithCache() throws Exception {
+    // 两个实例共用同一行计数器，模拟多个进程
+    ImmutableBreadcrumbDef def = new ImmutableBreadcrumbDef("cached", 100, 1, 0, 0);
+    DatabaseSequence first = new DatabaseSequence(def, dataSource);
+    DatabaseSequence second = new DatabaseSequence(def, dataSource);
+
+    Set<Long> ids = new HashSet<Long>();
+    long last = -1;
+    for (int round = 0; round < 20; round++) {
+      assertTrue(first.warmup(1.0, 5000));
+      assertTrue(second.warmup(1.0, 5000));
+      for (int i = 0; i < 80; i++) {
+        long id = first.nextLong();
+        // 单个实例内严格递增
+        assertTrue(id > last);
+        last = id;
+        assertTrue(ids.add(id));
+        assertTrue(ids.add(second.nextLong()));
+      }
+    }
+    assertEquals(3200, ids.size());
+  }
+
+  @Test
+  public void testManualCommitDataSource() throws Exception {
+    // 连接默认不自动提交时初始化与强制设置同样生效
+    JdbcDataSource manual = new JdbcDataSource();
+    manual.setURL("jdbc:h2:mem:test_dbseq;AUTOCOMMIT=OFF");
+    JdbcCounter counter = new JdbcCounter(manual, JdbcCounter.DEFAULT_TABLE, "manual");
+    assertTrue(counter.initialize(5));
+
+    JdbcCounter observer = new JdbcCounter(dataSource, JdbcCounter.DEFAULT_TABLE, "manual");
+    assertEquals(5, observer.get());
+    counter.forceSet(50);
+    assertEquals(50, observer.get());
+  }
+
+  @Test
+  public void testResetDuringRefill() throws Exception {
+    final JdbcCounter jdbcCounter = new JdbcCounter(dataSource, JdbcCounter.DEFAULT_TABLE,
+        "resetting");
+    final CountDownLatch leased = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Counter gated = new Counter() {
+      private volatile boolean first = true;
+
+      @Override
+      public boolean initialize(long start) throws GidException {
+        return jdbcCounter.initialize(start);
+      }
+
+      @Override
+      public long get() throws GidException {
+        return jdbcCounter.get();
+      }
+
+      @Override
+      public long getAndAdd(long delta) throws GidException {
+        long value = jdbcCounter.getAndAdd(delta);
+        // 构造时的首次申请不阻塞，其后的补号在重置前申请到旧号段后停住
+        if (!first) {
+          leased.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        first = false;
+        return value;
+      }
+
+      @Override
+      public void forceSet(long value) throws GidException {
+        jdbcCounter.forceSet(value);
+      }
+    };
+    DatabaseSequence sequence = new DatabaseSequence(
+        new ImmutableBreadcrumbDef("resetting", 100, 1, 0, 0), gated);
+    sequence.nextLong();
+    sequence.warmup(1.0, 0);
+    assertTrue(leased.await(5, TimeUnit.SECONDS));
+
+    sequence.reset(10000);
+    release.countDown();
+
+    // 重置前申请到的号段不会在重置后放入缓冲区
+    assertTrue(sequence.warmup(1.0, 5000));
+    for (int i = 0; i < 100; i++) {
+      assertTrue(sequence.nextLong() >= 10000);
+    }
+  }
+}
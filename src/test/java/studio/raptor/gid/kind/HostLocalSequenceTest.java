@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.common.IdUnavailableException;
+import studio.raptor.gid.counter.Counter;
+
+/**
+ * 主机内共享序列测试用例，以同一进程内的多个映射模拟多个进程
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class HostLocalSequenceTest {
+
+  private File file;
+
+  private CountingCounter counter;
+
+  @Before
+  public void setup() throws Exception {
+    file = File.createTempFile("gid_ring", ".ring");
+    file.delete();
+    counter = new CountingCounter();
+  }
+
+  @After
+  public void teardown() {
+    file.delete();
+  }
+
+  @Test
+  public void testClaimAcrossMappings() throws Exception {
+    SharedSegmentRing publisher = new SharedSegmentRing(file, 4);
+    SharedSegmentRing sibling = new SharedSegmentRing(file, 4);
+    assertTrue(publisher.tryPublish());
+    assertFalse(sibling.tryPublish());
+
+    assertTrue(publisher.publish(0, 1, 10));
+    assertTrue(publisher.publish(100, 2, 10));
+
+    long[] ids = new long[15];
+    assertEquals(10, sibling.claim(ids, 0, 15));
+    assertEquals(5, publisher.claim(ids, 10, 5));
+    assertEquals(9, ids[9]);
+    assertEquals(100, ids[10]);
+    assertEquals(108, ids[14]);
+    assertEquals(5, sibling.available());
+
+    // 已领完的号段槽位可被复用
+    for (int i = 0; i < 3; i++) {
+      assertTrue(publisher.publish(1000 * (i + 1), 1, 10));
+    }
+    assertFalse(publisher.publish(9000, 1, 10));
+
+    publisher.close();
+    assertTrue(sibling.tryPublish());
+    sibling.close();
+  }
+
+  @Test
+  public void testConcurrentSequences() throws Exception {
+    final HostLocalSequence leader = new HostLocalSequence("shared",
+        new SharedSegmentRing(file, 8), counter, 1, 500);
+    final HostLocalSequence follower = new HostLocalSequence("shared",
+        new SharedSegmentRing(file, 8), null, 1, 500);
+
+    final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    final int threads = 8;
+    final int perThread = 20000;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    final AtomicInteger failures = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      final HostLocalSequence sequence = t % 2 == 0 ? leader : follower;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            long[] batch = new long[10];
+            for (int i = 0; i < perThread; ) {
+              try {
+                sequence.nextIds(batch, 0, batch.length);
+              } catch (IdUnavailableException e) {
+                // 发布者来不及补充号段（单核机器上线程调度延迟可能超过取号超时），重试
+                if (e != IdUnavailableException.EXHAUSTED) {
+                  throw e;
+                }
+                continue;
+              }
+              for (long id : batch) {
+                ids.add(id);
+              }
+              i += batch.length;
+            }
+          } catch (RuntimeException e) {
+            failures.incrementAndGet();
+          } finally {
+            latch.countDown();
+          }
+        }
+      }).start();
+    }
+    latch.await();
+
+    assertEquals(0, failures.get());
+    assertEquals(threads * perThread, ids.size());
+    // 所有ID由一个发布者按号段申请
+    assertTrue(counter.leases.get() <= threads * perThread / 500 + 8);
+    assertTrue(leader.isPublisher());
+    assertFalse(follower.isPublisher());
+
+    follower.close();
+    leader.close();
+  }
+
+  /**
+   * 内存计数器
+   */
+  private static class CountingCounter implements Counter {
+
+    final AtomicLong value = new AtomicLong();
+
+    final AtomicInteger leases = new AtomicInteger();
+
+    @Override
+    public boolean initialize(long start) throws GidException {
+      return false;
+    }
+
+    @Override
+    public long get() throws GidException {
+      return value.get();
+    }
+
+    @Override
+    public long getAndAdd(long delta) throws GidException {
+      leases.incrementAndGet();
+      return value.getAndAdd(delta);
+    }
+
+    @Override
+    public void forceSet(long value) throws GidException {
+      this.value.set(value);
+    }
+  }
+}
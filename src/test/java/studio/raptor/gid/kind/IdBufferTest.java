@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.counter.Counter;
+import studio.raptor.gid.counter.ZookeeperCounter;
+import studio.raptor.gid.def.BreadcrumbDef;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+
+/**
+ * ID缓冲器测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class IdBufferTest {
+
+  private TestingServer server;
+
+  private CuratorFramework client;
+
+  @Before
+  public void setup() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_buffer");
+    client.blockUntilConnected();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testRampUpInitialLease() throws Exception {
+    BreadcrumbDef def = new BreadcrumbDef() {
+      @Override
+      public String name() {
+        return "ramp";
+      }
+
+      @Override
+      public int cache() {
+        return 1000;
+      }
+
+      @Override
+      public long incr() {
+        return 1;
+      }
+
+      @Override
+      public long start() {
+        return 0;
+      }
+    };
+    ZookeeperCounter counter = new ZookeeperCounter(client, Breadcrumb.SEQ_ROOT_PATH + "ramp",
+        null);
+    counter.initialize(0);
+    IdBuffer buffer = new IdBuffer(counter, def);
+
+    // 首次只申请1/8，立即可以取号
+    assertEquals(125, buffer.available());
+    assertEquals(125, counter.get());
+
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 2000; i++) {
+      assertTrue(ids.add(buffer.nextId()));
+    }
+    assertTrue(buffer.awaitFill(1000, 5000));
+  }
+
+  @Test
+  public void testBatchNextIds() throws Exception {
+    ZookeeperCounter counter = new ZookeeperCounter(client, Breadcrumb.SEQ_ROOT_PATH + "batch",
+        null);
+    counter.initialize(0);
+    IdBuffer buffer = new IdBuffer(counter, new ImmutableBreadcrumbDef("batch", 100, 1, 0, 0));
+
+    // 批量取号跨越多个号段，结果与逐个取号一致：唯一且递增
+    long[] ids = new long[1000];
+    buffer.nextIds(ids, 0, 500);
+    buffer.nextIds(ids, 500, 500);
+    for (int i = 1; i < ids.length; i++) {
+      assertTrue(ids[i] > ids[i - 1]);
+    }
+    assertTrue(buffer.nextId() > ids[ids.length - 1]);
+  }
+
+  @Test
+  public void testAsyncNeverRefillsOnCallerThread() throws Exception {
+    final ZookeeperCounter zkCounter = new ZookeeperCounter(client,
+        Breadcrumb.SEQ_ROOT_PATH + "async", null);
+    zkCounter.initialize(0);
+    final Set<Thread> refillThreads = Collections.newSetFromMap(
+        new ConcurrentHashMap<Thread, Boolean>());
+    Counter slowCounter = new Counter() {
+      @Override
+      public boolean initialize(long start) throws GidException {
+        return zkCounter.initialize(start);
+      }
+
+      @Override
+      public long get() throws GidException {
+        return zkCounter.get();
+      }
+
+      @Override
+      public long getAndAdd(long delta) throws GidException {
+        refillThreads.add(Thread.currentThread());
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          throw new GidException(e);
+        }
+        return zkCounter.getAndAdd(delta);
+      }
+
+      @Override
+      public void forceSet(long value) throws GidException {
+        zkCounter.forceSet(value);
+      }
+    };
+    IdBuffer buffer = new IdBuffer(slowCounter, new ImmutableBreadcrumbDef("async", 40, 1, 0, 0));
+    refillThreads.clear();
+
+    List<ListenableFuture<Long>> futures = new ArrayList<ListenableFuture<Long>>();
+    long begin = System.nanoTime();
+    for (int i = 0; i < 200; i++) {
+      futures.add(buffer.nextIdAsync());
+    }
+    // 缓冲区取空后只登记等待者，不在调用线程申请号段
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 150);
+
+    Set<Long> ids = new HashSet<Long>();
+    for (ListenableFuture<Long> future : futures) {
+      assertTrue(ids.add(future.get(10, TimeUnit.SECONDS)));
+    }
+    assertFalse(refillThreads.isEmpty());
+    assertFalse(refillThreads.contains(Thread.currentThread()));
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.counter.ZookeeperCounter;
+import studio.raptor.gid.def.BreadcrumbDef;
+
+/**
+ * 号段日志测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class SegmentJournalTest {
+
+  private TestingServer server;
+
+  private CuratorFramework client;
+
+  private File file;
+
+  private ZookeeperCounter counter;
+
+  private BreadcrumbDef def;
+
+  @Before
+  public void setup() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_journal");
+    client.blockUntilConnected();
+    def = new BreadcrumbDef() {
+      @Override
+      public String name() {
+        return "journaled";
+      }
+
+      @Override
+      public int cache() {
+        return 100;
+      }
+
+      @Override
+      public long incr() {
+        return 1;
+      }
+
+      @Override
+      public long start() {
+        return 0;
+      }
+    };
+    counter = new ZookeeperCounter(client, Breadcrumb.SEQ_ROOT_PATH + "journaled", null);
+    file = File.createTempFile("gid", ".journal");
+    file.delete();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+    file.delete();
+  }
+
+  @Test
+  public void testResumeWithoutZookeeperWrite() throws Exception {
+    SegmentJournal journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb breadcrumb = new Breadcrumb(def, client, null, journal);
+    // 等待号段增长完成，避免后台申请改变计数器
+    assertTrue(breadcrumb.warmup(1.0, 5000));
+    Set<Long> ids = new HashSet<Long>();
+    long last = 0;
+    for (int i = 0; i < 10; i++) {
+      last = breadcrumb.nextId();
+      ids.add(last);
+    }
+    long value = counter.get();
+    journal.close();
+
+    journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb restarted = new Breadcrumb(def, client, null, journal);
+    // 从日志恢复，计数器未变
+    assertEquals(value, counter.get());
+    long next = restarted.nextId();
+    assertTrue(next > last);
+    assertTrue(ids.add(next));
+    journal.close();
+  }
+
+  @Test
+  public void testDiscardForOtherOwner() throws Exception {
+    SegmentJournal journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb breadcrumb = new Breadcrumb(def, client, null, journal);
+    // 等待增长阶段的申请完成，否则读取计数器后仍可能有号段申请
+    assertTrue(breadcrumb.warmup(1.0, 5000));
+    long value = counter.get();
+    journal.close();
+
+    journal = SegmentJournal.open(file, "test_journal", "node2");
+    Breadcrumb other = new Breadcrumb(def, client, null, journal);
+    assertEquals(value, other.nextId());
+    journal.close();
+  }
+
+  @Test
+  public void testDiscardAfterReset() throws Exception {
+    SegmentJournal journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb breadcrumb = new Breadcrumb(def, client, null, journal);
+    breadcrumb.nextId();
+    breadcrumb.reset(1000);
+    journal.close();
+
+    journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb restarted = new Breadcrumb(def, client, null, journal);
+    assertEquals(1000, restarted.nextId());
+    journal.close();
+  }
+
+  @Test
+  public void testResumeKeepsLeaseTime() throws Exception {
+    SegmentJournal journal = new SegmentJournal(file, "test_journal", "node1", 16, 600);
+    journal.slot("journaled").record(0, 1, 100);
+    journal.close();
+    Thread.sleep(400);
+
+    // 恢复后重新记录，租期从原申请时间算起
+    journal = new SegmentJournal(file, "test_journal", "node1", 16, 600);
+    long[] segment = journal.slot("journaled").recover();
+    assertNotNull(segment);
+    journal.slot("journaled").resume(segment[0], segment[1], segment[2], segment[3]);
+    journal.close();
+    Thread.sleep(400);
+
+    journal = new SegmentJournal(file, "test_journal", "node1", 16, 600);
+    assertNull(journal.slot("journaled").recover());
+    journal.close();
+  }
+
+  @Test
+  public void testHandOverToReplacement() throws Exception {
+    SegmentJournal journal = SegmentJournal.open(file, "test_journal", "node1");
+    Breadcrumb old = new Breadcrumb(def, client, null, journal);
+    assertTrue(old.warmup(1.0, 5000));
+    long leased = counter.get();
+
+    // 同名新实例不恢复旧实例缓冲区中的ID
+    Breadcrumb replacement = new Breadcrumb(def, client, null, journal);
+    assertTrue(replacement.warmup(1.0, 5000));
+    assertTrue(replacement.nextId() >= leased);
+
+    // 旧实例关闭不影响新实例的记录，重启后仍可恢复
+    old.close();
+    long value = counter.get();
+    journal.close();
+
+    journal = SegmentJournal.open(file, "test_journal", "node1");
+    new Breadcrumb(def, client, null, journal);
+    assertEquals(value, counter.get());
+    journal.close();
+  }
+
+  @Test
+  public void testReclaim() throws Exception {
+    SegmentJournal journal = new SegmentJournal(file, "test_journal", "node1", 16, 60000);
+    SegmentJournal.Slot old = journal.claim("journaled");
+    old.record(0, 1, 100);
+
+    SegmentJournal.Slot successor = journal.claim("journaled");
+    assertNull(successor.recover());
+    successor.record(1000, 1, 100);
+    // 转交后旧槽位不再写入
+    old.record(2000, 1, 100);
+    old.clear();
+    assertEquals(1000, successor.recover()[0]);
+
+    // 新实例创建失败，旧实例取回槽位
+    old.reclaim();
+    successor.record(3000, 1, 100);
+    old.record(200, 1, 100);
+    journal.close();
+
+    journal = new SegmentJournal(file, "test_journal", "node1", 16, 60000);
+    assertEquals(200, journal.claim("journaled").recover()[0]);
+    journal.close();
+  }
+
+  @Test
+  public void testExclusiveOwnership() throws Exception {
+    SegmentJournal journal = SegmentJournal.open(file, "test_journal", "node1");
+    try {
+      SegmentJournal.open(file, "test_journal", "node1");
+      fail("journal should be held exclusively");
+    } catch (GidException e) {
+      // expected
+    } finally {
+      journal.close();
+    }
+  }
+}
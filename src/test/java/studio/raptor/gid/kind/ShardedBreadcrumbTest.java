@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.kind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.counter.Stripe;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+
+/**
+ * 分片面包屑序列测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class ShardedBreadcrumbTest {
+
+  private TestingServer server;
+
+  private CuratorFramework client;
+
+  @Before
+  public void setup() throws Exception {
+    server = new TestingServer();
+    client = CuratorUtil.newClient(server.getConnectString(), "test_sharded");
+    client.blockUntilConnected();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testInterleavedShards() throws Exception {
+    ImmutableBreadcrumbDef def = new ImmutableBreadcrumbDef("sharded", 50, 1, 0, 0, 4);
+    Breadcrumb first = new Breadcrumb(def, client);
+    Breadcrumb second = new Breadcrumb(def, client);
+
+    Set<Long> ids = new HashSet<Long>();
+    Set<Long> lanes = new HashSet<Long>();
+    for (int round = 0; round < 50; round++) {
+      // 每轮取号不超过缓存大小，避免补号未完成时缓冲区被取空
+      assertTrue(first.warmup(1.0, 5000));
+      assertTrue(second.warmup(1.0, 5000));
+      for (int i = 0; i < 40; i++) {
+        long a = first.nextLong();
+        long b = second.nextLong();
+        assertTrue(ids.add(a));
+        assertTrue(ids.add(b));
+        lanes.add(a % 4);
+        lanes.add(b % 4);
+      }
+    }
+    // 号段分散到了各分片
+    assertEquals(4, lanes.size());
+    for (int i = 0; i < 4; i++) {
+      assertNotNull(client.checkExists()
+          .forPath(Breadcrumb.SEQ_ROOT_PATH + "sharded/shard-" + i));
+    }
+  }
+
+  @Test
+  public void testDatacenterStripes() throws Exception {
+    // 第二个数据中心使用独立的zk集群
+    TestingServer remoteServer = new TestingServer();
+    CuratorFramework remoteClient = CuratorUtil
+        .newClient(remoteServer.getConnectString(), "test_sharded");
+    try {
+      remoteClient.blockUntilConnected();
+      ImmutableBreadcrumbDef def = new ImmutableBreadcrumbDef("striped", 0, 1, 0, 0, 2);
+      Breadcrumb local = new Breadcrumb(def, client, null, null, new Stripe(0, 2));
+      Breadcrumb remote = new Breadcrumb(def, remoteClient, null, null, new Stripe(1, 2));
+
+      Set<Long> ids = new HashSet<Long>();
+      for (int i = 0; i < 200; i++) {
+        long a = local.nextLong();
+        long b = remote.nextLong();
+        assertTrue(ids.add(a));
+        assertTrue(ids.add(b));
+        // 数据中心0持有通道0、1，数据中心1持有通道2、3
+        assertTrue(a % 4 < 2);
+        assertTrue(b % 4 >= 2);
+      }
+      String path = Breadcrumb.SEQ_ROOT_PATH + "striped/";
+      assertNotNull(client.checkExists().forPath(path + "dc-0/shard-1"));
+      assertNull(client.checkExists().forPath(path + "dc-1"));
+      assertNotNull(remoteClient.checkExists().forPath(path + "dc-1/shard-0"));
+    } finally {
+      remoteClient.close();
+      remoteServer.close();
+    }
+  }
+
+  @Test
+  public void testSwitchFromSingleCounter() throws Exception {
+    Breadcrumb single = new Breadcrumb(new ImmutableBreadcrumbDef("switched", 0, 1, 0, 0), client);
+    long last = 0;
+    for (int i = 0; i < 100; i++) {
+      last = single.nextLong();
+    }
+
+    Breadcrumb sharded = new Breadcrumb(new ImmutableBreadcrumbDef("switched", 0, 1, 0, 0, 3),
+        client);
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 30; i++) {
+      long id = sharded.nextLong();
+      assertTrue(id > last);
+      assertTrue(ids.add(id));
+    }
+  }
+
+  @Test
+  public void testLegacyInstanceAfterSwitch() throws Exception {
+    Breadcrumb legacy = new Breadcrumb(new ImmutableBreadcrumbDef("fenced", 0, 1, 0, 0), client);
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(ids.add(legacy.nextLong()));
+    }
+
+    // 切换后仍按原配置运行的实例继续租用，与通道的号段不重叠
+    Breadcrumb sharded = new Breadcrumb(new ImmutableBreadcrumbDef("fenced", 0, 1, 0, 0, 3),
+        client);
+    Breadcrumb another = new Breadcrumb(new ImmutableBreadcrumbDef("fenced", 0, 1, 0, 0, 3),
+        client);
+    for (int i = 0; i < 300; i++) {
+      assertTrue(ids.add(legacy.nextLong()));
+      assertTrue(ids.add(sharded.nextLong()));
+      assertTrue(ids.add(another.nextLong()));
+    }
+  }
+}
@@ -4,12 +4,15 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.test.TestingServer;
 import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import studio.raptor.gid.common.CuratorUtil;
@@ -115,6 +118,25 @@ public class SnowflakeTest {
     Assert.assertTrue(ids.size() == loopCount);
   }
 
+  /**
+   * 测试批量取号与单个取号的唯一性
+   */
+  @Test
+  public void testNextIds() throws Exception {
+    Snowflake snowflake = new Snowflake(sequenceDef, sysid, client);
+    long[] dst = new long[10002];
+    snowflake.nextIds(dst, 1, 10000);
+    dst[10001] = snowflake.nextLong();
+
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 1; i < dst.length; i++) {
+      Assert.assertTrue(dst[i] > dst[i - 1]);
+      ids.add(dst[i]);
+    }
+    Assert.assertEquals(0, dst[0]);
+    Assert.assertEquals(10001, ids.size());
+  }
+
   /**
    * 测试生产ID的性能
    */
@@ -139,4 +161,46 @@ public class SnowflakeTest {
 
   }
 
-}
\ No newline at end of file
+  /**
+   * 测试大量虚拟线程并发取号（需运行在Java 21及以上，否则跳过）
+   */
+  @Test
+  public void testVirtualThreads() throws Exception {
+    ExecutorService virtualExecutor;
+    try {
+      virtualExecutor = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      virtualExecutor = null;
+    }
+    Assume.assumeNotNull(virtualExecutor);
+
+    final Snowflake snowflake = new Snowflake(sequenceDef, sysid, client);
+    final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    final int threadCount = 100000;
+    final CountDownLatch latch = new CountDownLatch(threadCount);
+
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < threadCount; ++i) {
+      virtualExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ids.add(snowflake.nextLong());
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+    latch.await();
+    virtualExecutor.shutdown();
+
+    long cost = Math.max(System.currentTimeMillis() - start, 1);
+    System.out.println("snowflake -> " + threadCount + " virtual threads,costs " + cost
+        + " ms,tps " + threadCount * 1000L / cost);
+    Assert.assertEquals(threadCount, ids.size());
+  }
+
+}
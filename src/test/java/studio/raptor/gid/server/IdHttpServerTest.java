@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+
+/**
+ * 序列服务HTTP接口测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class IdHttpServerTest {
+
+  private TestingServer zkServer;
+
+  private Sequencer sequencer;
+
+  private IdHttpServer server;
+
+  @Before
+  public void setup() throws Exception {
+    zkServer = new TestingServer();
+    sequencer = new Sequencer(zkServer.getConnectString(), "test_http", "/not_exist_file.xml",
+        "127.0.0.1", 8080);
+    sequencer.startupWithoutLoad();
+    sequencer.add(new ImmutableBreadcrumbDef("order", 1000, 1, 0, 0));
+
+    server = new IdHttpServer(sequencer, new InetSocketAddress("127.0.0.1", 0));
+    server.start();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    server.close();
+    sequencer.shutdown();
+    zkServer.close();
+  }
+
+  @Test
+  public void testText() throws Exception {
+    HttpURLConnection connection = open("order?count=2500");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals(IdHttpServer.TEXT, connection.getContentType());
+
+    String body;
+    try (InputStream in = connection.getInputStream()) {
+      body = new String(ByteStreams.toByteArray(in), Charsets.US_ASCII);
+    }
+    Set<Long> ids = new HashSet<Long>();
+    for (String line : body.split("\n")) {
+      ids.add(Long.parseLong(line));
+    }
+    assertEquals(2500, ids.size());
+  }
+
+  @Test
+  public void testBinary() throws Exception {
+    Set<Long> ids = new HashSet<Long>();
+    // 同一连接上多次请求
+    for (int round = 0; round < 3; round++) {
+      HttpURLConnection connection = open("order?count=100000&format=binary");
+      assertEquals(200, connection.getResponseCode());
+      assertEquals(IdHttpServer.BINARY, connection.getContentType());
+      try (DataInputStream in = new DataInputStream(connection.getInputStream())) {
+        for (int i = 0; i < 100000; i++) {
+          ids.add(in.readLong());
+        }
+        assertEquals(-1, in.read());
+      }
+    }
+    assertEquals(300000, ids.size());
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    assertEquals(404, open("not_exists?count=1").getResponseCode());
+    assertEquals(400, open("order?count=0").getResponseCode());
+    assertEquals(400, open("order?count=abc").getResponseCode());
+    assertEquals(400, open("order?count=" + (IdHttpServer.MAX_COUNT + 1)).getResponseCode());
+  }
+
+  private HttpURLConnection open(String path) throws Exception {
+    URL url = new URL("http://127.0.0.1:" + server.getPort() + IdHttpServer.CONTEXT + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setReadTimeout(10000);
+    return connection;
+  }
+}
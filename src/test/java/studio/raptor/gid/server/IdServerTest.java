@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+
+/**
+ * 序列服务测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class IdServerTest {
+
+  private TestingServer zkServer;
+
+  private Sequencer sequencer;
+
+  private IdServer server;
+
+  private Socket socket;
+
+  @Before
+  public void setup() throws Exception {
+    zkServer = new TestingServer();
+    sequencer = new Sequencer(zkServer.getConnectString(), "test_server", "/not_exist_file.xml",
+        "127.0.0.1", 8080);
+    sequencer.startupWithoutLoad();
+    sequencer.add(new ImmutableBreadcrumbDef("order", 1000, 1, 0, 0));
+
+    server = new IdServer(sequencer, new InetSocketAddress("127.0.0.1", 0));
+    server.start();
+    socket = new Socket("127.0.0.1", server.getPort());
+    socket.setSoTimeout(10000);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    socket.close();
+    server.close();
+    sequencer.shutdown();
+    zkServer.close();
+  }
+
+  @Test
+  public void testNextIds() throws Exception {
+    send(Protocol.OP_NEXT_ID, 1, "order", 1);
+    long[] first = receive(1);
+    assertEquals(1, first.length);
+
+    // 超过缓冲区大小的批量取号
+    send(Protocol.OP_NEXT_IDS, 2, "order", 5000);
+    long[] batch = receive(2);
+    assertEquals(5000, batch.length);
+
+    Set<Long> ids = new HashSet<Long>();
+    ids.add(first[0]);
+    for (long id : batch) {
+      assertTrue(id > first[0]);
+      ids.add(id);
+    }
+    assertEquals(5001, ids.size());
+  }
+
+  @Test
+  public void testPipelining() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      send(Protocol.OP_NEXT_IDS, i, "order", 10);
+    }
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 100; i++) {
+      for (long id : receive(i)) {
+        ids.add(id);
+      }
+    }
+    assertEquals(1000, ids.size());
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    sequencer.add(new ImmutableBreadcrumbDef("bulk", 100000, 1, 0, 0));
+    // 不读取响应持续发送，待发送数据超过高水位后服务端暂停读取，发送线程随之阻塞
+    final int requests = 40;
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < requests; i++) {
+            send(Protocol.OP_NEXT_IDS, i, "bulk", Protocol.MAX_BATCH);
+          }
+        } catch (IOException e) {
+          // 由接收端断言
+        }
+      }
+    });
+    sender.start();
+    Thread.sleep(500);
+
+    // 开始读取后全部请求按序完成
+    long last = -1;
+    for (int i = 0; i < requests; i++) {
+      long[] ids = receive(i);
+      assertEquals(Protocol.MAX_BATCH, ids.length);
+      assertTrue(ids[0] > last);
+      last = ids[ids.length - 1];
+    }
+    sender.join(10000);
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    send(Protocol.OP_NEXT_ID, 1, "not_exists", 1);
+    assertEquals(Protocol.STATUS_NOT_FOUND, receiveError(1));
+
+    send(Protocol.OP_NEXT_IDS, 2, "order", 0);
+    assertEquals(Protocol.STATUS_BAD_REQUEST, receiveError(2));
+
+    send((byte) 99, 3, "order", 1);
+    assertEquals(Protocol.STATUS_BAD_REQUEST, receiveError(3));
+
+    // 出错后连接仍可用
+    send(Protocol.OP_NEXT_ID, 4, "order", 1);
+    assertEquals(1, receive(4).length);
+  }
+
+  private void send(byte opcode, int requestId, String name, int count) throws IOException {
+    byte[] bytes = name.getBytes(Charsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(Protocol.requestSize(bytes));
+    Protocol.writeRequest(buffer, opcode, requestId, bytes, count);
+    socket.getOutputStream().write(buffer.array());
+  }
+
+  private long[] receive(int requestId) throws IOException {
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    in.readInt();
+    assertEquals(requestId, in.readInt());
+    assertEquals(Protocol.STATUS_OK, in.readByte());
+    long[] ids = new long[in.readInt()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = in.readLong();
+    }
+    return ids;
+  }
+
+  private byte receiveError(int requestId) throws IOException {
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    in.readInt();
+    assertEquals(requestId, in.readInt());
+    byte status = in.readByte();
+    in.readFully(new byte[in.readShort()]);
+    return status;
+  }
+}
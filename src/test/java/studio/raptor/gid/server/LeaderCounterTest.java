@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.counter.CounterBackends;
+import studio.raptor.gid.counter.ZookeeperCounter;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+
+/**
+ * 领导者计数器测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class LeaderCounterTest {
+
+  private TestingServer zkServer;
+
+  private List<Node> nodes = new ArrayList<Node>();
+
+  @Before
+  public void setup() throws Exception {
+    zkServer = new TestingServer();
+    for (int i = 0; i < 3; i++) {
+      nodes.add(new Node(i));
+    }
+    new ZookeeperCounter(nodes.get(0).zkClient, Breadcrumb.SEQ_ROOT_PATH + "order", null)
+        .initialize(0);
+    for (Node node : nodes) {
+      node.counter.start();
+    }
+  }
+
+  @After
+  public void teardown() throws Exception {
+    for (Node node : nodes) {
+      node.close();
+    }
+    zkServer.close();
+  }
+
+  @Test
+  public void testSingleWriter() throws Exception {
+    Node leader = awaitLeader();
+    ZookeeperCounter zkCounter = new ZookeeperCounter(leader.zkClient,
+        Breadcrumb.SEQ_ROOT_PATH + "order", null);
+    long before = zkCounter.get();
+
+    Set<Long> starts = new HashSet<Long>();
+    for (int i = 0; i < 30; i++) {
+      for (Node node : nodes) {
+        long start = node.counter.getAndAdd(10);
+        for (long id = start; id < start + 10; id++) {
+          assertTrue(starts.add(id));
+        }
+      }
+    }
+    assertEquals(900, starts.size());
+    // 只有领导者按大号段写zookeeper
+    assertEquals(1000, zkCounter.get() - before);
+  }
+
+  @Test
+  public void testFailover() throws Exception {
+    Node leader = awaitLeader();
+    Set<Long> ids = new HashSet<Long>();
+    for (Node node : nodes) {
+      long start = node.counter.getAndAdd(10);
+      for (long id = start; id < start + 10; id++) {
+        assertTrue(ids.add(id));
+      }
+    }
+
+    leader.close();
+    nodes.remove(leader);
+    Node successor = awaitLeader();
+    assertFalse(leader == successor);
+
+    for (Node node : nodes) {
+      long start = node.counter.getAndAdd(10);
+      for (long id = start; id < start + 10; id++) {
+        assertTrue(ids.add(id));
+      }
+    }
+  }
+
+  @Test
+  public void testUnreachableLeader() throws Exception {
+    Node leader = awaitLeader();
+    Node follower = nodes.get(0) == leader ? nodes.get(1) : nodes.get(0);
+    // 领导者仍持有身份但序列服务不可达
+    leader.server.close();
+
+    Set<Long> ids = new HashSet<Long>();
+    long begin = System.currentTimeMillis();
+    for (int i = 0; i < 20; i++) {
+      long start = follower.counter.getAndAdd(10);
+      for (long id = start; id < start + 10; id++) {
+        assertTrue(ids.add(id));
+      }
+    }
+    // 首次失败后熔断，后续取号直接写zookeeper
+    assertTrue(System.currentTimeMillis() - begin < 3000);
+  }
+
+  @Test
+  public void testBackend() throws Exception {
+    Node node = nodes.get(0);
+    LeaderCounterBackend backend = new LeaderCounterBackend(node.proxy, node.endpoint);
+    CounterBackends.register(backend);
+    Breadcrumb breadcrumb = new Breadcrumb(
+        new ImmutableBreadcrumbDef("item", 10, 1, 0, 0, 1, LeaderCounterBackend.NAME),
+        node.zkClient);
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(ids.add(breadcrumb.nextLong()));
+    }
+    // 唯一的参与者成为领导者，经由本节点代理租用
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!node.proxy.isServing("item") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(node.proxy.isServing("item"));
+
+    breadcrumb.close();
+    backend.close();
+    assertFalse(node.proxy.isServing("item"));
+  }
+
+  private Node awaitLeader() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline) {
+      for (Node node : nodes) {
+        if (node.counter.isLeader() && node.proxy.isServing("order") && isFollowed(node)) {
+          return node;
+        }
+      }
+      Thread.sleep(20);
+    }
+    throw new AssertionError("No leader elected");
+  }
+
+  /**
+   * 其他节点是否都已缓存该领导者
+   */
+  private boolean isFollowed(Node leader) {
+    for (Node node : nodes) {
+      if (node != leader && !leader.endpoint.equals(node.counter.leaderEndpoint())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 模拟一个应用节点
+   */
+  private class Node {
+
+    final CuratorFramework zkClient;
+
+    final Sequencer sequencer;
+
+    final SegmentProxy proxy;
+
+    final IdServer server;
+
+    final LeaderCounter counter;
+
+    final String endpoint;
+
+    Node(int index) throws Exception {
+      zkClient = CuratorUtil.newClient(zkServer.getConnectString(), "test_leader");
+      sequencer = new Sequencer(zkServer.getConnectString(), "test_leader", "/not_exist_file.xml",
+          "127.0.0.1", 8080 + index);
+      sequencer.startupWithoutLoad();
+      proxy = new SegmentProxy(1000);
+      server = new IdServer(sequencer, new InetSocketAddress("127.0.0.1", 0));
+      server.setSegmentProxy(proxy);
+      server.start();
+      endpoint = "127.0.0.1:" + server.getPort();
+      counter = new LeaderCounter(zkClient, "order", 1,
+          new ZookeeperCounter(zkClient, Breadcrumb.SEQ_ROOT_PATH + "order", null), proxy,
+          endpoint);
+    }
+
+    void close() {
+      counter.close();
+      server.close();
+      sequencer.shutdown();
+      zkClient.close();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package studio.raptor.gid.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import studio.raptor.gid.Sequencer;
+import studio.raptor.gid.client.IdClient;
+import studio.raptor.gid.client.ProxyCounter;
+import studio.raptor.gid.client.ProxyCounterBackend;
+import studio.raptor.gid.common.CuratorUtil;
+import studio.raptor.gid.common.GidException;
+import studio.raptor.gid.counter.CounterBackends;
+import studio.raptor.gid.counter.ZookeeperCounter;
+import studio.raptor.gid.def.ImmutableBreadcrumbDef;
+import studio.raptor.gid.kind.Breadcrumb;
+import studio.raptor.gid.kind.IdBuffer;
+import studio.raptor.gid.kind.SegmentJournal;
+
+/**
+ * 号段代理测试用例
+ *
+ * @author bruce
+ * @since 0.2
+ */
+public class SegmentProxyTest {
+
+  private ImmutableBreadcrumbDef def;
+
+  private TestingServer zkServer;
+
+  private Sequencer sequencer;
+
+  private CuratorFramework zkClient;
+
+  private SegmentProxy proxy;
+
+  private IdServer server;
+
+  private IdClient client;
+
+  @Before
+  public void setup() throws Exception {
+    zkServer = new TestingServer();
+    sequencer = new Sequencer(zkServer.getConnectString(), "test_proxy", "/not_exist_file.xml",
+        "127.0.0.1", 8080);
+    sequencer.startupWithoutLoad();
+    def = new ImmutableBreadcrumbDef("order", 100, 1, 0, 0);
+    sequencer.add(def);
+    zkClient = CuratorUtil.newClient(zkServer.getConnectString(), "test_proxy");
+
+    server = new IdServer(sequencer, new InetSocketAddress("127.0.0.1", 0));
+    proxy = new SegmentProxy(sequencer, zkClient, 1000);
+    server.setSegmentProxy(proxy);
+    server.start();
+    client = new IdClient("127.0.0.1", server.getPort(), 1);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.close();
+    server.close();
+    proxy.close();
+    zkClient.close();
+    sequencer.shutdown();
+    zkServer.close();
+  }
+
+  @Test
+  public void testLeaseThroughProxy() throws Exception {
+    long before = counter().get();
+    IdBuffer first = new IdBuffer(new ProxyCounter(client, "order", 1), def);
+    IdBuffer second = new IdBuffer(new ProxyCounter(client, "order", 1), def);
+
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 500; i++) {
+      ids.add(first.nextLong());
+      ids.add(second.nextLong());
+    }
+    assertEquals(1000, ids.size());
+
+    // zookeeper只按大号段推进
+    long leased = counter().get() - before;
+    assertTrue(leased > 0 && leased % 1000 == 0);
+  }
+
+  @Test
+  public void testFailover() throws Exception {
+    SegmentProxy primary = new SegmentProxy(sequencer, zkClient, 1000);
+    long[] a = primary.lease("order", 10, "node-a");
+    List<SegmentProxy.SubLease> leases = primary.outstanding("order");
+    assertEquals(1, leases.size());
+    assertEquals("node-a", leases.get(0).lessee());
+    assertEquals(a[0], leases.get(0).start());
+    primary.close();
+
+    // 新代理接替后申请新的大号段，不与故障代理的号段重叠
+    SegmentProxy standby = new SegmentProxy(sequencer, zkClient, 1000);
+    long[] b = standby.lease("order", 10, "node-b");
+    assertTrue(b[0] >= a[0] + 1000);
+
+    // 前任代理租出的号段从台账节点读入
+    leases = standby.outstanding("order");
+    assertEquals(2, leases.size());
+    assertEquals("node-a", leases.get(0).lessee());
+    assertEquals(a[0], leases.get(0).start());
+    assertEquals("node-b", leases.get(1).lessee());
+    standby.close();
+  }
+
+  @Test
+  public void testConcurrentProxies() throws Exception {
+    SegmentProxy first = new SegmentProxy(sequencer, zkClient, 1000);
+    SegmentProxy second = new SegmentProxy(sequencer, zkClient, 1000);
+    first.lease("order", 10, "node-a");
+    second.lease("order", 10, "node-b");
+    first.lease("order", 10, "node-a");
+    second.lease("order", 10, "node-b");
+
+    // 两个代理同时存活，各自的台账都持续写入，互不接管
+    Thread.sleep(2500);
+    String firstLedger = ledger(first);
+    String secondLedger = ledger(second);
+    assertEquals(2, firstLedger.split("\n").length);
+    assertTrue(firstLedger.contains("node-a"));
+    assertFalse(firstLedger.contains("node-b"));
+    assertEquals(2, secondLedger.split("\n").length);
+    assertTrue(secondLedger.contains("node-b"));
+    assertFalse(secondLedger.contains("node-a"));
+
+    first.lease("order", 10, "node-a");
+    Thread.sleep(2500);
+    assertEquals(3, ledger(first).split("\n").length);
+    assertEquals(3, first.outstanding("order").size());
+
+    // 一个代理关闭后，新代理只接管它的台账
+    first.close();
+    SegmentProxy standby = new SegmentProxy(sequencer, zkClient, 1000);
+    standby.lease("order", 10, "node-c");
+    assertEquals(4, standby.outstanding("order").size());
+    assertEquals(2, second.outstanding("order").size());
+    standby.close();
+    second.close();
+  }
+
+  @Test(expected = GidException.class)
+  public void testRejectShardedSequence() throws Exception {
+    sequencer.add(new ImmutableBreadcrumbDef("sharded", 100, 1, 0, 0, 2));
+    proxy.lease("sharded", 10, "node-a");
+  }
+
+  @Test
+  public void testProxyBackend() throws Exception {
+    CounterBackends.register(new ProxyCounterBackend(client));
+    Breadcrumb breadcrumb = new Breadcrumb(
+        new ImmutableBreadcrumbDef("order", 100, 1, 0, 0, 1, ProxyCounterBackend.NAME), null);
+    long before = counter().get();
+    Set<Long> ids = new HashSet<Long>();
+    for (int i = 0; i < 500; i++) {
+      assertTrue(ids.add(breadcrumb.nextLong()));
+      assertTrue(ids.add(sequencer.get("order").nextId()));
+    }
+    breadcrumb.close();
+    assertTrue(counter().get() > before);
+  }
+
+  @Test
+  public void testProxyBackendDiscardsJournal() throws Exception {
+    CounterBackends.register(new ProxyCounterBackend(client));
+    File file = File.createTempFile("gid", ".journal");
+    file.delete();
+    try {
+      // 上次运行非正常退出，日志中留有未发完的号段
+      SegmentJournal journal = SegmentJournal.open(file, "test_proxy", "node1");
+      journal.slot("order").record(1000000, 1, 100);
+      journal.close();
+
+      // 代理计数器无法确认号段是否已发出，丢弃号段而不是创建失败
+      journal = SegmentJournal.open(file, "test_proxy", "node1");
+      Breadcrumb breadcrumb = new Breadcrumb(
+          new ImmutableBreadcrumbDef("order", 100, 1, 0, 0, 1, ProxyCounterBackend.NAME), null,
+          null, journal);
+      assertTrue(breadcrumb.nextLong() < 1000000);
+      breadcrumb.close();
+      journal.close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test(expected = GidException.class)
+  public void testProxyBackendRejectsShards() throws Exception {
+    CounterBackends.register(new ProxyCounterBackend(client));
+    new Breadcrumb(
+        new ImmutableBreadcrumbDef("order", 100, 1, 0, 0, 2, ProxyCounterBackend.NAME), null);
+  }
+
+  private String ledger(SegmentProxy proxy) throws Exception {
+    String path = ZKPaths.makePath(ZKPaths.makePath(SegmentProxy.LEDGER_ROOT_PATH, "order"),
+        proxy.proxyId());
+    return new String(zkClient.getData().forPath(path), "UTF-8");
+  }
+
+  private ZookeeperCounter counter() {
+    return new ZookeeperCounter(zkClient, Breadcrumb.SEQ_ROOT_PATH + "order", null);
+  }
+}